@@ -0,0 +1,150 @@
+package _main;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import hardware.ComputerPool;
+import hardware.ExecutionMode;
+import hardware.cpu.CPU;
+import hardware.cpu.StopReason;
+import software.assembly.Assembler;
+import software.datatypes.Program;
+import software.linking.Linker;
+
+/**
+ * Runs many programs concurrently, each to completion on its own CPU.
+ *
+ * Work is spread over a fixed number of worker threads. Each program runs on a
+ * CPU taken from a ComputerPool and reset when it is returned, so no more CPUs
+ * are ever built than there are workers. Source files are assembled and
+ * linked on the worker too, so a batch of files is parallel end to end.
+ *
+ * Programs can be given an instruction budget and a timeout, so one stuck in
+ * a loop gives its worker back with a result saying so, see
+ * RunResult.getStopReason, instead of holding it forever.
+ *
+ * @sammc
+ */
+public final class BatchRunner implements AutoCloseable {
+
+	private final ExecutionMode mode;
+	private final long instructionBudget;
+	private final Duration timeout;
+	private final ExecutorService workers;
+	private final ComputerPool<CPU> cpus;
+
+	/**
+	 * A runner with a worker per available processor, interpreting programs
+	 */
+	public BatchRunner() {
+		this(Runtime.getRuntime().availableProcessors(), ExecutionMode.INTERPRETER);
+	}
+
+	/**
+	 * @param workerCount number of programs run at once
+	 * @param mode        execution mode of every CPU
+	 */
+	public BatchRunner(int workerCount, ExecutionMode mode) {
+		this(workerCount, mode, Long.MAX_VALUE, null);
+	}
+
+	/**
+	 * @param workerCount       number of programs run at once
+	 * @param mode              execution mode of every CPU
+	 * @param instructionBudget most instructions each program may run,
+	 *                          Long.MAX_VALUE for no limit
+	 * @param timeout           most time each program may run for, not counting
+	 *                          assembling it, null for no limit
+	 */
+	public BatchRunner(int workerCount, ExecutionMode mode, long instructionBudget, Duration timeout) {
+		if (workerCount < 1) {
+			throw new IllegalArgumentException("A batch runner needs at least one worker: " + workerCount);
+		}
+		this.mode = mode;
+		this.instructionBudget = instructionBudget;
+		this.timeout = timeout;
+
+		AtomicInteger threadNumber = new AtomicInteger();
+		this.workers = Executors.newFixedThreadPool(workerCount, r -> {
+			Thread t = new Thread(r, "batch-worker-" + threadNumber.getAndIncrement());
+			t.setDaemon(true);
+			return t;
+		});
+
+		this.cpus = new ComputerPool<CPU>(CPU::new, workerCount);
+	}
+
+	/**
+	 * Assemble, link and run the source file at filepath
+	 *
+	 * @param filepath
+	 * @return the result once the program halts or runs out of budget or time
+	 */
+	public Future<RunResult> submit(String filepath) {
+		return workers.submit(() -> run(filepath, new Linker().link(new Assembler().assemble(filepath))));
+	}
+
+	/**
+	 * Run an already linked program
+	 *
+	 * @param p
+	 * @return the result once the program halts or runs out of budget or time
+	 */
+	public Future<RunResult> submit(Program p) {
+		return workers.submit(() -> run(null, p));
+	}
+
+	/**
+	 * Run every source file and wait for all of them
+	 *
+	 * @param filepaths
+	 * @return results in the same order as filepaths
+	 * @throws Exception the first failure, in filepath order
+	 */
+	public List<RunResult> runAll(List<String> filepaths) throws Exception {
+		List<Future<RunResult>> futures = new ArrayList<Future<RunResult>>(filepaths.size());
+		for (String filepath : filepaths) {
+			futures.add(submit(filepath));
+		}
+
+		List<RunResult> results = new ArrayList<RunResult>(futures.size());
+		for (Future<RunResult> future : futures) {
+			try {
+				results.add(future.get());
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof Exception) {
+					throw (Exception) e.getCause();
+				}
+				throw e;
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Stop accepting programs. Programs already submitted still run.
+	 */
+	@Override
+	public void close() {
+		workers.shutdown();
+	}
+
+	private RunResult run(String source, Program p) throws Exception {
+		CPU cpu = cpus.acquire();
+		try {
+			cpu.setExecutionMode(mode);
+			cpu.loadProgram(p);
+			StopReason stop = cpu.run(instructionBudget, timeout);
+			return new RunResult(source, cpu, stop);
+		} finally {
+			cpus.release(cpu);
+		}
+	}
+
+}
@@ -0,0 +1,131 @@
+package _main;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import hardware.cpu.CPU;
+import hardware.cpu.StopReason;
+import hardware.memory.Memory;
+
+/**
+ * The final state of one program run by the BatchRunner, which is where it
+ * stopped if it ran out of budget or time, or raised an exception it had no
+ * handler for.
+ *
+ * Memory is summarized as a SHA-256 digest over every page holding a non zero
+ * word, so two runs that leave memory in the same state have equal digests no
+ * matter which pages they happened to allocate along the way.
+ *
+ * @sammc
+ */
+public final class RunResult {
+
+	private final String source; // file path, or null when submitted as a Program
+	private final int[] registers;
+	private final int pc;
+	private final long instructionCount;
+	private final byte[] memoryDigest;
+	private final StopReason stop;
+
+	RunResult(String source, CPU cpu, StopReason stop) {
+		this.source = source;
+		this.stop = stop;
+		this.registers = cpu.getRegisters();
+		this.pc = cpu.getPC();
+		this.instructionCount = cpu.getInstructionCount();
+		this.memoryDigest = digest(cpu.getMemory());
+	}
+
+	public String getSource() {
+		return source;
+	}
+
+	/**
+	 * Returns a copy of the final register file
+	 *
+	 * @return
+	 */
+	public int[] getRegisters() {
+		return registers.clone();
+	}
+
+	/**
+	 * Returns StopReason.FINISHED if the program ran to the end, else which
+	 * limit or unhandled exception stopped it
+	 *
+	 * @return
+	 */
+	public StopReason getStopReason() {
+		return stop;
+	}
+
+	public boolean isFinished() {
+		return stop == StopReason.FINISHED;
+	}
+
+	public int getPC() {
+		return pc;
+	}
+
+	public long getInstructionCount() {
+		return instructionCount;
+	}
+
+	/**
+	 * Returns a copy of the SHA-256 digest of the final memory contents
+	 *
+	 * @return
+	 */
+	public byte[] getMemoryDigest() {
+		return memoryDigest.clone();
+	}
+
+	/**
+	 * Digest of every page of memory holding a non zero word, each page's number
+	 * followed by its contents
+	 *
+	 * @param m
+	 * @return
+	 */
+	static byte[] digest(Memory m) {
+		MessageDigest sha;
+		try {
+			sha = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e); // every java platform has SHA-256
+		}
+
+		int[] words = new int[Memory.PAGE_SIZE];
+		byte[] bytes = new byte[Integer.BYTES * (Memory.PAGE_SIZE + 1)];
+		for (int pageNumber : m.getAllocatedPages()) {
+			m.read(pageNumber << Memory.PAGE_BITS, words);
+			if (isZero(words)) {
+				continue;
+			}
+			putInt(bytes, 0, pageNumber);
+			for (int i = 0; i < words.length; i++) {
+				putInt(bytes, i + 1, words[i]);
+			}
+			sha.update(bytes);
+		}
+		return sha.digest();
+	}
+
+	private static boolean isZero(int[] words) {
+		for (int w : words) {
+			if (w != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static void putInt(byte[] bytes, int index, int value) {
+		int b = index * Integer.BYTES;
+		bytes[b] = (byte) (value >>> 24);
+		bytes[b + 1] = (byte) (value >>> 16);
+		bytes[b + 2] = (byte) (value >>> 8);
+		bytes[b + 3] = (byte) value;
+	}
+
+}
@@ -2,6 +2,7 @@
 package _main;
 
 import hardware.cpu.CPU;
+import hardware.metrics.ExecutionMetrics;
 import software.assembly.Assembler;
 import software.datatypes.Program;
 import software.datatypes.Protogram;
@@ -27,6 +28,7 @@ public class Simulator {
 		init();
 
 		try {
+			ExecutionMetrics.register();
 			runProgram("./test.s");
 		} catch (Exception e) {
 			e.printStackTrace();
@@ -0,0 +1,77 @@
+package _main.test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import _main.BatchRunner;
+import _main.RunResult;
+import hardware.ExecutionMode;
+import hardware.MipsIsa;
+import hardware.cpu.StopReason;
+
+/**
+ * Unit tests for the batch runner
+ */
+class TestBatchRunner {
+
+	private static final List<String> PROGRAMS = Arrays.asList("./src/hardware/test/isa.s",
+			"./src/hardware/test/loop.s", "./src/hardware/test/blocks.s");
+	private static final String SPIN = "./src/hardware/test/spin.s";
+
+	@Test
+	void testLimits() throws Exception {
+		for (ExecutionMode mode : ExecutionMode.values()) {
+			try (BatchRunner runner = new BatchRunner(2, mode, 1_000_000, null)) {
+				List<RunResult> results = runner.runAll(Arrays.asList(SPIN, PROGRAMS.get(1)));
+				assertEquals(StopReason.INSTRUCTION_BUDGET, results.get(0).getStopReason(), mode.name());
+				assertTrue(results.get(0).getInstructionCount() >= 1_000_000, mode.name());
+				assertTrue(results.get(1).isFinished(), mode.name());
+			}
+			try (BatchRunner runner = new BatchRunner(1, mode, Long.MAX_VALUE, Duration.ofMillis(50))) {
+				RunResult result = runner.submit(SPIN).get(10, TimeUnit.SECONDS); // the worker comes back
+				assertEquals(StopReason.DEADLINE, result.getStopReason(), mode.name());
+				assertFalse(result.isFinished(), mode.name());
+			}
+		}
+	}
+
+	@Test
+	void testBatchResults() throws Exception {
+		List<String> batch = new ArrayList<String>();
+		for (int i = 0; i < 8; i++) {
+			batch.addAll(PROGRAMS);
+		}
+
+		List<RunResult> expected = null;
+		for (ExecutionMode mode : ExecutionMode.values()) {
+			List<RunResult> results;
+			try (BatchRunner runner = new BatchRunner(4, mode)) {
+				results = runner.runAll(batch);
+			}
+			assertEquals(batch.size(), results.size());
+			assertEquals(18, results.get(0).getRegisters()[MipsIsa.$t2], mode.name());
+
+			if (expected == null) {
+				expected = results.subList(0, PROGRAMS.size());
+			}
+			// every run of a program ends in the same state, whichever CPU ran it
+			for (int i = 0; i < results.size(); i++) {
+				RunResult want = expected.get(i % PROGRAMS.size());
+				RunResult got = results.get(i);
+				assertEquals(want.getSource(), got.getSource());
+				assertArrayEquals(want.getRegisters(), got.getRegisters(), mode.name());
+				assertEquals(want.getPC(), got.getPC(), mode.name());
+				assertEquals(want.getInstructionCount(), got.getInstructionCount(), mode.name());
+				assertArrayEquals(want.getMemoryDigest(), got.getMemoryDigest(), mode.name());
+			}
+		}
+	}
+
+}
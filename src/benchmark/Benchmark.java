@@ -0,0 +1,252 @@
+package benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import hardware.ExecutionMode;
+import hardware.cache.CacheHierarchy;
+import hardware.cpu.CPU;
+import software.assembly.Assembler;
+import software.datatypes.Program;
+import software.linking.Linker;
+
+/**
+ * Benchmarks of the execution core, run on the MIPS programs in this package.
+ *
+ * - arith: a tight loop of register arithmetic
+ * - sweep: lw/sw passes over a 16K word array
+ * - recursion: recursive fib(24), heavy on jal, jr and the stack
+ * - branchy: collatz walks, with data dependent branches
+ *
+ * Each workload is assembled, linked and loaded into a CPU, then run. The first
+ * iterations warm up the JVM and are thrown away, the rest are measured. For
+ * every workload and execution mode this reports how long assembling and
+ * linking, and loading take, how long the very first run took, the guest speed
+ * in millions of MIPS instructions per second, and the bytes allocated per
+ * guest instruction.
+ *
+ * With -c every run goes through the default CacheHierarchy, to measure what
+ * modelling caches costs. Only ExecutionMode.INTERPRETER and
+ * ExecutionMode.PIPELINE model caches, the other modes would quietly be
+ * interpreted instead, so -c runs those two and rejects the others.
+ *
+ * Usage: Benchmark [-w warmups] [-i iterations] [-m mode] [-c] [workload...]
+ *
+ * @sammc
+ */
+public final class Benchmark {
+
+	public static final String[] WORKLOADS = { "arith", "sweep", "recursion", "branchy" };
+	public static final int DEFAULT_WARMUPS = 5;
+	public static final int DEFAULT_ITERATIONS = 10;
+
+	private static final String DIRECTORY = "./src/benchmark/";
+	private static final List<ExecutionMode> CACHE_MODES = List.of(ExecutionMode.INTERPRETER, ExecutionMode.PIPELINE);
+
+	private static final com.sun.management.ThreadMXBean THREADS = threads();
+
+	private Benchmark() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		int warmups = DEFAULT_WARMUPS;
+		int iterations = DEFAULT_ITERATIONS;
+		List<ExecutionMode> modes = null; // every mode that can run as asked
+		List<String> workloads = new ArrayList<String>();
+		boolean caches = false;
+
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+			case "-w":
+				warmups = Integer.parseInt(args[++i]);
+				break;
+			case "-i":
+				iterations = Integer.parseInt(args[++i]);
+				break;
+			case "-m":
+				modes = List.of(ExecutionMode.valueOf(args[++i]));
+				break;
+			case "-c":
+				caches = true;
+				break;
+			default:
+				workloads.add(args[i]);
+			}
+		}
+		if (workloads.isEmpty()) {
+			workloads.addAll(Arrays.asList(WORKLOADS));
+		}
+		if (modes == null) {
+			modes = caches ? CACHE_MODES : Arrays.asList(ExecutionMode.values());
+		}
+
+		System.out.printf("%-10s %-12s %10s %10s %12s %10s %10s%n", "workload", "mode", "build ms", "load ms",
+				"first run ms", "MIPS", "B/instr");
+		for (String workload : workloads) {
+			for (ExecutionMode mode : modes) {
+				System.out.println(measure(workload, mode, caches, warmups, iterations));
+			}
+		}
+	}
+
+	/**
+	 * Benchmark one workload
+	 *
+	 * @param workload   name of a workload, eg. "arith"
+	 * @param mode
+	 * @param caches     model caches while running, only in
+	 *                   ExecutionMode.INTERPRETER or ExecutionMode.PIPELINE
+	 * @param warmups    iterations run before measuring
+	 * @param iterations iterations measured
+	 * @return
+	 * @throws Exception if the workload can't be assembled or linked
+	 */
+	public static Result measure(String workload, ExecutionMode mode, boolean caches, int warmups, int iterations)
+			throws Exception {
+		if (iterations < 1) {
+			throw new IllegalArgumentException("At least one iteration has to be measured: " + iterations);
+		}
+		if (caches && !CACHE_MODES.contains(mode)) {
+			throw new IllegalArgumentException(mode + " doesn't model caches, it would be interpreted instead");
+		}
+		String filepath = DIRECTORY + workload + ".s";
+		CPU cpu = new CPU();
+		cpu.setExecutionMode(mode);
+		if (caches) {
+			cpu.setCaches(new CacheHierarchy());
+		}
+		Result result = new Result(workload, mode);
+
+		for (int i = -warmups; i < iterations; i++) {
+			long t0 = System.nanoTime();
+			Program p = new Linker().link(new Assembler().assemble(filepath));
+			long t1 = System.nanoTime();
+			cpu.reset();
+			cpu.loadProgram(p);
+			long t2 = System.nanoTime();
+			long allocated = allocatedBytes();
+			cpu.start();
+			long t3 = System.nanoTime();
+			allocated = allocatedBytes() - allocated;
+
+			if (i == -warmups) {
+				result.firstRunNanos = t3 - t2;
+			}
+			if (i >= 0) {
+				result.buildNanos += t1 - t0;
+				result.loadNanos += t2 - t1;
+				result.runNanos += t3 - t2;
+				result.instructions += cpu.getInstructionCount();
+				result.allocatedBytes += allocated;
+				result.iterations++;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Bytes allocated by this thread so far, or 0 if the JVM doesn't keep count
+	 */
+	private static long allocatedBytes() {
+		return THREADS == null ? 0 : THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	private static com.sun.management.ThreadMXBean threads() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+			if (threads.isThreadAllocatedMemorySupported()) {
+				threads.setThreadAllocatedMemoryEnabled(true);
+				return threads;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Measurements of one workload in one execution mode, summed over the measured
+	 * iterations
+	 */
+	public static final class Result {
+
+		private final String workload;
+		private final ExecutionMode mode;
+		private long firstRunNanos; // the first warmup run, before the JVM has compiled anything
+		private long buildNanos; // assembling and linking
+		private long loadNanos;
+		private long runNanos;
+		private long instructions;
+		private long allocatedBytes;
+		private int iterations;
+
+		private Result(String workload, ExecutionMode mode) {
+			this.workload = workload;
+			this.mode = mode;
+		}
+
+		public String getWorkload() {
+			return workload;
+		}
+
+		public ExecutionMode getMode() {
+			return mode;
+		}
+
+		/**
+		 * Returns the mean time to assemble and link the workload
+		 *
+		 * @return
+		 */
+		public double getBuildMillis() {
+			return buildNanos / 1e6 / iterations;
+		}
+
+		/**
+		 * Returns the mean time to reset the CPU and load the workload into it
+		 *
+		 * @return
+		 */
+		public double getLoadMillis() {
+			return loadNanos / 1e6 / iterations;
+		}
+
+		/**
+		 * Returns how long the first run took, including warming up the JVM and
+		 * any translation the execution mode does
+		 *
+		 * @return
+		 */
+		public double getFirstRunMillis() {
+			return firstRunNanos / 1e6;
+		}
+
+		/**
+		 * Returns the guest speed, in millions of instructions per second
+		 *
+		 * @return
+		 */
+		public double getMips() {
+			return instructions * 1e3 / runNanos;
+		}
+
+		/**
+		 * Returns the bytes allocated per guest instruction while running, or 0 if
+		 * the JVM doesn't count allocation
+		 *
+		 * @return
+		 */
+		public double getBytesPerInstruction() {
+			return (double) allocatedBytes / instructions;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%-10s %-12s %10.3f %10.3f %12.3f %10.1f %10.3f", workload, mode, getBuildMillis(),
+					getLoadMillis(), getFirstRunMillis(), getMips(), getBytesPerInstruction());
+		}
+
+	}
+
+}
@@ -0,0 +1,23 @@
+.data
+
+result: .word 0
+
+.text
+
+ori $t0 $0 1024
+sll $t0 $t0 10
+addi $t4 $0 1
+loop: addu $t1 $t1 $t0
+subu $t2 $t2 $t1
+and $t3 $t1 $t2
+or $t5 $t3 $t0
+nor $t6 $t5 $t1
+sll $t7 $t6 3
+srl $s1 $t7 2
+addu $s2 $s2 $s1
+subu $t0 $t0 $t4
+bne $t0 $0 loop
+ori $s0 $0 4096
+sll $s0 $s0 16
+sw $s2 0($s0)
+halt
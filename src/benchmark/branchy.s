@@ -0,0 +1,27 @@
+.data
+
+result: .word 0
+
+.text
+
+ori $s1 $0 3000
+addi $s2 $0 1
+addi $t4 $0 1
+outer: add $t0 $s2 $0
+walk: beq $t0 $t4 next
+andi $t1 $t0 1
+bne $t1 $0 odd
+srl $t0 $t0 1
+j count
+odd: sll $t2 $t0 1
+addu $t0 $t2 $t0
+addiu $t0 $t0 1
+count: addiu $s3 $s3 1
+j walk
+next: addiu $s2 $s2 1
+slt $t3 $s1 $s2
+beq $t3 $0 outer
+ori $s0 $0 4096
+sll $s0 $s0 16
+sw $s3 0($s0)
+halt
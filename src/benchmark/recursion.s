@@ -0,0 +1,35 @@
+.data
+
+result: .word 0
+
+.text
+
+ori $sp $0 4097
+sll $sp $sp 16
+addi $s5 $0 1
+addi $s6 $0 2
+addi $s7 $0 3
+addi $a0 $0 24
+jal fib
+ori $s0 $0 4096
+sll $s0 $s0 16
+sw $v0 0($s0)
+halt
+fib: slti $t0 $a0 2
+beq $t0 $0 recurse
+add $v0 $a0 $0
+jr $ra
+recurse: subu $sp $sp $s7
+sw $ra 0($sp)
+sw $a0 1($sp)
+subu $a0 $a0 $s5
+jal fib
+sw $v0 2($sp)
+lw $a0 1($sp)
+subu $a0 $a0 $s6
+jal fib
+lw $t1 2($sp)
+add $v0 $v0 $t1
+lw $ra 0($sp)
+addu $sp $sp $s7
+jr $ra
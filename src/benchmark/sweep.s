@@ -0,0 +1,23 @@
+.data
+
+array: .word 0
+
+.text
+
+ori $s0 $0 4096
+sll $s0 $s0 16
+addi $t8 $0 1
+ori $t9 $0 64
+pass: add $t0 $s0 $0
+ori $t1 $0 16384
+sweep: lw $t2 0($t0)
+lw $t3 1($t0)
+addu $t2 $t2 $t3
+addu $t2 $t2 $t9
+sw $t2 0($t0)
+addi $t0 $t0 1
+subu $t1 $t1 $t8
+bne $t1 $0 sweep
+subu $t9 $t9 $t8
+bne $t9 $0 pass
+halt
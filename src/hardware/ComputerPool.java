@@ -0,0 +1,64 @@
+package hardware;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Supplier;
+
+/**
+ * Pool of reusable SimulatedComputer instances.
+ *
+ * Computers are reset when they are released, which only clears what the last
+ * program touched, so taking one from the pool costs far less than building a
+ * new one. When the pool is empty a new computer is built, and when it is full
+ * released computers are simply dropped. Safe to use from many threads.
+ *
+ * @sammc
+ */
+public final class ComputerPool<C extends SimulatedComputer> {
+
+	private final Supplier<C> factory;
+	private final BlockingQueue<C> idle;
+
+	/**
+	 * @param factory builds a new computer when the pool is empty
+	 * @param maxIdle most computers kept in the pool
+	 */
+	public ComputerPool(Supplier<C> factory, int maxIdle) {
+		if (maxIdle < 1) {
+			throw new IllegalArgumentException("A pool must be able to keep at least one computer: " + maxIdle);
+		}
+		this.factory = factory;
+		this.idle = new ArrayBlockingQueue<C>(maxIdle);
+	}
+
+	/**
+	 * Returns a computer with no program loaded, from the pool if one is idle
+	 *
+	 * @return
+	 */
+	public C acquire() {
+		C computer = idle.poll();
+		return computer != null ? computer : factory.get();
+	}
+
+	/**
+	 * Reset a computer and return it to the pool. It must not be used again by
+	 * the caller.
+	 *
+	 * @param computer
+	 */
+	public void release(C computer) {
+		computer.reset();
+		idle.offer(computer); // dropped if the pool is full
+	}
+
+	/**
+	 * Returns the number of computers waiting in the pool
+	 *
+	 * @return
+	 */
+	public int getIdleCount() {
+		return idle.size();
+	}
+
+}
@@ -0,0 +1,166 @@
+package hardware;
+
+import java.util.Arrays;
+
+import hardware.datatypes.I_Instruction;
+import hardware.datatypes.Instruction;
+import hardware.datatypes.J_Instruction;
+import hardware.datatypes.R_Instruction;
+
+/**
+ * Dense handler tables used by MipsIsa.execute. One table is indexed by opcode,
+ * R-type instructions (opcode 0) are looked up again in a second table indexed
+ * by funct. Both are built once, and slots for opcodes the ISA doesn't define
+ * raise a reserved instruction exception, see MipsIsa.reservedInstruction.
+ *
+ * @sammc
+ */
+public final class DispatchTable {
+
+	/**
+	 * Executes one decoded instruction on a MipsIsa implementation
+	 */
+	@FunctionalInterface
+	public interface Handler {
+		void execute(MipsIsa isa, Instruction ins);
+	}
+
+	@FunctionalInterface
+	private interface RegisterOp {
+		void apply(MipsIsa isa, int Rd, int Rs, int Rt);
+	}
+
+	@FunctionalInterface
+	private interface ImmediateOp {
+		void apply(MipsIsa isa, int Rd, int Rs, int Immediate);
+	}
+
+	private static final Handler RESERVED = (isa, ins) -> isa.reservedInstruction();
+
+	private static final Handler[] OPCODE = new Handler[64];
+	private static final Handler[] FUNCT = new Handler[64];
+
+	static {
+		Arrays.fill(OPCODE, RESERVED);
+		Arrays.fill(FUNCT, RESERVED);
+
+		// R-Type
+		OPCODE[0x00] = (isa, ins) -> {
+			R_Instruction r = (R_Instruction) ins;
+			FUNCT[r.func].execute(isa, r);
+		};
+		FUNCT[0x20] = rType(MipsIsa::add);
+		FUNCT[0x21] = rType(MipsIsa::addu);
+		FUNCT[0x24] = rType(MipsIsa::and);
+		FUNCT[0x08] = (isa, ins) -> isa.jr(((R_Instruction) ins).rs);
+		FUNCT[0x27] = rType(MipsIsa::nor);
+		FUNCT[0x25] = rType(MipsIsa::or);
+		FUNCT[0x2a] = rType(MipsIsa::slt);
+		FUNCT[0x2b] = rType(MipsIsa::sltu);
+		FUNCT[0x00] = shift(MipsIsa::sll);
+		FUNCT[0x02] = shift(MipsIsa::srl);
+		FUNCT[0x22] = rType(MipsIsa::sub);
+		FUNCT[0x23] = rType(MipsIsa::subu);
+		FUNCT[0x0c] = (isa, ins) -> isa.syscall();
+
+		// I-Type
+		OPCODE[0x08] = iType(MipsIsa::addi);
+		OPCODE[0x09] = iType(MipsIsa::addiu);
+		OPCODE[0x0c] = iType(MipsIsa::andi);
+		OPCODE[0x04] = branch(MipsIsa::beq);
+		OPCODE[0x05] = branch(MipsIsa::bne);
+		OPCODE[0x0f] = (isa, ins) -> {
+			I_Instruction i = (I_Instruction) ins;
+			isa.lui(i.rt, i.immediate);
+		};
+		OPCODE[0x23] = iType(MipsIsa::lw);
+		OPCODE[0x0d] = iType(MipsIsa::ori);
+		OPCODE[0x0a] = iType(MipsIsa::slti);
+		OPCODE[0x0b] = iType(MipsIsa::sltiu);
+		OPCODE[0x2b] = iType(MipsIsa::sw);
+		OPCODE[0x30] = iType(MipsIsa::ll);
+		OPCODE[0x38] = iType(MipsIsa::sc);
+		OPCODE[0x24] = iType(MipsIsa::lbu);
+		OPCODE[0x25] = iType(MipsIsa::lhu);
+		OPCODE[0x28] = iType(MipsIsa::sb);
+		OPCODE[0x29] = iType(MipsIsa::sh);
+
+		// Coprocessor 0, rs picks the operation and rd sits in the top of the immediate
+		OPCODE[0x10] = (isa, ins) -> {
+			I_Instruction i = (I_Instruction) ins;
+			int rd = (i.immediate >> 11) & 0x1F;
+			if (i.rs == 0x0) {
+				isa.mfc0(i.rt, rd);
+			} else if (i.rs == 0x4) {
+				isa.mtc0(i.rt, rd);
+			} else if (i.rs == 0x10 && (i.immediate & 0x3F) == 0x18) {
+				isa.eret();
+			} else {
+				isa.reservedInstruction();
+			}
+		};
+
+		// J-Type
+		OPCODE[0x02] = (isa, ins) -> isa.j(((J_Instruction) ins).address);
+		OPCODE[0x03] = (isa, ins) -> isa.jal(((J_Instruction) ins).address);
+	}
+
+	private DispatchTable() {
+	}
+
+	/**
+	 * Execute the instruction on the provided MipsIsa implementation
+	 *
+	 * @param isa
+	 * @param ins
+	 */
+	public static void dispatch(MipsIsa isa, Instruction ins) {
+		OPCODE[ins.opcode].execute(isa, ins);
+	}
+
+	/**
+	 * Returns the handler that executes the provided instruction
+	 *
+	 * @param ins
+	 * @return
+	 */
+	public static Handler handler(Instruction ins) {
+		if (ins.opcode == 0) {
+			return FUNCT[((R_Instruction) ins).func];
+		}
+		return OPCODE[ins.opcode];
+	}
+
+	// Rd, Rs, Rt
+	private static Handler rType(RegisterOp op) {
+		return (isa, ins) -> {
+			R_Instruction r = (R_Instruction) ins;
+			op.apply(isa, r.rd, r.rs, r.rt);
+		};
+	}
+
+	// Rd, Rs, shamt
+	private static Handler shift(RegisterOp op) {
+		return (isa, ins) -> {
+			R_Instruction r = (R_Instruction) ins;
+			op.apply(isa, r.rd, r.rs, r.shamt);
+		};
+	}
+
+	// Rt is the destination, Rs the source
+	private static Handler iType(ImmediateOp op) {
+		return (isa, ins) -> {
+			I_Instruction i = (I_Instruction) ins;
+			op.apply(isa, i.rt, i.rs, i.immediate);
+		};
+	}
+
+	// Rs, Rt, offset
+	private static Handler branch(ImmediateOp op) {
+		return (isa, ins) -> {
+			I_Instruction i = (I_Instruction) ins;
+			op.apply(isa, i.rs, i.rt, i.immediate);
+		};
+	}
+
+}
@@ -0,0 +1,35 @@
+package hardware;
+
+/**
+ * The ways a SimulatedComputer can execute a loaded program. All modes produce
+ * the same results, they only differ in speed and what they measure.
+ * 
+ * @sammc
+ */
+public enum ExecutionMode {
+
+	/**
+	 * Fetch, dispatch and execute one instruction at a time
+	 */
+	INTERPRETER,
+
+	/**
+	 * Translate each basic block of the text segment once into a list of
+	 * operations with their operands already bound, then run a whole block per
+	 * dispatch
+	 */
+	BASIC_BLOCK,
+
+	/**
+	 * Interpret, and compile code that gets hot into JVM bytecode so HotSpot can
+	 * run it natively
+	 */
+	JIT,
+
+	/**
+	 * Interpret, timing every instruction on a model of a five stage pipeline.
+	 * Much slower than the other modes, see CPU.getPipelineTiming
+	 */
+	PIPELINE
+
+}
@@ -2,9 +2,7 @@ package hardware;
 
 import hardware.datatypes.I_Instruction;
 import hardware.datatypes.Instruction;
-import hardware.datatypes.J_Instruction;
 import hardware.datatypes.R_Instruction;
-import hardware.exceptions.InstructionNotSupportedException;
 
 /**
  * Holds all important details of implementation defined by the MIPS instruction
@@ -58,24 +56,39 @@ public interface MipsIsa {
 	public final int $fp = 30;
 	public final int $ra = 31;
 
+	/*
+	 * Coprocessor 0 registers, see CPU.getCP0. The select field of mfc0 and mtc0
+	 * is ignored, so EBase, select 1 of register 15 in MIPS32, is register 15.
+	 */
+
+	public final int C0_BADVADDR = 8; // address of the last address error
+	public final int C0_STATUS = 12;
+	public final int C0_CAUSE = 13;
+	public final int C0_EPC = 14; // address of the instruction that raised the exception
+	public final int C0_EBASE = 15; // address of the exception handler, 0 for none
+
+	public final int STATUS_EXL = 1 << 1; // exception level, set while an exception is handled
+	public final int CAUSE_EXC_CODE = 0x1F << 2;
+
+	// Exception codes, in Cause bits 6:2
+	public final int EXC_ADEL = 4; // address error on a load
+	public final int EXC_ADES = 5; // address error on a store
+	public final int EXC_RI = 10; // reserved instruction
+	public final int EXC_OV = 12; // arithmetic overflow
+
 	/**
 	 * Execute an instruction on this object which implements the mips isa
 	 * 
+	 * Dispatches through the handler tables in DispatchTable
+	 * 
 	 * @param instruction
 	 */
 	public default void execute(Instruction instruction) {
-		System.out.printf("ATTEMPTING TO EXECUTE: %x\n", instruction.getASM());
-		if (instruction.opcode == 0) {
-			executeRType((R_Instruction) instruction);
-		} else if (instruction.opcode == 2 || instruction.opcode == 3) {
-			executeJType((J_Instruction) instruction);
-		} else {
-			executeIType((I_Instruction) instruction);
-		}
+		DispatchTable.dispatch(this, instruction);
 	}
 
 	// R - type
-	public void add(int Rd, int Rs, int Rt) throws Exception;
+	public void add(int Rd, int Rs, int Rt);
 
 	public void addu(int Rd, int Rs, int Rt);
 
@@ -99,49 +112,7 @@ public interface MipsIsa {
 
 	public void subu(int Rd, int Rs, int Rt);
 
-	default void executeRType(R_Instruction instruction) {
-		switch (instruction.func) {
-		case 0x20:
-			try {
-				add(instruction.rd, instruction.rs, instruction.rt);
-			} catch (Exception e) {
-				e.printStackTrace();
-			}
-			return;
-		case 0x21:
-			addu(instruction.rd, instruction.rs, instruction.rt);
-		case 0x24:
-			and(instruction.rd, instruction.rs, instruction.rt);
-			return;
-		case 0x8:
-			jr(instruction.rs);
-			return;
-		case 0x27:
-			nor(instruction.rd, instruction.rs, instruction.rt);
-			return;
-		case 0x25:
-			or(instruction.rd, instruction.rs, instruction.rt);
-			return;
-		case 0x2a:
-			slt(instruction.rd, instruction.rs, instruction.rt);
-			return;
-		case 0x2b:
-			sltu(instruction.rd, instruction.rs, instruction.rt);
-			return;
-		case 0x00:
-			sll(instruction.rd, instruction.rs, instruction.rt);
-			return;
-		case 0x02:
-			srl(instruction.rd, instruction.rs, instruction.rt);
-			return;
-		case 0x22:
-			sub(instruction.rd, instruction.rs, instruction.rt);
-			return;
-		case 0x23:
-			subu(instruction.rd, instruction.rs, instruction.rt);
-			return;
-		}
-	}
+	public void syscall();
 
 	// I-Type
 	public void addi(int Rd, int Rs, int Immediate);
@@ -152,82 +123,48 @@ public interface MipsIsa {
 
 	public void ori(int Rd, int Rs, int Immediate);
 
-	public void beq(int Rd, int Rs, int Immediate);
+	public void beq(int Rs, int Rt, int Immediate);
 
-	public void bne(int Rd, int Rs, int Immediate);
+	public void bne(int Rs, int Rt, int Immediate);
 
-	public void lbu(int Rd, int Rs, int Immediate) throws InstructionNotSupportedException;
+	public void lbu(int Rd, int Rs, int Immediate);
 
-	public void lhu(int Rd, int Rs, int Immediate) throws InstructionNotSupportedException;
+	public void lhu(int Rd, int Rs, int Immediate);
 
-	public void ll(int Rd, int Rs, int Immediate) throws InstructionNotSupportedException;
+	public void ll(int Rd, int Rs, int Immediate);
 
 	public void lui(int Rd, int Immediate);
 
 	public void lw(int Rd, int Rs, int Immediate);
 
-	public void sb(int Rd, int Rs, int Immediate) throws InstructionNotSupportedException;
+	public void sb(int Rd, int Rs, int Immediate);
 
-	public void sc(int Rd, int Rs, int Immediate) throws InstructionNotSupportedException;
+	public void sc(int Rd, int Rs, int Immediate);
 
-	public void sh(int Rd, int Rs, int Immediate) throws InstructionNotSupportedException;
+	public void sh(int Rd, int Rs, int Immediate);
 
 	public void sw(int Rd, int Rs, int Immediate);
 
-	public void sltiu(int rs, int rt, int immediate);
-
-	public void slti(int rs, int rt, int immediate);
-
-	default void executeIType(I_Instruction instruction) {
-		switch (instruction.opcode) {
-		case 0x8:
-			addi(instruction.rs, instruction.rt, instruction.immediate);
-			return;
-		case 0x9:
-			addiu(instruction.rs, instruction.rt, instruction.immediate);
-			return;
-		case 0xc:
-			andi(instruction.rs, instruction.rt, instruction.immediate);
-			return;
-		case 0x4:
-			beq(instruction.rs, instruction.rt, instruction.immediate);
-			return;
-		case 0x5:
-			bne(instruction.rs, instruction.rt, instruction.immediate);
-			return;
-		case 0xf:
-			lui(instruction.rs, instruction.immediate);
-			return;
-		case 0x23:
-			lw(instruction.rs, instruction.rt, instruction.immediate);
-			return;
-		case 0xd:
-			ori(instruction.rs, instruction.rt, instruction.immediate);
-			return;
-		case 0xa:
-			slti(instruction.rs, instruction.rt, instruction.immediate);
-			return;
-		case 0xb:
-			sltiu(instruction.rs, instruction.rt, instruction.immediate);
-			return;
-		case 0x2b:
-			sw(instruction.rs, instruction.rt, instruction.immediate);
-			return;
-		}
-	}
+	public void sltiu(int Rd, int Rs, int Immediate);
+
+	public void slti(int Rd, int Rs, int Immediate);
 
 	// J-Type
 	void jal(int addr);
 
 	void j(int addr);
 
-	default void executeJType(J_Instruction instruction) {
-		if (instruction.opcode == 2) {
-			j(instruction.address);
-		} else if (instruction.opcode == 3) {
-			jal(instruction.address);
-		}
-	}
+	// Coprocessor 0
+	public void mfc0(int Rt, int Rd);
+
+	public void mtc0(int Rt, int Rd);
+
+	public void eret();
+
+	/**
+	 * Executed for any opcode or funct the ISA doesn't define
+	 */
+	public void reservedInstruction();
 
 	/*
 	 * Translation functions
@@ -269,6 +206,8 @@ public interface MipsIsa {
 			return 0x22;
 		} else if (neumonic.toLowerCase().equals("subu")) {
 			return 0x23;
+		} else if (neumonic.toLowerCase().equals("syscall")) {
+			return 0xc;
 		} else
 			return -1;
 	}
@@ -348,6 +287,10 @@ public interface MipsIsa {
 		case "$ra":
 			return 31;
 		default:
+			// numbered, eg. $8, or $14 for a coprocessor 0 register
+			if (reg.matches("\\$\\d{1,2}") && Integer.parseInt(reg.substring(1)) < NUMBER_OF_REGISTERS) {
+				return Integer.parseInt(reg.substring(1));
+			}
 			return 0;
 
 		}
@@ -404,6 +347,8 @@ public interface MipsIsa {
 				return "sh";
 			case 0x2b:
 				return "sw";
+			case 0x10:
+				return ((I_Instruction) ins).rs == 0x10 ? "eret" : ((I_Instruction) ins).rs == 0x4 ? "mtc0" : "mfc0";
 			}
 		}
 
@@ -434,6 +379,8 @@ public interface MipsIsa {
 				return "sub";
 			case 0x23:
 				return "subu";
+			case 0x0c:
+				return "syscall";
 			}
 		}
 
@@ -467,6 +414,7 @@ public interface MipsIsa {
 		case "sub":
 		case "subu":
 		case "jr":
+		case "syscall":
 			return 0x0;
 
 		case "addi":
@@ -490,6 +438,8 @@ public interface MipsIsa {
 			return 0xf;
 		case "lw":
 			return 0x23;
+		case "ll":
+			return 0x30;
 
 		case "slti":
 			return 0xa;
@@ -498,6 +448,13 @@ public interface MipsIsa {
 
 		case "sw":
 			return 0x2b;
+		case "sc":
+			return 0x38;
+
+		case "mfc0":
+		case "mtc0":
+		case "eret":
+			return 0x10;
 
 		case "halt":
 			return 0x3f;
@@ -24,4 +24,19 @@ public interface SimulatedComputer {
 	 */
 	public abstract void loadProgram(Program p) throws Exception;
 
+	/**
+	 * Returns the computer to its freshly constructed state, with no program
+	 * loaded, so it can be reused for another program. Only memory that was
+	 * written is cleared, so this is much cheaper than building a new computer.
+	 */
+	public abstract void reset();
+
+	/**
+	 * Selects how the computer executes programs. Takes effect the next time start
+	 * is called.
+	 * 
+	 * @param mode
+	 */
+	public abstract void setExecutionMode(ExecutionMode mode);
+
 }
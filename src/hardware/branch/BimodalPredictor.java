@@ -0,0 +1,43 @@
+package hardware.branch;
+
+import java.util.Arrays;
+
+/**
+ * A table of two bit saturating counters indexed by the branch address. Each
+ * branch (modulo aliasing) learns its own usual direction, and one surprise
+ * isn't enough to flip the prediction.
+ * 
+ * @sammc
+ */
+public final class BimodalPredictor implements BranchPredictor {
+
+	private final byte[] counters; // 0-1 predict not taken, 2-3 predict taken
+	private final int mask;
+
+	/**
+	 * @param entries number of counters, a power of two
+	 */
+	public BimodalPredictor(int entries) {
+		if (Integer.bitCount(entries) != 1) {
+			throw new IllegalArgumentException("Predictor entries must be a power of two: " + entries);
+		}
+		counters = new byte[entries];
+		mask = entries - 1;
+	}
+
+	@Override
+	public boolean predict(int pc, int target) {
+		return counters[pc & mask] >= 2;
+	}
+
+	@Override
+	public void update(int pc, boolean taken) {
+		counters[pc & mask] = Counters.train(counters[pc & mask], taken);
+	}
+
+	@Override
+	public void reset() {
+		Arrays.fill(counters, (byte) 0);
+	}
+
+}
@@ -0,0 +1,33 @@
+package hardware.branch;
+
+/**
+ * Predicts which way conditional branches go. Predictors are trained with the
+ * outcome of every branch they predict, in program order.
+ * 
+ * @sammc
+ */
+public interface BranchPredictor {
+
+	/**
+	 * Returns true if the branch at pc is predicted taken
+	 * 
+	 * @param pc     address of the branch
+	 * @param target address the branch goes to if taken
+	 * @return
+	 */
+	public boolean predict(int pc, int target);
+
+	/**
+	 * Train on the outcome of the branch at pc
+	 * 
+	 * @param pc
+	 * @param taken
+	 */
+	public void update(int pc, boolean taken);
+
+	/**
+	 * Forget everything learned, as if freshly constructed
+	 */
+	public void reset();
+
+}
@@ -0,0 +1,63 @@
+package hardware.branch;
+
+import java.util.Arrays;
+
+/**
+ * Direct mapped cache of where taken branches and jumps went, so fetch can be
+ * redirected before the instruction is even decoded.
+ * 
+ * @sammc
+ */
+public final class BranchTargetBuffer {
+
+	private final int[] tags; // address of the branch in each entry
+	private final int[] targets;
+	private final boolean[] valid;
+	private final int mask;
+
+	/**
+	 * @param entries a power of two
+	 */
+	public BranchTargetBuffer(int entries) {
+		if (Integer.bitCount(entries) != 1) {
+			throw new IllegalArgumentException("BTB entries must be a power of two: " + entries);
+		}
+		tags = new int[entries];
+		targets = new int[entries];
+		valid = new boolean[entries];
+		mask = entries - 1;
+	}
+
+	/**
+	 * Returns true if the BTB holds target for the branch at pc
+	 * 
+	 * @param pc
+	 * @param target
+	 * @return
+	 */
+	public boolean hits(int pc, int target) {
+		int i = pc & mask;
+		return valid[i] && tags[i] == pc && targets[i] == target;
+	}
+
+	/**
+	 * Record that the branch at pc went to target
+	 * 
+	 * @param pc
+	 * @param target
+	 */
+	public void update(int pc, int target) {
+		int i = pc & mask;
+		tags[i] = pc;
+		targets[i] = target;
+		valid[i] = true;
+	}
+
+	/**
+	 * Invalidate every entry
+	 */
+	public void reset() {
+		Arrays.fill(valid, false);
+	}
+
+}
@@ -0,0 +1,206 @@
+package hardware.branch;
+
+import java.util.Arrays;
+
+import hardware.cpu.CPU;
+
+/**
+ * Front end branch prediction: a direction predictor for beq and bne, a branch
+ * target buffer for where taken branches and jumps go, and a return address
+ * stack for jr $ra.
+ *
+ * A prediction only counts as right if fetch would have carried on from the
+ * right address, so a branch predicted taken also needs its target in the BTB.
+ * Accuracy is kept for every branch and jump address in the text segment.
+ *
+ * Attach to a CPU with CPU.setBranchUnit. The pipeline mode charges its
+ * mispredict penalties only on mispredictions.
+ *
+ * @sammc
+ */
+public final class BranchUnit {
+
+	private final BranchPredictor predictor;
+	private final BranchTargetBuffer btb;
+	private final ReturnAddressStack ras;
+
+	// per address counts, indexed from PC_STARTING_ADDRESS and grown as needed
+	private long[] predictions = new long[0];
+	private long[] mispredictions = new long[0];
+	private long totalPredictions;
+	private long totalMispredictions;
+
+	/**
+	 * A tournament predictor with 4096 entry tables, a 512 entry BTB and a 16
+	 * entry return address stack
+	 */
+	public BranchUnit() {
+		this(new TournamentPredictor(4096), new BranchTargetBuffer(512), new ReturnAddressStack(16));
+	}
+
+	public BranchUnit(BranchPredictor predictor, BranchTargetBuffer btb, ReturnAddressStack ras) {
+		this.predictor = predictor;
+		this.btb = btb;
+		this.ras = ras;
+	}
+
+	/**
+	 * Predict a conditional branch and train on its outcome
+	 *
+	 * @param pc     address of the branch
+	 * @param target address it goes to if taken
+	 * @param taken  whether it was taken
+	 * @return true if it was predicted right
+	 */
+	public boolean branch(int pc, int target, boolean taken) {
+		boolean predicted = predictor.predict(pc, target);
+		boolean right = predicted == taken && (!taken || btb.hits(pc, target));
+		predictor.update(pc, taken);
+		if (taken) {
+			btb.update(pc, target);
+		}
+		record(pc, right);
+		return right;
+	}
+
+	/**
+	 * Predict where a jump goes and train on where it went
+	 *
+	 * @param pc       address of the jump
+	 * @param target   address it went to
+	 * @param call     true for jal, whose return address is pushed
+	 * @param isReturn true for jr $ra, predicted from the return address stack
+	 * @return true if it was predicted right
+	 */
+	public boolean jump(int pc, int target, boolean call, boolean isReturn) {
+		boolean right = isReturn ? ras.pop() == target : btb.hits(pc, target);
+		if (call) {
+			ras.push(pc + 1);
+		}
+		if (!isReturn) {
+			btb.update(pc, target);
+		}
+		record(pc, right);
+		return right;
+	}
+
+	/**
+	 * Forget everything the predictor, BTB and return address stack learned, and
+	 * zero the counts
+	 */
+	public void reset() {
+		predictor.reset();
+		btb.reset();
+		ras.reset();
+		Arrays.fill(predictions, 0);
+		Arrays.fill(mispredictions, 0);
+		totalPredictions = 0;
+		totalMispredictions = 0;
+	}
+
+	private void record(int pc, boolean right) {
+		totalPredictions++;
+		if (!right) {
+			totalMispredictions++;
+		}
+		int index = pc - CPU.PC_STARTING_ADDRESS;
+		if (index < 0 || index >= CPU.STATIC_DATA - CPU.PC_STARTING_ADDRESS) {
+			return;
+		}
+		if (index >= predictions.length) {
+			int length = Math.max(index + 1, predictions.length * 2);
+			predictions = Arrays.copyOf(predictions, length);
+			mispredictions = Arrays.copyOf(mispredictions, length);
+		}
+		predictions[index]++;
+		if (!right) {
+			mispredictions[index]++;
+		}
+	}
+
+	public long getPredictions() {
+		return totalPredictions;
+	}
+
+	public long getMispredictions() {
+		return totalMispredictions;
+	}
+
+	/**
+	 * Returns the fraction predicted right, or 0 if nothing was predicted
+	 *
+	 * @return
+	 */
+	public double getAccuracy() {
+		return accuracy(totalPredictions, totalMispredictions);
+	}
+
+	/**
+	 * Returns the number of predictions made for the branch or jump at pc
+	 *
+	 * @param pc
+	 * @return
+	 */
+	public long getPredictions(int pc) {
+		int index = pc - CPU.PC_STARTING_ADDRESS;
+		return index >= 0 && index < predictions.length ? predictions[index] : 0;
+	}
+
+	public long getMispredictions(int pc) {
+		int index = pc - CPU.PC_STARTING_ADDRESS;
+		return index >= 0 && index < mispredictions.length ? mispredictions[index] : 0;
+	}
+
+	/**
+	 * Returns the fraction of predictions right for the branch or jump at pc, or
+	 * 0 if it never ran
+	 *
+	 * @param pc
+	 * @return
+	 */
+	public double getAccuracy(int pc) {
+		return accuracy(getPredictions(pc), getMispredictions(pc));
+	}
+
+	/**
+	 * Returns the addresses of every branch and jump predicted so far, in order
+	 *
+	 * @return
+	 */
+	public int[] getAddresses() {
+		int count = 0;
+		for (long p : predictions) {
+			if (p != 0) {
+				count++;
+			}
+		}
+		int[] addresses = new int[count];
+		count = 0;
+		for (int i = 0; i < predictions.length; i++) {
+			if (predictions[i] != 0) {
+				addresses[count++] = CPU.PC_STARTING_ADDRESS + i;
+			}
+		}
+		return addresses;
+	}
+
+	private static double accuracy(long predictions, long mispredictions) {
+		return predictions == 0 ? 0 : (double) (predictions - mispredictions) / predictions;
+	}
+
+	/**
+	 * Overall accuracy, then a line per branch or jump address
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("%d predictions, %d mispredicted, %.2f%% accurate%n", totalPredictions,
+				totalMispredictions, getAccuracy() * 100));
+		for (int pc : getAddresses()) {
+			sb.append(String.format("0x%08x: %d predictions, %d mispredicted, %.2f%% accurate%n", pc,
+					getPredictions(pc), getMispredictions(pc), getAccuracy(pc) * 100));
+		}
+		return sb.toString();
+	}
+
+}
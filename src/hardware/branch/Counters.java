@@ -0,0 +1,23 @@
+package hardware.branch;
+
+/**
+ * Two bit saturating counters, shared by the predictors
+ * 
+ * @sammc
+ */
+final class Counters {
+
+	private Counters() {
+	}
+
+	/**
+	 * Returns the counter moved one step towards taken, or not taken
+	 */
+	static byte train(byte counter, boolean taken) {
+		if (taken) {
+			return counter < 3 ? (byte) (counter + 1) : counter;
+		}
+		return counter > 0 ? (byte) (counter - 1) : counter;
+	}
+
+}
@@ -0,0 +1,57 @@
+package hardware.branch;
+
+import java.util.Arrays;
+
+/**
+ * Two bit saturating counters indexed by the branch address xor the global
+ * history of recent branch outcomes, so branches that depend on the branches
+ * before them can be predicted as well as plain biased ones.
+ * 
+ * @sammc
+ */
+public final class GsharePredictor implements BranchPredictor {
+
+	private final byte[] counters;
+	private final int mask;
+	private final int historyMask;
+	private int history; // last outcomes, newest in bit 0
+
+	/**
+	 * @param entries     number of counters, a power of two
+	 * @param historyBits number of past outcomes mixed into the index
+	 */
+	public GsharePredictor(int entries, int historyBits) {
+		if (Integer.bitCount(entries) != 1) {
+			throw new IllegalArgumentException("Predictor entries must be a power of two: " + entries);
+		}
+		if (historyBits < 0 || historyBits > 30) {
+			throw new IllegalArgumentException("History must be 0 to 30 bits: " + historyBits);
+		}
+		counters = new byte[entries];
+		mask = entries - 1;
+		historyMask = (1 << historyBits) - 1;
+	}
+
+	@Override
+	public boolean predict(int pc, int target) {
+		return counters[index(pc)] >= 2;
+	}
+
+	@Override
+	public void update(int pc, boolean taken) {
+		int index = index(pc);
+		counters[index] = Counters.train(counters[index], taken);
+		history = ((history << 1) | (taken ? 1 : 0)) & historyMask;
+	}
+
+	@Override
+	public void reset() {
+		Arrays.fill(counters, (byte) 0);
+		history = 0;
+	}
+
+	private int index(int pc) {
+		return (pc ^ history) & mask;
+	}
+
+}
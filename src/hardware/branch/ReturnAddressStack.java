@@ -0,0 +1,51 @@
+package hardware.branch;
+
+/**
+ * Predicts where returns go by pushing the return address of every call. A
+ * fixed number of entries, the oldest are overwritten when calls nest deeper.
+ * 
+ * @sammc
+ */
+public final class ReturnAddressStack {
+
+	private final int[] entries;
+	private int top; // calls pushed minus returns popped, the stack wraps around
+	private int size; // valid entries, at most entries.length
+
+	/**
+	 * @param depth number of return addresses held
+	 */
+	public ReturnAddressStack(int depth) {
+		if (depth < 1) {
+			throw new IllegalArgumentException("A return address stack needs at least one entry: " + depth);
+		}
+		entries = new int[depth];
+	}
+
+	public void push(int returnAddress) {
+		entries[Math.floorMod(top++, entries.length)] = returnAddress;
+		size = Math.min(size + 1, entries.length);
+	}
+
+	/**
+	 * Returns the predicted return address, or -1 if the stack is empty
+	 * 
+	 * @return
+	 */
+	public int pop() {
+		if (size == 0) {
+			return -1;
+		}
+		size--;
+		return entries[Math.floorMod(--top, entries.length)];
+	}
+
+	/**
+	 * Empty the stack
+	 */
+	public void reset() {
+		top = 0;
+		size = 0;
+	}
+
+}
@@ -0,0 +1,40 @@
+package hardware.branch;
+
+/**
+ * Predicts every branch the same way, without learning anything
+ * 
+ * @sammc
+ */
+public final class StaticPredictor implements BranchPredictor {
+
+	public enum Rule {
+		NOT_TAKEN, TAKEN, BACKWARD_TAKEN // backward branches are usually loops, so taken
+	}
+
+	private final Rule rule;
+
+	public StaticPredictor(Rule rule) {
+		this.rule = rule;
+	}
+
+	@Override
+	public boolean predict(int pc, int target) {
+		switch (rule) {
+		case TAKEN:
+			return true;
+		case BACKWARD_TAKEN:
+			return target <= pc;
+		default:
+			return false;
+		}
+	}
+
+	@Override
+	public void update(int pc, boolean taken) {
+	}
+
+	@Override
+	public void reset() {
+	}
+
+}
@@ -0,0 +1,71 @@
+package hardware.branch;
+
+import java.util.Arrays;
+
+/**
+ * Runs two predictors side by side, with a table of two bit counters indexed
+ * by branch address choosing which one to trust for each branch. Typically a
+ * bimodal and a gshare predictor, so every branch gets whichever suits it.
+ * 
+ * @sammc
+ */
+public final class TournamentPredictor implements BranchPredictor {
+
+	private final BranchPredictor first;
+	private final BranchPredictor second;
+	private final byte[] choosers; // 0-1 trust first, 2-3 trust second
+	private final int mask;
+	private boolean firstPrediction; // what each predicted for the branch being predicted
+	private boolean secondPrediction;
+
+	/**
+	 * A bimodal predictor against a gshare predictor with 12 bits of history,
+	 * each with entries counters
+	 * 
+	 * @param entries number of counters in each table, a power of two
+	 */
+	public TournamentPredictor(int entries) {
+		this(new BimodalPredictor(entries), new GsharePredictor(entries, 12), entries);
+	}
+
+	/**
+	 * @param first
+	 * @param second
+	 * @param entries number of choosers, a power of two
+	 */
+	public TournamentPredictor(BranchPredictor first, BranchPredictor second, int entries) {
+		if (Integer.bitCount(entries) != 1) {
+			throw new IllegalArgumentException("Predictor entries must be a power of two: " + entries);
+		}
+		this.first = first;
+		this.second = second;
+		choosers = new byte[entries];
+		mask = entries - 1;
+	}
+
+	@Override
+	public boolean predict(int pc, int target) {
+		firstPrediction = first.predict(pc, target);
+		secondPrediction = second.predict(pc, target);
+		return choosers[pc & mask] >= 2 ? secondPrediction : firstPrediction;
+	}
+
+	@Override
+	public void update(int pc, boolean taken) {
+		boolean firstRight = firstPrediction == taken;
+		boolean secondRight = secondPrediction == taken;
+		if (firstRight != secondRight) {
+			choosers[pc & mask] = Counters.train(choosers[pc & mask], secondRight);
+		}
+		first.update(pc, taken);
+		second.update(pc, taken);
+	}
+
+	@Override
+	public void reset() {
+		first.reset();
+		second.reset();
+		Arrays.fill(choosers, (byte) 0);
+	}
+
+}
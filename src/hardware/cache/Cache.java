@@ -0,0 +1,323 @@
+package hardware.cache;
+
+import java.util.Arrays;
+
+/**
+ * One level of a set associative cache, modelling which addresses hit and miss.
+ *
+ * The cache only tracks tags and line states, the data itself always comes from
+ * Memory. Sizes are in words, since memory is word addressed. Misses, and
+ * writes going past a write through cache or dirty lines being evicted, are
+ * passed on to the next level, if there is one.
+ *
+ * Tags, states and replacement state are kept in flat primitive arrays indexed
+ * by set * ways + way, so an access is a scan of a few ints with no allocation.
+ *
+ * Not thread safe, each CPU needs caches of its own.
+ *
+ * @sammc
+ */
+public final class Cache {
+
+	private static final byte VALID = 1;
+	private static final byte DIRTY = 2;
+
+	private final String name;
+	private final int ways;
+	private final int lineBits; // log2 of the line size in words
+	private final int setMask; // sets - 1
+	private final ReplacementPolicy replacement;
+	private final WritePolicy writes;
+	private final Cache next; // null for the last level
+
+	private final int[] tags; // line address (address >>> lineBits) of each line
+	private final byte[] states;
+	private final long[] lastUse; // LRU, clock value of each line's last access
+	private final int[] treeBits; // PLRU, one tree per set
+	private long clock;
+	private int random = 0x9E3779B9; // RANDOM, xorshift state
+
+	private long reads;
+	private long writeCount;
+	private long readMisses;
+	private long writeMisses;
+	private long evictions;
+	private long writebacks;
+
+	/**
+	 * @param name        eg. "L1D", used in reports
+	 * @param sizeWords   capacity in words, a power of two
+	 * @param ways        lines per set
+	 * @param lineWords   words per line, a power of two
+	 * @param replacement
+	 * @param writes
+	 * @param next        next level down, or null if misses go to memory
+	 */
+	public Cache(String name, int sizeWords, int ways, int lineWords, ReplacementPolicy replacement,
+			WritePolicy writes, Cache next) {
+		if (Integer.bitCount(sizeWords) != 1 || Integer.bitCount(lineWords) != 1) {
+			throw new IllegalArgumentException(
+					"Cache and line sizes must be powers of two: " + sizeWords + ", " + lineWords);
+		}
+		if (ways < 1 || sizeWords / lineWords % ways != 0 || Integer.bitCount(sizeWords / lineWords / ways) != 1) {
+			throw new IllegalArgumentException("Ways must divide the lines into a power of two sets: " + ways);
+		}
+		if (replacement == ReplacementPolicy.PLRU && (Integer.bitCount(ways) != 1 || ways > 32)) {
+			throw new IllegalArgumentException("PLRU needs a power of two ways, at most 32: " + ways);
+		}
+		int sets = sizeWords / lineWords / ways;
+		this.name = name;
+		this.ways = ways;
+		this.lineBits = Integer.numberOfTrailingZeros(lineWords);
+		this.setMask = sets - 1;
+		this.replacement = replacement;
+		this.writes = writes;
+		this.next = next;
+
+		tags = new int[sets * ways];
+		states = new byte[sets * ways];
+		lastUse = replacement == ReplacementPolicy.LRU ? new long[sets * ways] : null;
+		treeBits = replacement == ReplacementPolicy.PLRU ? new int[sets] : null;
+	}
+
+	/**
+	 * Model a read of the word at address
+	 *
+	 * @param address
+	 * @return true on a hit
+	 */
+	public boolean read(int address) {
+		reads++;
+		int line = address >>> lineBits;
+		int set = line & setMask;
+		int index = lookup(set, line);
+		if (index >= 0) {
+			touch(set, index);
+			return true;
+		}
+		readMisses++;
+		if (next != null) {
+			next.read(address);
+		}
+		touch(set, fill(set, line, VALID));
+		return false;
+	}
+
+	/**
+	 * Model a write of the word at address
+	 *
+	 * @param address
+	 * @return true on a hit
+	 */
+	public boolean write(int address) {
+		writeCount++;
+		int line = address >>> lineBits;
+		int set = line & setMask;
+		int index = lookup(set, line);
+		if (writes == WritePolicy.WRITE_THROUGH) {
+			if (index >= 0) {
+				touch(set, index);
+			} else {
+				writeMisses++;
+			}
+			if (next != null) {
+				next.write(address);
+			}
+			return index >= 0;
+		}
+
+		if (index >= 0) {
+			states[index] |= DIRTY;
+			touch(set, index);
+			return true;
+		}
+		writeMisses++;
+		if (next != null) {
+			next.read(address); // fetch the rest of the line
+		}
+		touch(set, fill(set, line, (byte) (VALID | DIRTY)));
+		return false;
+	}
+
+	/**
+	 * Invalidate every line, without writing anything back, and zero the counts
+	 */
+	public void reset() {
+		Arrays.fill(states, (byte) 0);
+		if (lastUse != null) {
+			Arrays.fill(lastUse, 0);
+		}
+		if (treeBits != null) {
+			Arrays.fill(treeBits, 0);
+		}
+		clock = 0;
+		reads = writeCount = readMisses = writeMisses = evictions = writebacks = 0;
+	}
+
+	/**
+	 * Returns the index of line in set, or -1 if it isn't cached
+	 */
+	private int lookup(int set, int line) {
+		int base = set * ways;
+		for (int i = base; i < base + ways; i++) {
+			if (tags[i] == line && states[i] != 0) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Put line into set, evicting a line if the set is full
+	 *
+	 * @return index of the filled line
+	 */
+	private int fill(int set, int line, byte state) {
+		int base = set * ways;
+		int index = -1;
+		for (int i = base; i < base + ways; i++) {
+			if (states[i] == 0) {
+				index = i;
+				break;
+			}
+		}
+		if (index < 0) {
+			index = base + victim(set);
+			evictions++;
+			if ((states[index] & DIRTY) != 0) {
+				writebacks++;
+				if (next != null) {
+					next.write(tags[index] << lineBits);
+				}
+			}
+		}
+		tags[index] = line;
+		states[index] = state;
+		return index;
+	}
+
+	/**
+	 * Returns the way to evict from a full set
+	 */
+	private int victim(int set) {
+		switch (replacement) {
+		case LRU: {
+			int base = set * ways;
+			int oldest = base;
+			for (int i = base + 1; i < base + ways; i++) {
+				if (lastUse[i] < lastUse[oldest]) {
+					oldest = i;
+				}
+			}
+			return oldest - base;
+		}
+		case PLRU: {
+			// follow the bits, each points at the less recently used half
+			int bits = treeBits[set];
+			int node = 1;
+			while (node < ways) {
+				node = 2 * node + ((bits >>> node) & 1);
+			}
+			return node - ways;
+		}
+		default:
+			random ^= random << 13;
+			random ^= random >>> 17;
+			random ^= random << 5;
+			return (random & 0x7FFF_FFFF) % ways;
+		}
+	}
+
+	/**
+	 * Mark the line at index as just used
+	 */
+	private void touch(int set, int index) {
+		if (lastUse != null) {
+			lastUse[index] = ++clock;
+		} else if (treeBits != null) {
+			// point every node on the way to this line at the other half
+			int way = index - set * ways;
+			int bits = treeBits[set];
+			int node = 1;
+			for (int half = ways >>> 1; half > 0; half >>>= 1) {
+				int right = (way & half) != 0 ? 1 : 0;
+				bits = right == 1 ? bits & ~(1 << node) : bits | (1 << node);
+				node = 2 * node + right;
+			}
+			treeBits[set] = bits;
+		}
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Returns the next level down, or null if this is the last level
+	 *
+	 * @return
+	 */
+	public Cache getNext() {
+		return next;
+	}
+
+	public long getReads() {
+		return reads;
+	}
+
+	public long getWrites() {
+		return writeCount;
+	}
+
+	public long getHits() {
+		return reads + writeCount - readMisses - writeMisses;
+	}
+
+	public long getMisses() {
+		return readMisses + writeMisses;
+	}
+
+	public long getReadMisses() {
+		return readMisses;
+	}
+
+	public long getWriteMisses() {
+		return writeMisses;
+	}
+
+	/**
+	 * Returns the number of valid lines replaced to make room for another
+	 *
+	 * @return
+	 */
+	public long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * Returns the number of evicted lines that were dirty and had to be written to
+	 * the next level
+	 *
+	 * @return
+	 */
+	public long getWritebacks() {
+		return writebacks;
+	}
+
+	/**
+	 * Returns hits over accesses, or 0 if there haven't been any
+	 *
+	 * @return
+	 */
+	public double getHitRate() {
+		long accesses = reads + writeCount;
+		return accesses == 0 ? 0 : (double) getHits() / accesses;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s: %d hits, %d misses (%.2f%% hit rate), %d evictions, %d writebacks", name, getHits(),
+				getMisses(), getHitRate() * 100, evictions, writebacks);
+	}
+
+}
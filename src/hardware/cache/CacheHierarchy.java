@@ -0,0 +1,98 @@
+package hardware.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The caches a CPU goes through, split L1 instruction and data caches over
+ * whatever levels they share below. Attach one with CPU.setCaches.
+ *
+ * @sammc
+ */
+public final class CacheHierarchy {
+
+	private final Cache instructions;
+	private final Cache data;
+
+	/**
+	 * A typical hierarchy: 8K word (32KB) L1 instruction and data caches, 8 way
+	 * with 16 word lines, over a shared 64K word (256KB) 8 way L2. All LRU and
+	 * write back.
+	 */
+	public CacheHierarchy() {
+		Cache l2 = new Cache("L2", 1 << 16, 8, 16, ReplacementPolicy.LRU, WritePolicy.WRITE_BACK, null);
+		this.instructions = new Cache("L1I", 1 << 13, 8, 16, ReplacementPolicy.LRU, WritePolicy.WRITE_BACK, l2);
+		this.data = new Cache("L1D", 1 << 13, 8, 16, ReplacementPolicy.LRU, WritePolicy.WRITE_BACK, l2);
+	}
+
+	/**
+	 * @param instructions first level for instruction fetches
+	 * @param data         first level for loads and stores, may share levels below
+	 *                     with instructions
+	 */
+	public CacheHierarchy(Cache instructions, Cache data) {
+		this.instructions = instructions;
+		this.data = data;
+	}
+
+	public void fetch(int address) {
+		instructions.read(address);
+	}
+
+	public void read(int address) {
+		data.read(address);
+	}
+
+	public void write(int address) {
+		data.write(address);
+	}
+
+	public Cache getInstructionCache() {
+		return instructions;
+	}
+
+	public Cache getDataCache() {
+		return data;
+	}
+
+	/**
+	 * Returns every cache in the hierarchy once, first levels first
+	 *
+	 * @return
+	 */
+	public List<Cache> getCaches() {
+		List<Cache> caches = new ArrayList<Cache>();
+		Cache i = instructions;
+		Cache d = data;
+		while (i != null || d != null) {
+			if (i != null && !caches.contains(i)) {
+				caches.add(i);
+			}
+			if (d != null && !caches.contains(d)) {
+				caches.add(d);
+			}
+			i = i == null ? null : i.getNext();
+			d = d == null ? null : d.getNext();
+		}
+		return caches;
+	}
+
+	/**
+	 * Invalidate every cache and zero its counts
+	 */
+	public void reset() {
+		for (Cache cache : getCaches()) {
+			cache.reset();
+		}
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (Cache cache : getCaches()) {
+			sb.append(cache).append('\n');
+		}
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,26 @@
+package hardware.cache;
+
+/**
+ * How a Cache picks the line of a full set to evict
+ * 
+ * @sammc
+ */
+public enum ReplacementPolicy {
+
+	/**
+	 * The least recently used line
+	 */
+	LRU,
+
+	/**
+	 * Tree pseudo LRU, one bit per node of a binary tree over the ways. Needs a
+	 * power of two ways.
+	 */
+	PLRU,
+
+	/**
+	 * Any line, picked at random
+	 */
+	RANDOM
+
+}
@@ -0,0 +1,22 @@
+package hardware.cache;
+
+/**
+ * What a Cache does with writes
+ * 
+ * @sammc
+ */
+public enum WritePolicy {
+
+	/**
+	 * Write into the cache only, allocating the line on a miss. Dirty lines are
+	 * written to the next level when evicted.
+	 */
+	WRITE_BACK,
+
+	/**
+	 * Write to the next level every time, updating the line only if it is
+	 * already cached
+	 */
+	WRITE_THROUGH
+
+}
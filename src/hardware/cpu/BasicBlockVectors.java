@@ -0,0 +1,377 @@
+package hardware.cpu;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.SplittableRandom;
+
+import hardware.ExecutionMode;
+import hardware.cache.CacheHierarchy;
+
+/**
+ * Basic block vectors of a run, as SimPoint uses them to pick the parts of a
+ * program worth simulating in detail.
+ *
+ * The run is cut into intervals of about the same number of instructions. An
+ * interval's vector counts the instructions executed in each basic block, so
+ * intervals running the same code the same way have vectors pointing the same
+ * way. Vectors are collected running in ExecutionMode.BASIC_BLOCK, which sees
+ * every block anyway, so collecting costs about one run in that mode.
+ *
+ * choose groups the intervals into phases with k-means, on vectors randomly
+ * projected down to PROJECTED_DIMENSIONS as SimPoint does, and picks the
+ * interval closest to the middle of each phase to stand for it, see
+ * SampledSimulation.run. write saves the vectors in the frequency vector
+ * format SimPoint itself reads.
+ *
+ * @sammc
+ */
+public final class BasicBlockVectors {
+
+	public static final int PROJECTED_DIMENSIONS = 15;
+
+	private static final int MAX_ITERATIONS = 100;
+
+	private final List<int[]> blocks = new ArrayList<int[]>(); // per interval, the start index of each block run
+	private final List<long[]> counts = new ArrayList<long[]>(); // per interval, instructions run in each of them
+	private final List<Long> starts = new ArrayList<Long>(); // per interval, the instruction count it started at
+	private final List<Long> lengths = new ArrayList<Long>();
+
+	private BasicBlockVectors() {
+	}
+
+	/**
+	 * Run the loaded program to the end, collecting a vector every interval
+	 * instructions. Intervals end on block boundaries, so each runs a few
+	 * instructions past interval, and the last one is usually short.
+	 *
+	 * @param cpu      with a program loaded
+	 * @param interval
+	 * @return
+	 * @throws IllegalStateException if a trace, journal or watchpoint would make
+	 *                               the CPU interpret rather than run blocks
+	 */
+	public static BasicBlockVectors collect(CPU cpu, long interval) {
+		if (interval <= 0) {
+			throw new IllegalArgumentException("interval must be positive");
+		}
+		BasicBlockVectors vectors = new BasicBlockVectors();
+		ExecutionMode mode = cpu.getExecutionMode();
+		CacheHierarchy caches = cpu.getCaches();
+		long[] profile = new long[cpu.textLength()];
+		cpu.setExecutionMode(ExecutionMode.BASIC_BLOCK);
+		cpu.setCaches(null);
+		try {
+			if (cpu.runMode() != ExecutionMode.BASIC_BLOCK) {
+				throw new IllegalStateException("a trace, journal or watchpoint keeps the CPU interpreting");
+			}
+			cpu.profileBlocks(profile);
+			boolean running = true;
+			while (running) {
+				long start = cpu.getInstructionCount();
+				running = cpu.run(interval);
+				if (cpu.getInstructionCount() > start) {
+					vectors.add(profile, start, cpu.getInstructionCount() - start);
+				}
+			}
+		} finally {
+			cpu.profileBlocks(null);
+			cpu.setCaches(caches);
+			cpu.setExecutionMode(mode);
+		}
+		return vectors;
+	}
+
+	/**
+	 * Take an interval's vector out of profile, leaving it zeroed
+	 */
+	private void add(long[] profile, long start, long length) {
+		int n = 0;
+		for (long count : profile) {
+			if (count != 0) {
+				n++;
+			}
+		}
+		int[] indices = new int[n];
+		long[] values = new long[n];
+		n = 0;
+		for (int i = 0; i < profile.length; i++) {
+			if (profile[i] != 0) {
+				indices[n] = i;
+				values[n++] = profile[i];
+				profile[i] = 0;
+			}
+		}
+		blocks.add(indices);
+		counts.add(values);
+		starts.add(start);
+		lengths.add(length);
+	}
+
+	/**
+	 * Returns the number of intervals collected
+	 *
+	 * @return
+	 */
+	public int getIntervals() {
+		return starts.size();
+	}
+
+	/**
+	 * Returns the instruction count the interval started at
+	 *
+	 * @param interval
+	 * @return
+	 */
+	public long getStart(int interval) {
+		return starts.get(interval);
+	}
+
+	public long getLength(int interval) {
+		return lengths.get(interval);
+	}
+
+	/**
+	 * Returns the instructions the interval ran in each basic block, by the
+	 * block's start address
+	 *
+	 * @param interval
+	 * @return
+	 */
+	public Map<Integer, Long> getVector(int interval) {
+		Map<Integer, Long> vector = new HashMap<Integer, Long>();
+		int[] indices = blocks.get(interval);
+		for (int i = 0; i < indices.length; i++) {
+			vector.put(CPU.PC_STARTING_ADDRESS + indices[i], counts.get(interval)[i]);
+		}
+		return vector;
+	}
+
+	/**
+	 * Write the vectors in SimPoint's frequency vector format, a line per
+	 * interval of :block:count pairs, blocks numbered from 1 by their offset in
+	 * the text segment
+	 *
+	 * @param out
+	 * @throws IOException
+	 */
+	public void write(Writer out) throws IOException {
+		for (int interval = 0; interval < blocks.size(); interval++) {
+			StringBuilder line = new StringBuilder("T");
+			int[] indices = blocks.get(interval);
+			for (int i = 0; i < indices.length; i++) {
+				line.append(':').append(indices[i] + 1).append(':').append(counts.get(interval)[i]).append(' ');
+			}
+			out.write(line.append('\n').toString());
+		}
+	}
+
+	/**
+	 * Group the intervals into at most k phases and pick one interval to stand
+	 * for each
+	 *
+	 * @param k
+	 * @param seed for the projection and the first centres, the same seed picks
+	 *             the same intervals
+	 * @return a point per phase, in the order they run
+	 */
+	public List<SimPoint> choose(int k, long seed) {
+		int n = getIntervals();
+		k = Math.min(k, n);
+		if (k <= 0) {
+			return Collections.emptyList();
+		}
+		double[][] points = project(seed);
+
+		// k-means, seeded with k-means++
+		Random random = new Random(seed);
+		double[][] centres = new double[k][];
+		centres[0] = points[random.nextInt(n)].clone();
+		double[] distances = new double[n];
+		for (int c = 1; c < k; c++) {
+			double total = 0;
+			for (int i = 0; i < n; i++) {
+				distances[i] = nearest(points[i], centres, c)[1];
+				total += distances[i];
+			}
+			double pick = random.nextDouble() * total;
+			int chosen = 0;
+			while (chosen < n - 1 && (pick -= distances[chosen]) > 0) {
+				chosen++;
+			}
+			centres[c] = points[chosen].clone();
+		}
+		int[] cluster = new int[n];
+		Arrays.fill(cluster, -1);
+		for (int iteration = 0; iteration < MAX_ITERATIONS; iteration++) {
+			boolean moved = false;
+			for (int i = 0; i < n; i++) {
+				int c = (int) nearest(points[i], centres, k)[0];
+				if (c != cluster[i]) {
+					cluster[i] = c;
+					moved = true;
+				}
+			}
+			if (!moved) {
+				break;
+			}
+			for (int c = 0; c < k; c++) {
+				double[] sum = new double[PROJECTED_DIMENSIONS];
+				int members = 0;
+				for (int i = 0; i < n; i++) {
+					if (cluster[i] == c) {
+						for (int d = 0; d < PROJECTED_DIMENSIONS; d++) {
+							sum[d] += points[i][d];
+						}
+						members++;
+					}
+				}
+				if (members > 0) { // else it keeps its centre
+					for (int d = 0; d < PROJECTED_DIMENSIONS; d++) {
+						sum[d] /= members;
+					}
+					centres[c] = sum;
+				}
+			}
+		}
+
+		// the interval nearest each centre stands for its phase, weighted by the
+		// instructions in the phase
+		long total = 0;
+		for (long length : lengths) {
+			total += length;
+		}
+		List<SimPoint> chosen = new ArrayList<SimPoint>(k);
+		for (int c = 0; c < k; c++) {
+			int best = -1;
+			double bestDistance = Double.MAX_VALUE;
+			long instructions = 0;
+			for (int i = 0; i < n; i++) {
+				if (cluster[i] == c) {
+					instructions += lengths.get(i);
+					double distance = distance(points[i], centres[c]);
+					if (distance < bestDistance) {
+						best = i;
+						bestDistance = distance;
+					}
+				}
+			}
+			if (best >= 0) {
+				chosen.add(new SimPoint(best, starts.get(best), lengths.get(best), (double) instructions / total));
+			}
+		}
+		chosen.sort((a, b) -> Integer.compare(a.interval, b.interval));
+		return chosen;
+	}
+
+	/**
+	 * Normalise each vector to sum to one, then project it onto
+	 * PROJECTED_DIMENSIONS random directions, drawn per block from seed
+	 */
+	private double[][] project(long seed) {
+		Map<Integer, double[]> directions = new HashMap<Integer, double[]>();
+		double[][] points = new double[getIntervals()][PROJECTED_DIMENSIONS];
+		for (int interval = 0; interval < points.length; interval++) {
+			int[] indices = blocks.get(interval);
+			long[] values = counts.get(interval);
+			double length = lengths.get(interval);
+			for (int i = 0; i < indices.length; i++) {
+				double[] direction = directions.computeIfAbsent(indices[i], block -> {
+					SplittableRandom random = new SplittableRandom(seed ^ (block * 0x9E3779B97F4A7C15L));
+					double[] d = new double[PROJECTED_DIMENSIONS];
+					for (int j = 0; j < d.length; j++) {
+						d[j] = random.nextDouble(-1, 1);
+					}
+					return d;
+				});
+				for (int d = 0; d < PROJECTED_DIMENSIONS; d++) {
+					points[interval][d] += values[i] / length * direction[d];
+				}
+			}
+		}
+		return points;
+	}
+
+	/**
+	 * Returns the index of the nearest of the first count centres, and its
+	 * squared distance
+	 */
+	private static double[] nearest(double[] point, double[][] centres, int count) {
+		int best = 0;
+		double bestDistance = Double.MAX_VALUE;
+		for (int c = 0; c < count; c++) {
+			double distance = distance(point, centres[c]);
+			if (distance < bestDistance) {
+				best = c;
+				bestDistance = distance;
+			}
+		}
+		return new double[] { best, bestDistance };
+	}
+
+	private static double distance(double[] a, double[] b) {
+		double sum = 0;
+		for (int d = 0; d < a.length; d++) {
+			sum += (a[d] - b[d]) * (a[d] - b[d]);
+		}
+		return sum;
+	}
+
+	/**
+	 * An interval picked to stand for one phase of the run
+	 */
+	public static final class SimPoint {
+
+		private final int interval;
+		private final long start;
+		private final long length;
+		private final double weight;
+
+		private SimPoint(int interval, long start, long length, double weight) {
+			this.interval = interval;
+			this.start = start;
+			this.length = length;
+			this.weight = weight;
+		}
+
+		public int getInterval() {
+			return interval;
+		}
+
+		/**
+		 * Returns the instruction count the interval starts at
+		 *
+		 * @return
+		 */
+		public long getStart() {
+			return start;
+		}
+
+		public long getLength() {
+			return length;
+		}
+
+		/**
+		 * Returns the fraction of the run's instructions in the phase this
+		 * interval stands for
+		 *
+		 * @return
+		 */
+		public double getWeight() {
+			return weight;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("interval %d at %d, weight %.3f", interval, start, weight);
+		}
+
+	}
+
+}
@@ -0,0 +1,323 @@
+package hardware.cpu;
+
+import java.util.Arrays;
+
+import hardware.DispatchTable;
+import hardware.datatypes.I_Instruction;
+import hardware.datatypes.Instruction;
+import hardware.datatypes.J_Instruction;
+import hardware.datatypes.R_Instruction;
+import hardware.metrics.ExecutionCounters;
+
+/**
+ * Execution engine that runs the text segment a basic block at a time.
+ *
+ * The first time a block is reached it is translated into a list of operations,
+ * each already bound to its CPU instruction method and operands. After that the
+ * block runs as a straight loop over its operations, without fetching, decoding
+ * or dispatching any of its instructions again.
+ *
+ * A block ends after its first branch, jump, syscall or coprocessor 0
+ * instruction, before a halt, or at the end of the loaded program. Anything
+ * outside the loaded program is run through the regular fetch and execute path.
+ *
+ * Operations that can raise an exception set the PC to their own address
+ * first, so EPC comes out right, and the rest of the block is skipped when one
+ * does.
+ *
+ * @sammc
+ */
+final class BlockEngine {
+
+	private static final class Block {
+		final Runnable[] ops;
+		final Instruction[] instructions; // one per op, for metrics
+		final boolean halts; // the instruction after the last op is a halt
+
+		Block(Runnable[] ops, Instruction[] instructions, boolean halts) {
+			this.ops = ops;
+			this.instructions = instructions;
+			this.halts = halts;
+		}
+	}
+
+	private final CPU cpu;
+	private Block[] blocks; // translated blocks, indexed by start address from PC_STARTING_ADDRESS
+	private long[] profile; // instructions executed per block, indexed the same way, null when not profiling
+
+	BlockEngine(CPU cpu) {
+		this.cpu = cpu;
+		this.blocks = new Block[0];
+	}
+
+	/**
+	 * Drop all translations and size the block cache for a newly loaded program
+	 *
+	 * @param textLength number of instructions in the program
+	 */
+	void reset(int textLength) {
+		blocks = new Block[textLength];
+	}
+
+	/**
+	 * Drop all translations, called when the text segment is written to. Blocks
+	 * are translated again the next time they are reached.
+	 */
+	void invalidate() {
+		Arrays.fill(blocks, null);
+	}
+
+	/**
+	 * Count the instructions executed in each block into profile, see
+	 * CPU.profileBlocks
+	 *
+	 * @param profile
+	 */
+	void profile(long[] profile) {
+		this.profile = profile;
+	}
+
+	/**
+	 * Run the loaded program until it halts or leaves the text segment
+	 */
+	void run() {
+		long[] profile = this.profile;
+		while (cpu.getPC() <= CPU.STATIC_DATA) {
+			int pc = cpu.getPC();
+			Block block = lookup(pc);
+
+			if (block == null) { // outside the loaded program, run one instruction
+				Instruction ins = cpu.fetch(pc);
+				if (ins.value == 0xFFFFFFFF) // Sentinel, halt program execution
+					break;
+				cpu.execute(ins);
+				cpu.setPC(cpu.getPC() + 1);
+				ExecutionCounters counters = cpu.counters();
+				if (counters != null) {
+					counters.retire(ins);
+				}
+				if (cpu.addInstructions(1))
+					break;
+				continue;
+			}
+
+			Runnable[] ops = block.ops;
+			long exceptions = cpu.getExceptionCount();
+			int last = ops.length - 1;
+			int executed = ops.length;
+			for (int i = 0; i < last; i++) {
+				ops[i].run();
+				if (cpu.getExceptionCount() != exceptions) { // skip the rest, the handler is next
+					executed = i + 1;
+					break;
+				}
+			}
+			if (executed == ops.length && last >= 0) {
+				// only the last op can be a branch or jump, and it expects PC at its own address
+				cpu.setPC(pc + last);
+				ops[last].run();
+			}
+			if (executed > 0) {
+				cpu.setPC(cpu.getPC() + 1);
+			}
+			boolean raised = cpu.getExceptionCount() != exceptions;
+			ExecutionCounters counters = cpu.counters();
+			if (counters != null) {
+				count(counters, block, pc, executed);
+			}
+			if (profile != null) {
+				profile[pc - CPU.PC_STARTING_ADDRESS] += executed;
+			}
+			if (cpu.addInstructions(executed) || (block.halts && !raised))
+				break;
+		}
+	}
+
+	private void count(ExecutionCounters counters, Block block, int pc, int executed) {
+		for (int i = 0; i < executed; i++) {
+			counters.retire(block.instructions[i]);
+		}
+		int last = block.instructions.length - 1;
+		if (executed == last + 1 && last >= 0 && block.instructions[last].isIType()
+				&& ((I_Instruction) block.instructions[last]).isBranch()) {
+			counters.branch(cpu.getPC() != pc + last + 1);
+		}
+	}
+
+	/**
+	 * Returns the block starting at address, translating it on first use
+	 *
+	 * @param address
+	 * @return the block, or null if address is outside the loaded program
+	 */
+	private Block lookup(int address) {
+		int index = address - CPU.PC_STARTING_ADDRESS;
+		if (index < 0 || index >= blocks.length) {
+			return null;
+		}
+		Block block = blocks[index];
+		if (block == null) {
+			block = blocks[index] = translate(address, CPU.PC_STARTING_ADDRESS + blocks.length);
+		}
+		return block;
+	}
+
+	/*
+	 * Translation
+	 */
+
+	private Block translate(int start, int end) {
+		Runnable[] ops = new Runnable[end - start];
+		Instruction[] instructions = new Instruction[end - start];
+		int length = 0;
+		boolean halts = false;
+
+		for (int address = start; address < end; address++) {
+			Instruction ins = cpu.fetch(address);
+			if (ins.value == 0xFFFFFFFF) {
+				halts = true;
+				break;
+			}
+			instructions[length] = ins;
+			ops[length++] = bind(ins, address);
+			if (endsBlock(ins)) {
+				break;
+			}
+		}
+		return new Block(Arrays.copyOf(ops, length), Arrays.copyOf(instructions, length), halts);
+	}
+
+	private static boolean endsBlock(Instruction ins) {
+		if (ins.isJType()) {
+			return true;
+		} else if (ins.isIType()) {
+			return ((I_Instruction) ins).isBranch() || ins.opcode == 0x10; // eret jumps
+		} else if (ins.isRType()) {
+			return ((R_Instruction) ins).func == 0x8 || ((R_Instruction) ins).func == 0xc; // jr, syscall may exit
+		}
+		return false;
+	}
+
+	/**
+	 * Bind an instruction to the CPU method it dispatches to, with its operands
+	 * already pulled out of the instruction. Anything without a plain one to one
+	 * mapping is bound to its handler from the DispatchTable.
+	 *
+	 * @param ins
+	 * @param address of ins, set as the PC by anything that can raise an
+	 *                exception
+	 * @return
+	 */
+	private Runnable bind(Instruction ins, int address) {
+		Runnable op = null;
+		if (ins.isRType()) {
+			op = bindRType((R_Instruction) ins, address);
+		} else if (ins.isJType()) {
+			op = bindJType((J_Instruction) ins);
+		} else if (ins.isIType()) {
+			op = bindIType((I_Instruction) ins, address);
+		}
+		if (op == null) {
+			DispatchTable.Handler handler = DispatchTable.handler(ins);
+			op = () -> {
+				cpu.setPC(address);
+				handler.execute(cpu, ins);
+			};
+		}
+		return op;
+	}
+
+	private Runnable bindRType(R_Instruction ins, int address) {
+		final int rd = ins.rd, rs = ins.rs, rt = ins.rt, shamt = ins.shamt;
+		switch (ins.func) {
+		case 0x20:
+			return () -> {
+				cpu.setPC(address);
+				cpu.add(rd, rs, rt);
+			};
+		case 0x21:
+			return () -> cpu.addu(rd, rs, rt);
+		case 0x24:
+			return () -> cpu.and(rd, rs, rt);
+		case 0x8:
+			return () -> cpu.jr(rs);
+		case 0x27:
+			return () -> cpu.nor(rd, rs, rt);
+		case 0x25:
+			return () -> cpu.or(rd, rs, rt);
+		case 0x2a:
+			return () -> cpu.slt(rd, rs, rt);
+		case 0x2b:
+			return () -> cpu.sltu(rd, rs, rt);
+		case 0x00:
+			return () -> cpu.sll(rd, rs, shamt);
+		case 0x02:
+			return () -> cpu.srl(rd, rs, shamt);
+		case 0x22:
+			return () -> {
+				cpu.setPC(address);
+				cpu.sub(rd, rs, rt);
+			};
+		case 0x23:
+			return () -> cpu.subu(rd, rs, rt);
+		}
+		return null;
+	}
+
+	private Runnable bindIType(I_Instruction ins, int address) {
+		final int rs = ins.rs, rt = ins.rt, immediate = ins.immediate;
+		switch (ins.opcode) {
+		case 0x8:
+			return () -> {
+				cpu.setPC(address);
+				cpu.addi(rt, rs, immediate);
+			};
+		case 0x9:
+			return () -> cpu.addiu(rt, rs, immediate);
+		case 0xc:
+			return () -> cpu.andi(rt, rs, immediate);
+		case 0x4:
+			return () -> cpu.beq(rs, rt, immediate);
+		case 0x5:
+			return () -> cpu.bne(rs, rt, immediate);
+		case 0xf:
+			return () -> cpu.lui(rt, immediate);
+		case 0x23:
+			return () -> {
+				cpu.setPC(address);
+				cpu.lw(rt, rs, immediate);
+			};
+		case 0xd:
+			return () -> cpu.ori(rt, rs, immediate);
+		case 0xa:
+			return () -> cpu.slti(rt, rs, immediate);
+		case 0xb:
+			return () -> cpu.sltiu(rt, rs, immediate);
+		case 0x2b:
+			return () -> {
+				cpu.setPC(address);
+				cpu.sw(rt, rs, immediate);
+			};
+		case 0x30:
+			return () -> {
+				cpu.setPC(address);
+				cpu.ll(rt, rs, immediate);
+			};
+		case 0x38:
+			return () -> {
+				cpu.setPC(address);
+				cpu.sc(rt, rs, immediate);
+			};
+		}
+		return null;
+	}
+
+	private Runnable bindJType(J_Instruction ins) {
+		final int address = ins.address;
+		if (ins.opcode == 2) {
+			return () -> cpu.j(address);
+		}
+		return () -> cpu.jal(address);
+	}
+
+}
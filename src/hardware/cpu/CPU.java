@@ -1,13 +1,29 @@
 package hardware.cpu;
 
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import hardware.ExecutionMode;
+import hardware.branch.BranchUnit;
+import hardware.cache.CacheHierarchy;
 import hardware.MipsIsa;
 import hardware.SimulatedComputer;
 import hardware.datatypes.Instruction;
+import hardware.device.DeviceBus;
 import hardware.exceptions.HardwareMemoryLoadException;
-import hardware.exceptions.InstructionNotSupportedException;
 import hardware.exceptions.MemoryAccessException;
-import hardware.exceptions.OverflowException;
+import hardware.memory.Memory;
+import hardware.memory.PagedMemory;
+import hardware.metrics.ExecutionCounters;
+import hardware.metrics.ExecutionMetrics;
+import hardware.metrics.ProgramRunEvent;
+import hardware.replay.Journal;
+import hardware.syscall.Syscalls;
+import hardware.trace.ExecutionTrace;
 import software.datatypes.Program;
+import software.elf.ElfFile;
 
 /**
  * Class which represents the hardware control structure.
@@ -15,11 +31,17 @@ import software.datatypes.Program;
  * Contains registers, ram, fetch execute cycle, and all instruction
  * definitions.
  * 
+ * Exceptions are precise and handled by the guest, as on MIPS with
+ * coprocessor 0. Overflow in add, addi and sub, loads and stores outside user
+ * memory and the device window, and reserved instructions set EPC, Cause and
+ * BadVAddr and carry on at the handler in EBase, see raise. They are plain
+ * changes of state, so a handled exception costs about what a jump does.
+ * 
  * @sammc
  */
 public class CPU implements MipsIsa, SimulatedComputer {
 
-	public boolean debug_mode = true; // Debug Mode
+	public boolean debug_mode = false; // Debug Mode, prints the state of the cpu when it stops
 
 	// RAM Details
 	public static final int PC_STARTING_ADDRESS = 0x0040_0000;
@@ -28,9 +50,44 @@ public class CPU implements MipsIsa, SimulatedComputer {
 	public static final int END_DYNAMIC_DATA = 0x07fff_fffc;
 	public static final int RAM_ADDRESS_SPACE = 0x7fff_fffd; // number of addresses
 
+	public static final int DEADLINE_INTERVAL = 1 << 16; // instructions between looks at the clock in a timed run
+
 	private int R[]; // Registers
-	private int M[]; // Random Access Memory
+	private final int C0[] = new int[NUMBER_OF_REGISTERS]; // Coprocessor 0 registers
+	private long exceptions; // Exceptions raised since the program was loaded
+	private final Memory M; // Random Access Memory
 	private int PC; // Program Counter
+	private long instructionCount; // Instructions executed since the program was loaded
+	private ExecutionTrace trace; // null when not tracing
+	private CacheHierarchy caches; // null when not modelling caches
+	private BranchUnit branchUnit; // null to predict every branch not taken
+	private Syscalls syscalls; // created on the first syscall unless set
+	private DeviceBus devices; // null when nothing is memory mapped
+	private Debugger debugger; // null until breakpoints or watchpoints are first used
+	private Journal journal; // null when not recording or replaying
+	private Map<String, Integer> labels = Collections.emptyMap(); // text labels of the loaded program
+
+	// Metrics, see ExecutionMetrics
+	private final ExecutionCounters counters = new ExecutionCounters();
+	private boolean counting; // histograms enabled for the current run
+	private long published; // instruction count last published
+	private long checkpoint = ExecutionMetrics.PUBLISH_INTERVAL; // instruction count checkpoint is next due at
+	private long stopAt = Long.MAX_VALUE; // instruction count the current run stops at, see run
+	private long deadline; // System.nanoTime the current run stops at, if timed
+	private boolean timed;
+	private StopReason stop; // why the last run returned, null while running
+
+	private Instruction[] decoded; // Pre-decoded text segment, indexed from PC_STARTING_ADDRESS
+
+	// Link reservation, set by ll and consumed by sc
+	private boolean linked;
+	private int linkedAddress;
+	private int linkedValue;
+
+	private ExecutionMode mode = ExecutionMode.INTERPRETER;
+	private final BlockEngine blockEngine;
+	private final JitEngine jitEngine;
+	private final PipelineEngine pipelineEngine;
 
 	/*
 	 * Public Interface
@@ -38,14 +95,404 @@ public class CPU implements MipsIsa, SimulatedComputer {
 
 	// Constructor
 	public CPU() {
+		this(new PagedMemory()); // Initialize memory, pages are allocated on first write
+	}
+
+	// Construct with a specific memory implementation, eg. DirectMemory
+	public CPU(Memory memory) {
 		PC = PC_STARTING_ADDRESS; // Initialize Program Counter
 		R = new int[NUMBER_OF_REGISTERS]; // Initialize Registers
-		M = new int[RAM_ADDRESS_SPACE]; // Initialize memory 2^18 ~ 262 kb
+		M = memory;
+		decoded = new Instruction[0];
+		blockEngine = new BlockEngine(this);
+		jitEngine = new JitEngine(this);
+		pipelineEngine = new PipelineEngine(this);
+	}
+
+	// Construct in the state captured by a snapshot, see Snapshot.fork
+	CPU(Snapshot s) {
+		this(s.memory.fork());
+		System.arraycopy(s.registers, 0, R, 0, R.length);
+		System.arraycopy(s.cp0, 0, C0, 0, C0.length);
+		PC = s.pc;
+		instructionCount = s.instructionCount;
+		published = instructionCount; // counted by the CPU the snapshot came from
+		schedule();
+		mode = s.mode;
+		decoded = s.decoded.clone();
+		blockEngine.reset(decoded.length);
+		jitEngine.reset(decoded.length);
+		pipelineEngine.reset(decoded.length);
 	}
 
 	@Override
 	public void start() {
-		fetchExecuteLoop();
+		ProgramRunEvent event = null;
+		if (ExecutionMetrics.isRegistered()) {
+			event = new ProgramRunEvent();
+			event.begin();
+		}
+		long startCount = instructionCount;
+		counting = ExecutionMetrics.get().isHistogramsEnabled();
+		StopReason last = stop;
+		stop = null;
+
+		ExecutionMode runMode = runMode();
+		if (debugger != null)
+			debugger.resume(last);
+		if (stop == null) { // else the instruction resumed from a breakpoint raised an exception
+			switch (runMode) {
+			case BASIC_BLOCK:
+				blockEngine.run();
+				break;
+			case JIT:
+				jitEngine.run();
+				break;
+			case PIPELINE:
+				pipelineEngine.run();
+				break;
+			default:
+				fetchExecuteLoop();
+			}
+		}
+		if (stop == null)
+			stop = StopReason.FINISHED;
+		if (debugger != null)
+			stop = debugger.stopped(stop);
+		publishMetrics();
+		if (syscalls != null)
+			syscalls.flush();
+		if (event != null)
+			event.finish(runMode.name(), instructionCount - startCount);
+
+		// Print State upon exit
+		if (debug_mode)
+			printState();
+	}
+
+	/**
+	 * Run like start, but stop once at least instructions more have executed, so
+	 * the run can be carried on later with another call, eg. to switch modes part
+	 * way through. See run(long, Duration) for how closely the count is kept.
+	 * 
+	 * @param instructions
+	 * @return true if the run stopped for the count, false if the program halted,
+	 *         left the text segment, raised an exception with no handler or
+	 *         stopped in the debugger
+	 */
+	public boolean run(long instructions) {
+		return run(instructions, null) == StopReason.INSTRUCTION_BUDGET;
+	}
+
+	/**
+	 * Run like start, but give up once the run has executed instructions more
+	 * instructions or taken longer than timeout, eg. so a program stuck in a
+	 * loop can't hold on to the thread running it. A run stopped early can be
+	 * carried on with another call.
+	 * 
+	 * Neither limit costs anything per instruction. The budget is folded into
+	 * the instruction count compare the run loops make for metrics anyway, and the
+	 * clock is only looked at every DEADLINE_INTERVAL instructions. Interpreting
+	 * and timing the pipeline check after every instruction, so stop on the exact
+	 * count, the other modes after each block or compiled region, so run a little
+	 * past it. A compiled loop can go round RegionCompiler.LOOP_LIMIT times
+	 * before it is checked.
+	 * 
+	 * @param instructions Long.MAX_VALUE for no budget
+	 * @param timeout      null for no deadline
+	 * @return why the run returned
+	 */
+	public StopReason run(long instructions, Duration timeout) {
+		stopAt = instructionCount + instructions < instructionCount ? Long.MAX_VALUE : instructionCount + instructions;
+		if (timeout != null) {
+			long nanos = timeout.compareTo(Duration.ofNanos(Long.MAX_VALUE / 2)) > 0 ? Long.MAX_VALUE / 2
+					: timeout.toNanos();
+			deadline = System.nanoTime() + nanos;
+			timed = true;
+		}
+		schedule();
+		try {
+			start();
+		} finally {
+			stopAt = Long.MAX_VALUE;
+			timed = false;
+			schedule();
+		}
+		return stop;
+	}
+
+	/**
+	 * Returns a coprocessor 0 register, eg. MipsIsa.C0_EPC and MipsIsa.C0_CAUSE
+	 * after a run stopped on an exception
+	 * 
+	 * @param register
+	 * @return
+	 */
+	public int getCP0(int register) {
+		return C0[register];
+	}
+
+	/**
+	 * Sets a coprocessor 0 register, eg. MipsIsa.C0_EBASE to install a handler
+	 * from outside the program. Loading a program clears them all.
+	 * 
+	 * @param register
+	 * @param value
+	 */
+	public void setCP0(int register, int value) {
+		C0[register] = value;
+	}
+
+	/**
+	 * Returns the number of exceptions raised since the program was loaded,
+	 * handled or not
+	 * 
+	 * @return
+	 */
+	public long getExceptionCount() {
+		return exceptions;
+	}
+
+	/**
+	 * Returns why the last run returned, null before the first run of the
+	 * loaded program
+	 * 
+	 * @return
+	 */
+	public StopReason getStopReason() {
+		return stop;
+	}
+
+	/**
+	 * Returns the mode start actually runs in. A trace has to see every
+	 * instruction, a cache model or watchpoint every fetch or access, and a
+	 * journal exact instruction counts, which only interpreting does.
+	 * 
+	 * @return
+	 */
+	ExecutionMode runMode() {
+		if (mode == ExecutionMode.PIPELINE)
+			return trace != null || journal != null ? ExecutionMode.INTERPRETER : mode;
+		if (trace != null || journal != null || caches != null)
+			return ExecutionMode.INTERPRETER;
+		if (debugger != null && debugger.hasWatchpoints())
+			return ExecutionMode.INTERPRETER;
+		return mode;
+	}
+
+	@Override
+	public void setExecutionMode(ExecutionMode mode) {
+		this.mode = mode;
+	}
+
+	public ExecutionMode getExecutionMode() {
+		return mode;
+	}
+
+	/**
+	 * Returns a copy of the register file
+	 * 
+	 * @return
+	 */
+	public int[] getRegisters() {
+		return R.clone();
+	}
+
+	public Memory getMemory() {
+		return M;
+	}
+
+	public int getPC() {
+		return PC;
+	}
+
+	/**
+	 * Sets the address start runs from next, eg. to carry on past a halt
+	 * 
+	 * @param address
+	 */
+	public void setPC(int address) {
+		PC = address;
+	}
+
+	/**
+	 * Sets a register, eg. to give a forked CPU its own input
+	 * 
+	 * @param register
+	 * @param value
+	 */
+	public void setRegister(int register, int value) {
+		R[register] = value;
+	}
+
+	/**
+	 * Capture the registers, PC and memory. Memory is shared copy on write with
+	 * the snapshot, so this costs the size of the page table and the CPU carries
+	 * on as if nothing happened.
+	 * 
+	 * @return
+	 */
+	public Snapshot snapshot() {
+		Instruction[] text = decoded.clone();
+		for (int i = 0; debugger != null && i < text.length; i++) {
+			if (text[i] == Debugger.TRAP)
+				text[i] = null; // forks don't inherit breakpoints
+		}
+		return new Snapshot(R.clone(), C0.clone(), PC, instructionCount, M.fork(), text, mode);
+	}
+
+	/**
+	 * Record every instruction executed from now on into trace, or stop tracing if
+	 * trace is null. The trace is not closed by the CPU.
+	 * 
+	 * @param trace
+	 */
+	public void setTrace(ExecutionTrace trace) {
+		this.trace = trace;
+	}
+
+	/**
+	 * Model every instruction fetch, load and store from now on in caches, or stop
+	 * modelling if caches is null. Programs are interpreted while caches are set,
+	 * unless running in ExecutionMode.PIPELINE.
+	 * 
+	 * @param caches
+	 */
+	public void setCaches(CacheHierarchy caches) {
+		this.caches = caches;
+	}
+
+	public CacheHierarchy getCaches() {
+		return caches;
+	}
+
+	/**
+	 * Predict branches and jumps with unit when running in
+	 * ExecutionMode.PIPELINE, or with none if unit is null. Other modes don't
+	 * predict.
+	 * 
+	 * @param unit
+	 */
+	public void setBranchUnit(BranchUnit unit) {
+		this.branchUnit = unit;
+	}
+
+	public BranchUnit getBranchUnit() {
+		return branchUnit;
+	}
+
+	/**
+	 * Serve syscall instructions with syscalls, eg. to redirect the console.
+	 * Without this the standard input and output of the process are used.
+	 * 
+	 * @param syscalls
+	 */
+	public void setSyscalls(Syscalls syscalls) {
+		this.syscalls = syscalls;
+	}
+
+	/**
+	 * Send lw and sw in the device window to devices, or treat the window as
+	 * plain RAM if devices is null. See DeviceBus.
+	 * 
+	 * @param devices
+	 */
+	public void setDevices(DeviceBus devices) {
+		this.devices = devices;
+	}
+
+	public DeviceBus getDevices() {
+		return devices;
+	}
+
+	/**
+	 * Record the run into journal, or replay it from journal, or neither if
+	 * journal is null. Set before loading the program. See Journal.
+	 * 
+	 * @param journal
+	 */
+	public void setJournal(Journal journal) {
+		this.journal = journal;
+		schedule();
+	}
+
+	public Journal getJournal() {
+		return journal;
+	}
+
+	/**
+	 * Returns the debugger for setting breakpoints and watchpoints, creating it on
+	 * first use
+	 * 
+	 * @return
+	 */
+	public Debugger getDebugger() {
+		if (debugger == null)
+			debugger = new Debugger(this);
+		return debugger;
+	}
+
+	/**
+	 * Returns the syscall services, creating the default ones if none are set
+	 * 
+	 * @return
+	 */
+	public Syscalls getSyscalls() {
+		if (syscalls == null)
+			syscalls = new Syscalls();
+		return syscalls;
+	}
+
+	/**
+	 * Returns the number of instructions executed since the program was loaded,
+	 * not counting the halt
+	 * 
+	 * @return
+	 */
+	public long getInstructionCount() {
+		return instructionCount;
+	}
+
+	/**
+	 * Returns the cycles counted by running in ExecutionMode.PIPELINE since the
+	 * program was loaded
+	 * 
+	 * @return
+	 */
+	public PipelineTiming getPipelineTiming() {
+		return pipelineEngine.timing();
+	}
+
+	/**
+	 * Caches, the branch unit, syscalls and devices stay attached, each reset as
+	 * if freshly constructed, so a pooled CPU times the next program the same as
+	 * a new one
+	 */
+	@Override
+	public void reset() {
+		publishMetrics();
+		published = 0;
+		schedule();
+		Arrays.fill(R, 0);
+		Arrays.fill(C0, 0);
+		exceptions = 0;
+		M.clear();
+		PC = PC_STARTING_ADDRESS;
+		instructionCount = 0;
+		decoded = new Instruction[0];
+		labels = Collections.emptyMap();
+		blockEngine.reset(0);
+		jitEngine.reset(0);
+		pipelineEngine.reset(0);
+		linked = false;
+		if (syscalls != null)
+			syscalls.reset();
+		if (devices != null)
+			devices.reset();
+		if (caches != null)
+			caches.reset();
+		if (branchUnit != null)
+			branchUnit.reset();
 	}
 
 	@Override
@@ -60,6 +507,49 @@ public class CPU implements MipsIsa, SimulatedComputer {
 		loadMemory(p.staticData, STATIC_DATA);
 		// load instructions
 		loadMemory(p.bin, PC_STARTING_ADDRESS);
+		// decode instructions once, up front
+		decoded = new Instruction[p.bin.length];
+		for (int i = 0; i < p.bin.length; i++) {
+			decoded[i] = Instruction.decode(p.bin[i]);
+		}
+		labels = p.labels;
+		programLoaded();
+	}
+
+	/**
+	 * Load a statically linked MIPS32 executable, see ElfFile for how its byte
+	 * addressed segments are laid out in word addressed memory. Segments are
+	 * shared with the mapped file where the memory can, see Memory.load, the PC
+	 * is set to the entry point, and the symbols in executable segments become
+	 * the program's labels.
+	 *
+	 * Only an executable segment loaded at PC_STARTING_ADDRESS counts as the text
+	 * segment the execution modes decode ahead and profile; code anywhere else is
+	 * decoded each time it is fetched.
+	 *
+	 * @param elf
+	 * @throws Exception
+	 */
+	public void loadExecutable(ElfFile elf) throws Exception {
+		int textLength = 0;
+		for (ElfFile.Segment segment : elf.getSegments()) {
+			int address = segment.getAddress();
+			if (Integer.toUnsignedLong(address) + segment.getLength() > Integer.toUnsignedLong(RAM_ADDRESS_SPACE)) {
+				throw new HardwareMemoryLoadException(address);
+			}
+			if (segment.isExecutable() && address == PC_STARTING_ADDRESS) {
+				if (segment.getLength() >= STATIC_DATA - PC_STARTING_ADDRESS) {
+					throw new MemoryAccessException();
+				}
+				textLength = segment.getLength();
+			}
+			M.load(address, segment.getWords());
+			zero(address + segment.getDataLength(), address + segment.getLength());
+		}
+		decoded = new Instruction[textLength]; // decoded as each is first fetched
+		PC = elf.getEntry();
+		labels = elf.getLabels();
+		programLoaded();
 	}
 
 	/*
@@ -70,24 +560,279 @@ public class CPU implements MipsIsa, SimulatedComputer {
 	 * Main loop for function of the cpu
 	 */
 	private void fetchExecuteLoop() {
-		int i = 0; // cycle count
 		while (PC <= STATIC_DATA) { // while there are valid instructions left
-			Instruction ins = new Instruction(M[PC]); // fetch
-
-			// Debug: Print the instruction fetched
-			if (debug_mode)
-				System.out.printf("[%d] Instruction: %x - %s\n", i, ins, ins.getASM());
+			Instruction ins = fetch(); // fetch
 
 			if (ins.value == 0xFFFFFFFF) // Sentinel, halt program execution
 				break;
 
+			int pc = PC;
 			execute(ins); // execute
+			if (trace != null) {
+				int rd = ins.getDestination();
+				trace.record(pc, ins.value, rd, rd < 0 ? 0 : R[rd]);
+			}
+			if (counting)
+				count(ins, pc);
 			PC++;
-			i++;
+			if (++instructionCount >= checkpoint && checkpoint())
+				break;
+		}
+	}
+
+	/**
+	 * Count an instruction just executed from pc into the counters. Kept out of
+	 * fetchExecuteLoop so the loop stays small when counting is off.
+	 * 
+	 * @param ins
+	 * @param pc
+	 */
+	private void count(Instruction ins, int pc) {
+		counters.retire(ins);
+		if (ins.opcode == 0x4 || ins.opcode == 0x5) // beq, bne
+			counters.branch(PC != pc);
+	}
+
+	/**
+	 * Returns the decoded instruction at the current PC.
+	 * 
+	 * @return instruction at PC
+	 */
+	private Instruction fetch() {
+		if (caches != null)
+			caches.fetch(PC);
+		return fetch(PC);
+	}
+
+	/**
+	 * Returns the decoded instruction at address. Instructions inside the loaded
+	 * text segment come from the decode cache, anything else is decoded straight
+	 * from memory.
+	 * 
+	 * @param address
+	 * @return instruction at address
+	 */
+	Instruction fetch(int address) {
+		int index = address - PC_STARTING_ADDRESS;
+		if (index >= 0 && index < decoded.length) {
+			Instruction ins = decoded[index];
+			if (ins == null) { // invalidated by a store, decode again
+				ins = decoded[index] = Instruction.decode(M.read(address));
+			}
+			return ins;
+		}
+		return Instruction.decode(M.read(address));
+	}
+
+	Map<String, Integer> labels() {
+		return labels;
+	}
+
+	/**
+	 * Replace the decoded instruction at address, eg. with a breakpoint trap, or
+	 * with null to decode it from memory again
+	 * 
+	 * @param address
+	 * @param ins
+	 * @return false if address is outside the loaded program
+	 */
+	boolean patch(int address, Instruction ins) {
+		int index = address - PC_STARTING_ADDRESS;
+		if (index < 0 || index >= decoded.length)
+			return false;
+		decoded[index] = ins;
+		blockEngine.invalidate();
+		jitEngine.invalidate();
+		return true;
+	}
+
+	int[] registerFile() {
+		return R;
+	}
+
+	/**
+	 * Returns the number of instructions in the loaded text segment
+	 * 
+	 * @return
+	 */
+	int textLength() {
+		return decoded.length;
+	}
+
+	/**
+	 * Count the instructions each basic block executes into profile, indexed
+	 * by block start address from PC_STARTING_ADDRESS, when running in
+	 * ExecutionMode.BASIC_BLOCK, or stop counting if profile is null
+	 * 
+	 * @param profile
+	 */
+	void profileBlocks(long[] profile) {
+		blockEngine.profile(profile);
+	}
+
+	/**
+	 * Count instructions an engine executed
+	 * 
+	 * @param count
+	 * @return true if the run has to stop here, see run
+	 */
+	boolean addInstructions(long count) {
+		instructionCount += count;
+		return instructionCount >= checkpoint && checkpoint();
+	}
+
+	/**
+	 * Returns the counters to count into, or null if histograms are off for this
+	 * run
+	 * 
+	 * @return
+	 */
+	ExecutionCounters counters() {
+		return counting ? counters : null;
+	}
+
+	/**
+	 * Add what this CPU counted since last time to ExecutionMetrics
+	 */
+	private void publishMetrics() {
+		counters.publish(instructionCount - published);
+		published = instructionCount;
+		schedule();
+	}
+
+	/**
+	 * Publish metrics, let the journal hash the registers, or stop the run,
+	 * whichever is due. Shares one instruction count compare in the run loops.
+	 * 
+	 * @return true if the run has to stop here
+	 */
+	private boolean checkpoint() {
+		if (instructionCount - published >= ExecutionMetrics.PUBLISH_INTERVAL)
+			publishMetrics();
+		if (journal != null)
+			journal.checkpoint(instructionCount, R, PC);
+		schedule();
+		if (stop != null) // an exception with no handler, see raise
+			return true;
+		if (instructionCount >= stopAt)
+			stop = StopReason.INSTRUCTION_BUDGET;
+		else if (timed && System.nanoTime() - deadline >= 0)
+			stop = StopReason.DEADLINE;
+		return stop != null;
+	}
+
+	/**
+	 * Work out the instruction count the next checkpoint is due at
+	 */
+	private void schedule() {
+		checkpoint = Math.min(published + ExecutionMetrics.PUBLISH_INTERVAL, stopAt);
+		if (timed)
+			checkpoint = Math.min(checkpoint, instructionCount + DEADLINE_INTERVAL);
+		if (journal != null)
+			checkpoint = Math.min(checkpoint, journal.nextCheckpoint());
+	}
+
+	/**
+	 * Take an exception in the instruction at PC, which leaves its destination
+	 * alone. Cause gets code, and unless an exception is already being handled,
+	 * EPC gets the PC and Status.EXL is set. Execution carries on at EBase, which
+	 * takes the place of EBase + 0x180 in MIPS32, as memory is word addressed.
+	 * 
+	 * Without a handler in EBase the run stops with StopReason.EXCEPTION, the PC
+	 * on the instruction that raised it, at the next instruction count compare,
+	 * which comes straight after the instruction, so nothing is checked on the
+	 * way. The instruction is counted as executed either way, by every engine.
+	 * 
+	 * @param code one of the MipsIsa.EXC codes
+	 */
+	private void raise(int code) {
+		exceptions++;
+		C0[C0_CAUSE] = (C0[C0_CAUSE] & ~CAUSE_EXC_CODE) | code << 2;
+		if ((C0[C0_STATUS] & STATUS_EXL) == 0) {
+			C0[C0_EPC] = PC;
+			C0[C0_STATUS] |= STATUS_EXL;
+		}
+		if (C0[C0_EBASE] != 0) {
+			PC = C0[C0_EBASE] - 1; // the fetch loop steps onto the handler
+		} else {
+			PC--; // stay on the instruction
+			stop = StopReason.EXCEPTION;
+			checkpoint = 0;
+		}
+	}
+
+	/**
+	 * Raise an address error for address
+	 * 
+	 * @param code    MipsIsa.EXC_ADEL or MipsIsa.EXC_ADES
+	 * @param address
+	 */
+	private void addressError(int code, int address) {
+		C0[C0_BADVADDR] = address;
+		raise(code);
+	}
+
+	/**
+	 * Returns true if a load or store from user code may use address: anything
+	 * below 0x80000000, plus the device window. Anything else is the kernel's.
+	 * 
+	 * @param address
+	 * @return
+	 */
+	private static boolean isUserAddress(int address) {
+		return address >= 0 || DeviceBus.isDevice(address);
+	}
+
+	/**
+	 * Drops the cached decoding of the instruction at address, if there is one.
+	 * Called on stores so self modifying code still sees its own writes.
+	 * 
+	 * @param address
+	 */
+	private void invalidateDecoded(int address) {
+		int index = address - PC_STARTING_ADDRESS;
+		if (index >= 0 && index < decoded.length) {
+			decoded[index] = debugger != null && debugger.isBreakpoint(address) ? Debugger.TRAP : null;
+			blockEngine.invalidate();
+			jitEngine.invalidate();
+		}
+	}
+
+	/**
+	 * Start counting and tracking a newly loaded program
+	 */
+	private void programLoaded() {
+		blockEngine.reset(decoded.length);
+		jitEngine.reset(decoded.length);
+		pipelineEngine.reset(decoded.length);
+		stop = null;
+		if (debugger != null)
+			debugger.programLoaded();
+		linked = false;
+		Arrays.fill(C0, 0);
+		exceptions = 0;
+		if (syscalls != null)
+			syscalls.reset();
+		publishMetrics();
+		instructionCount = 0;
+		published = 0;
+		schedule();
+		if (journal != null)
+			journal.begin(devices != null);
+	}
+
+	/**
+	 * Zero the addresses from start up to end that hold anything, leaving pages
+	 * never written alone, eg. a segment's bss left over from an earlier program
+	 */
+	private void zero(int start, int end) {
+		for (int pageNumber : M.getAllocatedPages()) {
+			long first = Math.max(start, (long) pageNumber << Memory.PAGE_BITS);
+			long last = Math.min(end, (long) (pageNumber + 1) << Memory.PAGE_BITS);
+			if (first < last) {
+				M.write((int) first, new int[(int) (last - first)]);
+			}
 		}
-		// Print State upon exit
-		if (debug_mode)
-			printState();
 	}
 
 	/**
@@ -100,15 +845,13 @@ public class CPU implements MipsIsa, SimulatedComputer {
 	 */
 	private void loadMemory(int[] data, int address) throws Exception {
 		// If the pay load is too large for it's specified place in memory...
-		if (data.length + address > M.length) {
+		if (data.length + address > RAM_ADDRESS_SPACE) {
 			// then don't do it
 			throw new HardwareMemoryLoadException(address);
 		}
 
 		// otherwise load it up!
-		for (int i = 0; i < data.length; i++) {
-			M[address + i] = data[i];
-		}
+		M.write(address, data);
 	}
 
 	// --------------------------------------------------------------------------------
@@ -119,13 +862,16 @@ public class CPU implements MipsIsa, SimulatedComputer {
 	 */
 
 	@Override
-	public void add(int Rd, int Rs, int Rt) throws OverflowException {
-		R[Rd] = R[Rs] + R[Rt];
+	public void add(int Rd, int Rs, int Rt) {
+		int sum = R[Rs] + R[Rt];
 
-		boolean didOverflow = (R[Rs] < 0 && R[Rt] < 0 && R[Rd] > 0) || (R[Rs] > 0 && R[Rt] > 0 && R[Rd] < 0);
+		// overflow when both operands have the same sign and the sum doesn't
+		boolean didOverflow = ((R[Rs] ^ sum) & (R[Rt] ^ sum)) < 0;
 		if (didOverflow) {
-			throw new OverflowException();
+			raise(EXC_OV); // Rd is left unchanged
+			return;
 		}
+		R[Rd] = sum;
 	}
 
 	@Override
@@ -140,7 +886,7 @@ public class CPU implements MipsIsa, SimulatedComputer {
 
 	@Override
 	public void jr(int Rs) {
-		PC = R[Rs];
+		PC = R[Rs] - 1; // the fetch loop steps onto the target
 	}
 
 	@Override
@@ -155,22 +901,22 @@ public class CPU implements MipsIsa, SimulatedComputer {
 
 	@Override
 	public void slt(int Rd, int Rs, int Rt) {
-		R[Rd] = (Rs < Rt) ? 1 : 0;
+		R[Rd] = (R[Rs] < R[Rt]) ? 1 : 0;
 	}
 
 	@Override
-	public void sltiu(int rs, int rt, int immediate) {
-		R[rs] = (rt < Integer.toUnsignedLong(immediate)) ? 1 : 0;
+	public void sltiu(int Rd, int Rs, int Immediate) {
+		R[Rd] = (Integer.toUnsignedLong(R[Rs]) < Integer.toUnsignedLong(Immediate)) ? 1 : 0;
 	}
 
 	@Override
-	public void slti(int rs, int rt, int immediate) {
-		R[rs] = (rt < immediate) ? 1 : 0;
+	public void slti(int Rd, int Rs, int Immediate) {
+		R[Rd] = (R[Rs] < Immediate) ? 1 : 0;
 	}
 
 	@Override
 	public void sltu(int Rd, int Rs, int Rt) {
-		R[Rd] = (Integer.toUnsignedLong(Rs) < Integer.toUnsignedLong(Rt)) ? 1 : 0;
+		R[Rd] = (Integer.toUnsignedLong(R[Rs]) < Integer.toUnsignedLong(R[Rt])) ? 1 : 0;
 	}
 
 	@Override
@@ -180,14 +926,20 @@ public class CPU implements MipsIsa, SimulatedComputer {
 
 	@Override
 	public void srl(int Rd, int Rs, int shamt) {
-		R[Rd] = R[Rs] >> shamt;
+		R[Rd] = R[Rs] >>> shamt;
 
 	}
 
 	@Override
 	public void sub(int Rd, int Rs, int Rt) {
-		R[Rd] = R[Rs] - R[Rt];
+		int difference = R[Rs] - R[Rt];
 
+		// overflow when the operands have different signs and the difference takes Rt's
+		if (((R[Rs] ^ R[Rt]) & (R[Rs] ^ difference)) < 0) {
+			raise(EXC_OV);
+			return;
+		}
+		R[Rd] = difference;
 	}
 
 	@Override
@@ -197,7 +949,12 @@ public class CPU implements MipsIsa, SimulatedComputer {
 
 	@Override
 	public void addi(int Rd, int Rs, int Immediate) {
-		R[Rd] = R[Rs] + Immediate;
+		int sum = R[Rs] + Immediate;
+		if (((R[Rs] ^ sum) & (Immediate ^ sum)) < 0) {
+			raise(EXC_OV);
+			return;
+		}
+		R[Rd] = sum;
 	}
 
 	@Override
@@ -234,20 +991,35 @@ public class CPU implements MipsIsa, SimulatedComputer {
 		}
 	}
 
+	// Memory is word addressed, there are no bytes or halves to load or store
 	@Override
-	public void lbu(int Rd, int Rs, int Immediate) throws InstructionNotSupportedException {
-		throw new InstructionNotSupportedException();
-
+	public void lbu(int Rd, int Rs, int Immediate) {
+		raise(EXC_RI);
 	}
 
 	@Override
-	public void lhu(int Rd, int Rs, int Immediate) throws InstructionNotSupportedException {
-		throw new InstructionNotSupportedException();
+	public void lhu(int Rd, int Rs, int Immediate) {
+		raise(EXC_RI);
 	}
 
+	/**
+	 * Load linked. The reservation is the address and the value loaded, see sc.
+	 */
 	@Override
-	public void ll(int Rd, int Rs, int Immediate) throws InstructionNotSupportedException {
-		throw new InstructionNotSupportedException();
+	public void ll(int Rd, int Rs, int Immediate) {
+		int address = R[Rs] + Immediate;
+		if (!isUserAddress(address)) {
+			addressError(EXC_ADEL, address);
+			return;
+		}
+		if (caches != null)
+			caches.read(address);
+		R[Rd] = M.readVolatile(address);
+
+		// reserve the address, sc only stores if it still holds this value
+		linked = true;
+		linkedAddress = address;
+		linkedValue = R[Rd];
 	}
 
 	@Override
@@ -257,38 +1029,126 @@ public class CPU implements MipsIsa, SimulatedComputer {
 
 	@Override
 	public void lw(int Rd, int Rs, int Immediate) {
-		R[Rd] = M[Rs + Immediate];
+		int address = R[Rs] + Immediate;
+		if (address < 0) { // never taken for RAM
+			if (!DeviceBus.isDevice(address)) {
+				addressError(EXC_ADEL, address);
+				return;
+			}
+			if (devices != null) {
+				R[Rd] = journal == null ? devices.read(address) : journal.read(instructionCount, address, devices);
+				return;
+			}
+		}
+		if (caches != null)
+			caches.read(address);
+		R[Rd] = M.read(address);
 	}
 
 	@Override
-	public void sb(int Rd, int Rs, int Immediate) throws InstructionNotSupportedException {
-		throw new InstructionNotSupportedException();
+	public void sb(int Rd, int Rs, int Immediate) {
+		raise(EXC_RI);
 	}
 
+	/**
+	 * Store conditional, with compare and set on the value ll loaded. It fails
+	 * if the word changed since the ll, or if this core ran another sc or an
+	 * eret, or linked another address, in between. Unlike MIPS it still succeeds
+	 * if another core stored the same value, or changed it and changed it back
+	 * (ABA). Tracking every store to the linked address would cost every sw, so
+	 * lock-free code that relies on ABA being caught has to keep a version
+	 * count of its own.
+	 */
 	@Override
-	public void sc(int Rd, int Rs, int Immediate) throws InstructionNotSupportedException {
-		throw new InstructionNotSupportedException();
+	public void sc(int Rd, int Rs, int Immediate) {
+		int address = R[Rs] + Immediate;
+		if (!isUserAddress(address)) {
+			addressError(EXC_ADES, address);
+			return;
+		}
+		if (caches != null)
+			caches.write(address);
+		boolean stored = linked && linkedAddress == address && M.compareAndSet(address, linkedValue, R[Rd]);
+		linked = false; // a reservation is only good for one sc
+
+		if (stored) {
+			invalidateDecoded(address);
+		}
+		R[Rd] = stored ? 1 : 0;
 	}
 
 	@Override
-	public void sh(int Rd, int Rs, int Immediate) throws InstructionNotSupportedException {
-		throw new InstructionNotSupportedException();
+	public void sh(int Rd, int Rs, int Immediate) {
+		raise(EXC_RI);
+	}
+
+	/**
+	 * Run the service in $v0, see Syscalls. Exiting leaves the PC just past the
+	 * text segment, so the program stops there.
+	 */
+	@Override
+	public void syscall() {
+		if (journal == null ? getSyscalls().execute(R, M) : journal.syscall(instructionCount, R, M, getSyscalls()))
+			PC = STATIC_DATA;
 	}
 
 	@Override
 	public void sw(int Rd, int Rs, int Immediate) {
-		M[R[Rs] + Immediate] = R[Rd];
+		int address = R[Rs] + Immediate;
+		if (address < 0) { // never taken for RAM
+			if (!DeviceBus.isDevice(address)) {
+				addressError(EXC_ADES, address);
+				return;
+			}
+			if (devices != null) {
+				if (journal == null)
+					devices.write(address, R[Rd]);
+				else
+					journal.write(address, R[Rd], devices);
+				return;
+			}
+		}
+		if (caches != null)
+			caches.write(address);
+		M.write(address, R[Rd]);
+		invalidateDecoded(address);
 	}
 
 	@Override
 	public void jal(int addr) {
 		R[$ra] = PC + 1;
-		PC = getTrueJAddress(addr);
+		PC = getTrueJAddress(addr) - 1; // the fetch loop steps onto the target
 	}
 
 	@Override
 	public void j(int addr) {
-		PC = getTrueJAddress(addr);
+		PC = getTrueJAddress(addr) - 1; // the fetch loop steps onto the target
+	}
+
+	@Override
+	public void mfc0(int Rt, int Rd) {
+		R[Rt] = C0[Rd];
+	}
+
+	@Override
+	public void mtc0(int Rt, int Rd) {
+		if (Rd != C0_BADVADDR) // read only
+			C0[Rd] = R[Rt];
+	}
+
+	/**
+	 * Return from the exception handler to EPC
+	 */
+	@Override
+	public void eret() {
+		PC = C0[C0_EPC] - 1; // the fetch loop steps onto it
+		C0[C0_STATUS] &= ~STATUS_EXL;
+		linked = false; // as on MIPS, so an interrupted ll and sc pair fails
+	}
+
+	@Override
+	public void reservedInstruction() {
+		raise(EXC_RI);
 	}
 
 	private int getTrueJAddress(int addrImmediate) {
@@ -327,7 +1187,7 @@ public class CPU implements MipsIsa, SimulatedComputer {
 		for (int i = 0; i < rows; i++) {
 			for (int j = 0; j < columns; j++) {
 				int address = columns * i + j;
-				System.out.printf("[0x%x]=%x\t", address, M[address]);
+				System.out.printf("[0x%x]=%x\t", address, M.read(address));
 			}
 			System.out.println("\n-----------------------------------------------");
 		}
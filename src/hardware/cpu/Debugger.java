@@ -0,0 +1,237 @@
+package hardware.cpu;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import hardware.datatypes.Instruction;
+import hardware.memory.Memory;
+import hardware.memory.MemoryWatch;
+
+/**
+ * Breakpoints and data watchpoints for a CPU, see CPU.getDebugger.
+ *
+ * A breakpoint replaces the instruction's entry in the CPU's decoded text with
+ * a trap that every execution engine takes for a halt, so the run stops just
+ * before the instruction with nothing checked along the way, and
+ * CPU.getStopReason reports StopReason.BREAKPOINT. Starting the CPU again runs
+ * the real instruction and carries on.
+ *
+ * A watchpoint marks the pages it covers as watched in memory, see
+ * MemoryWatch. Accessing them leaves a one off trap on the next instruction,
+ * so the run stops just after the access. Breakpoints and these traps only
+ * work inside the loaded text segment. The engines that run several
+ * instructions at a time don't keep the PC up to date, so programs are
+ * interpreted while a watchpoint is set, unless running in
+ * ExecutionMode.PIPELINE.
+ *
+ * With no breakpoints or watchpoints set, nothing is patched or watched and
+ * programs run exactly as fast as without a debugger.
+ *
+ * @sammc
+ */
+public final class Debugger implements MemoryWatch {
+
+	static final Instruction TRAP = new Instruction(0xFFFFFFFF); // looks like a halt to every engine
+
+	private final CPU cpu;
+	private final Set<Integer> breakpoints = new HashSet<Integer>();
+	private final List<int[]> watchpoints = new ArrayList<int[]>(); // {start, end, 1 if loads count}
+	private final BitSet watchedPages = new BitSet();
+
+	private int oneOff = -1; // address of the trap left after a watched access
+	private boolean watchHit;
+	private int watchedAddress;
+	private boolean halted; // resumed from a breakpoint on a halt
+
+	Debugger(CPU cpu) {
+		this.cpu = cpu;
+	}
+
+	/*
+	 * Breakpoints
+	 */
+
+	/**
+	 * Stop before the instruction at address runs. Breakpoints stay set across
+	 * loading programs, wherever the new program's text covers them.
+	 *
+	 * @param address
+	 * @throws IllegalArgumentException if address isn't in the loaded text
+	 *                                  segment, where the trap has to go
+	 */
+	public void addBreakpoint(int address) {
+		if (!cpu.patch(address, TRAP)) {
+			throw new IllegalArgumentException(
+					String.format("No breakpoint at 0x%08X, it is outside the loaded text", address));
+		}
+		breakpoints.add(address);
+	}
+
+	/**
+	 * Stop before the instruction under a text label of the loaded program runs
+	 *
+	 * @param label without the colon
+	 * @throws IllegalArgumentException if the program has no such label
+	 */
+	public void addBreakpoint(String label) {
+		Integer address = cpu.labels().get(label);
+		if (address == null) {
+			throw new IllegalArgumentException("No text label " + label);
+		}
+		addBreakpoint(address);
+	}
+
+	public void removeBreakpoint(int address) {
+		if (breakpoints.remove(address) && address != oneOff) {
+			cpu.patch(address, null);
+		}
+	}
+
+	public void clearBreakpoints() {
+		for (int address : breakpoints.toArray(new Integer[0])) {
+			removeBreakpoint(address);
+		}
+	}
+
+	public boolean isBreakpoint(int address) {
+		return breakpoints.contains(address);
+	}
+
+	/*
+	 * Watchpoints
+	 */
+
+	/**
+	 * Stop after any instruction that stores to an address from start up to end,
+	 * or loads from one if loads is set
+	 *
+	 * @param start first address watched
+	 * @param end   address just past the last one watched
+	 * @param loads stop on loads as well as stores
+	 */
+	public void addWatchpoint(int start, int end, boolean loads) {
+		watchpoints.add(new int[] { start, end, loads ? 1 : 0 });
+		watchedPages.set(start >>> Memory.PAGE_BITS, ((end - 1) >>> Memory.PAGE_BITS) + 1);
+		cpu.getMemory().setWatch(this);
+	}
+
+	public void clearWatchpoints() {
+		watchpoints.clear();
+		watchedPages.clear();
+		cpu.getMemory().setWatch(null);
+	}
+
+	public boolean hasWatchpoints() {
+		return !watchpoints.isEmpty();
+	}
+
+	@Override
+	public boolean isWatched(int pageNumber) {
+		return watchedPages.get(pageNumber);
+	}
+
+	@Override
+	public void loaded(int address) {
+		hit(address, true);
+	}
+
+	@Override
+	public void stored(int address) {
+		hit(address, false);
+	}
+
+	private void hit(int address, boolean load) {
+		for (int[] w : watchpoints) {
+			if (Integer.compareUnsigned(address - w[0], w[1] - w[0]) < 0 && (!load || w[2] == 1)) {
+				int next = cpu.getPC() + 1; // the access is part of the instruction at PC
+				if (cpu.fetch(next) != TRAP) {
+					if (!cpu.patch(next, TRAP)) {
+						return; // outside the text, nothing could stop the run there
+					}
+					oneOff = next;
+				}
+				watchHit = true;
+				watchedAddress = address;
+				return;
+			}
+		}
+	}
+
+	/*
+	 * Stops
+	 */
+
+	/**
+	 * Returns the address whose access stopped the last run with
+	 * StopReason.WATCHPOINT
+	 *
+	 * @return
+	 */
+	public int getWatchedAddress() {
+		return watchedAddress;
+	}
+
+	/**
+	 * Called before a run. If the CPU stopped at a breakpoint, runs the real
+	 * instruction there so the run carries on past it.
+	 *
+	 * @param last why the last run returned, null if nothing has run
+	 */
+	void resume(StopReason last) {
+		removeOneOff();
+		watchHit = false;
+		halted = false;
+		int pc = cpu.getPC();
+		boolean hit = last == StopReason.BREAKPOINT || last == StopReason.WATCHPOINT || last == StopReason.FINISHED;
+		if (cpu.fetch(pc) != TRAP || !hit) { // stopped before reaching it
+			return;
+		}
+		Instruction ins = Instruction.decode(cpu.getMemory().read(pc));
+		if (ins.value == 0xFFFFFFFF) {
+			halted = true; // a breakpoint on the halt itself, stop there again
+			return;
+		}
+		cpu.execute(ins);
+		cpu.setPC(cpu.getPC() + 1);
+		cpu.addInstructions(1);
+	}
+
+	/**
+	 * Called after a run, tells a trap from a real halt
+	 *
+	 * @param reason why the engine stopped
+	 * @return why the run stopped
+	 */
+	StopReason stopped(StopReason reason) {
+		boolean trapped = cpu.fetch(cpu.getPC()) == TRAP;
+		removeOneOff();
+		if (watchHit) {
+			return StopReason.WATCHPOINT;
+		}
+		if (reason == StopReason.FINISHED && trapped && !halted) {
+			return StopReason.BREAKPOINT;
+		}
+		return reason;
+	}
+
+	/**
+	 * Patch every breakpoint into a newly loaded program
+	 */
+	void programLoaded() {
+		oneOff = -1;
+		for (int address : breakpoints) {
+			cpu.patch(address, TRAP);
+		}
+	}
+
+	private void removeOneOff() {
+		if (oneOff >= 0) {
+			cpu.patch(oneOff, null);
+			oneOff = -1;
+		}
+	}
+
+}
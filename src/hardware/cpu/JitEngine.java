@@ -0,0 +1,93 @@
+package hardware.cpu;
+
+import java.util.Arrays;
+
+import hardware.datatypes.Instruction;
+import hardware.jit.CompiledRegion;
+import hardware.jit.RegionCompiler;
+import hardware.memory.Memory;
+
+/**
+ * Execution engine that interprets the text segment while counting how often
+ * each address is executed, and hands addresses that get hot to the
+ * RegionCompiler. Once an address has a compiled region, reaching it runs the
+ * region instead of the interpreter.
+ *
+ * Regions leave to this loop at every exit they can't handle themselves, so
+ * the interpreter always has the final word on unsupported or exceptional
+ * instructions.
+ *
+ * @sammc
+ */
+final class JitEngine {
+
+	static final int HOT_THRESHOLD = 1000; // executions before an address is compiled
+
+	private final CPU cpu;
+	private RegionCompiler compiler;
+	private CompiledRegion[] regions; // indexed by address from PC_STARTING_ADDRESS
+	private int[] heat; // execution counts, indexed the same way
+
+	JitEngine(CPU cpu) {
+		this.cpu = cpu;
+		reset(0);
+	}
+
+	/**
+	 * Drop all regions and profiles and size them for a newly loaded program
+	 *
+	 * @param textLength number of instructions in the program
+	 */
+	void reset(int textLength) {
+		compiler = new RegionCompiler(CPU.PC_STARTING_ADDRESS, textLength);
+		regions = new CompiledRegion[textLength];
+		heat = new int[textLength];
+	}
+
+	/**
+	 * Drop all regions and profiles, called when the text segment is written to
+	 */
+	void invalidate() {
+		Arrays.fill(regions, null);
+		Arrays.fill(heat, 0);
+	}
+
+	/**
+	 * Run the loaded program until it halts or leaves the text segment
+	 */
+	void run() {
+		int[] R = cpu.registerFile();
+		Memory M = cpu.getMemory();
+
+		while (cpu.getPC() <= CPU.STATIC_DATA) {
+			int pc = cpu.getPC();
+			int index = pc - CPU.PC_STARTING_ADDRESS;
+
+			if (index >= 0 && index < regions.length) {
+				CompiledRegion region = regions[index];
+				if (region != null) {
+					long exit = region.run(R, M);
+					if (exit != pc) { // else it left before its first instruction, eg. a device load
+						cpu.setPC((int) exit);
+						if (cpu.addInstructions(exit >>> 32))
+							break;
+						continue;
+					}
+				} else if (++heat[index] == HOT_THRESHOLD) {
+					regions[index] = compiler.compile(pc, cpu::fetch);
+					if (regions[index] != null)
+						continue;
+				}
+			}
+
+			Instruction ins = cpu.fetch(pc);
+			if (ins.value == 0xFFFFFFFF) // Sentinel, halt program execution
+				break;
+			cpu.execute(ins);
+			cpu.setPC(cpu.getPC() + 1);
+			if (cpu.addInstructions(1))
+				break;
+		}
+	}
+
+}
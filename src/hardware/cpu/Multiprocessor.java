@@ -0,0 +1,107 @@
+package hardware.cpu;
+
+import hardware.ExecutionMode;
+import hardware.MipsIsa;
+import hardware.SimulatedComputer;
+import hardware.memory.Memory;
+import hardware.memory.PagedMemory;
+import software.datatypes.Program;
+
+/**
+ * A computer with several cores sharing one memory.
+ *
+ * Each core is a full CPU with its own registers, PC and execution engine,
+ * and runs on its own thread once start is called. The cores see the same
+ * memory through their own views of it (see Memory.view), so plain loads and
+ * stores cost the same as on a single core. Cores synchronize with ll and sc,
+ * which are backed by compare and set on the shared memory, so sc only sees
+ * whether the value changed, see CPU.sc.
+ *
+ * Every core starts at the same entry point, with its core number in $k0 so
+ * the program can tell them apart. A store into the text segment is only seen
+ * by the core that made it.
+ *
+ * @sammc
+ */
+public final class Multiprocessor implements SimulatedComputer {
+
+	private final CPU[] cores;
+	private final Memory memory;
+
+	/**
+	 * @param coreCount number of cores
+	 */
+	public Multiprocessor(int coreCount) {
+		this(coreCount, new PagedMemory());
+	}
+
+	/**
+	 * @param coreCount number of cores
+	 * @param memory    memory shared by all the cores, eg. DirectMemory
+	 */
+	public Multiprocessor(int coreCount, Memory memory) {
+		if (coreCount < 1) {
+			throw new IllegalArgumentException("A multiprocessor needs at least one core: " + coreCount);
+		}
+		this.memory = memory;
+		cores = new CPU[coreCount];
+		for (int i = 0; i < coreCount; i++) {
+			cores[i] = new CPU(memory.view());
+		}
+	}
+
+	/**
+	 * Run every core on its own thread, returning once all of them have halted
+	 */
+	@Override
+	public void start() {
+		Thread[] threads = new Thread[cores.length];
+		for (int i = 0; i < cores.length; i++) {
+			threads[i] = new Thread(cores[i]::start, "core-" + i);
+			threads[i].start();
+		}
+		try {
+			for (Thread thread : threads) {
+				thread.join();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public void loadProgram(Program p) throws Exception {
+		// every core decodes its own copy, the memory writes are identical
+		for (int i = 0; i < cores.length; i++) {
+			cores[i].loadProgram(p);
+			cores[i].registerFile()[MipsIsa.$k0] = i;
+		}
+	}
+
+	@Override
+	public void reset() {
+		for (CPU core : cores) {
+			core.reset(); // the first clears the shared memory for every view, the rest find nothing dirty
+		}
+	}
+
+	@Override
+	public void setExecutionMode(ExecutionMode mode) {
+		for (CPU core : cores) {
+			core.setExecutionMode(mode);
+		}
+	}
+
+	public CPU getCore(int index) {
+		return cores[index];
+	}
+
+	public int getCoreCount() {
+		return cores.length;
+	}
+
+	public Memory getMemory() {
+		return memory;
+	}
+
+}
@@ -0,0 +1,190 @@
+package hardware.cpu;
+
+import hardware.branch.BranchUnit;
+import hardware.cache.CacheHierarchy;
+import hardware.datatypes.I_Instruction;
+import hardware.datatypes.Instruction;
+import hardware.datatypes.R_Instruction;
+import hardware.metrics.ExecutionCounters;
+
+/**
+ * Execution engine that interprets the program while timing it on the classic
+ * five stage pipeline: IF, ID, EX, MEM and WB.
+ *
+ * Instructions are executed one at a time, exactly as the interpreter does,
+ * and each is charged the cycles it holds up the pipeline for. The pipeline has
+ * full forwarding into EX, so most instructions issue back to back in one
+ * cycle. The exceptions are
+ *
+ * - a load followed straight away by an instruction reading the loaded
+ * register, which stalls LOAD_USE_STALL cycles
+ *
+ * - branches, which are resolved in EX, so a mispredicted branch flushes
+ * BRANCH_PENALTY cycles of wrongly fetched instructions
+ *
+ * - jumps, resolved in ID, which cost JUMP_PENALTY cycles when mispredicted.
+ * eret counts as a jump no predictor knows the target of
+ *
+ * - exceptions, taken in MEM, which flush EXCEPTION_PENALTY cycles of the
+ * instructions behind the one that raised it
+ *
+ * Predictions come from the CPU's BranchUnit. Without one, branches are
+ * predicted not taken and jumps always mispredicted, as fetch has no target
+ * for them.
+ *
+ * Each run also pays FILL_CYCLES for the last instruction to get through the
+ * pipeline. Stalls are charged to the stalled instruction, penalties to the
+ * branch or jump, so cycles can be attributed to addresses in PipelineTiming.
+ *
+ * @sammc
+ */
+final class PipelineEngine {
+
+	static final int LOAD_USE_STALL = 1;
+	static final int BRANCH_PENALTY = 2;
+	static final int JUMP_PENALTY = 1;
+	static final int EXCEPTION_PENALTY = 3; // IF, ID and EX flushed
+	static final int FILL_CYCLES = 4; // pipeline depth - 1
+
+	private final CPU cpu;
+	private PipelineTiming timing;
+
+	PipelineEngine(CPU cpu) {
+		this.cpu = cpu;
+		reset(0);
+	}
+
+	/**
+	 * Drop all timing and size it for a newly loaded program
+	 *
+	 * @param textLength number of instructions in the program
+	 */
+	void reset(int textLength) {
+		timing = new PipelineTiming(textLength);
+	}
+
+	PipelineTiming timing() {
+		return timing;
+	}
+
+	/**
+	 * Run the loaded program until it halts or leaves the text segment
+	 */
+	void run() {
+		PipelineTiming t = timing;
+		int loaded = 0; // register the previous instruction loaded, 0 if it wasn't a load
+		CacheHierarchy caches = cpu.getCaches();
+		BranchUnit branches = cpu.getBranchUnit();
+
+		while (cpu.getPC() <= CPU.STATIC_DATA) {
+			int pc = cpu.getPC();
+			if (caches != null) {
+				caches.fetch(pc);
+			}
+			Instruction ins = cpu.fetch(pc);
+			if (ins.value == 0xFFFFFFFF) // Sentinel, halt program execution
+				break;
+			long exceptions = cpu.getExceptionCount();
+			cpu.execute(ins);
+
+			int cycles = 1;
+			if (loaded != 0 && reads(ins, loaded)) {
+				cycles += LOAD_USE_STALL;
+				t.loadUseStalls++;
+			}
+			loaded = 0;
+
+			ExecutionCounters counters = cpu.counters();
+			if (cpu.getExceptionCount() != exceptions) {
+				cycles += EXCEPTION_PENALTY;
+			} else if (ins.opcode == 0x10 && ((I_Instruction) ins).rs == 0x10) { // eret
+				t.jumps++;
+				cycles += JUMP_PENALTY;
+				t.mispredictions++;
+			} else if (ins.isIType()) {
+				I_Instruction i = (I_Instruction) ins;
+				if (i.isBranch()) {
+					boolean taken = cpu.getPC() != pc;
+					if (taken) {
+						t.branchesTaken++;
+					}
+					// without a branch unit every branch is predicted not taken
+					if (branches == null ? taken : !branches.branch(pc, pc + 1 + i.immediate, taken)) {
+						cycles += BRANCH_PENALTY;
+						t.mispredictions++;
+					}
+					if (counters != null) {
+						counters.branch(taken);
+					}
+				} else if (isLoad(i.opcode)) {
+					loaded = i.rt;
+				}
+			} else if (ins.isJType() || (ins.isRType() && ((R_Instruction) ins).func == 0x8)) { // j, jal, jr
+				t.jumps++;
+				// without a branch unit no jump target is known before ID
+				if (branches == null || !branches.jump(pc, cpu.getPC() + 1, ins.opcode == 0x3,
+						ins.isRType() && ((R_Instruction) ins).rs == CPU.$ra)) {
+					cycles += JUMP_PENALTY;
+					t.mispredictions++;
+				}
+			}
+
+			t.charge(pc, cycles);
+			cpu.setPC(cpu.getPC() + 1);
+			if (counters != null) {
+				counters.retire(ins);
+			}
+			if (cpu.addInstructions(1))
+				break;
+		}
+		t.cycles += FILL_CYCLES;
+	}
+
+	/**
+	 * Returns true for instructions whose result is only ready after MEM, sc
+	 * included as its success flag comes out of the memory stage
+	 */
+	private static boolean isLoad(int opcode) {
+		switch (opcode) {
+		case 0x23: // lw
+		case 0x24: // lbu
+		case 0x25: // lhu
+		case 0x30: // ll
+		case 0x38: // sc
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Returns true if ins reads register in ID, for register other than $0
+	 */
+	private static boolean reads(Instruction ins, int register) {
+		if (ins.isRType()) {
+			R_Instruction r = (R_Instruction) ins;
+			if (r.func == 0xc) { // syscall
+				return register == CPU.$v0 || (register >= CPU.$a0 && register <= CPU.$a2);
+			}
+			return r.rs == register || r.rt == register;
+		} else if (ins.isIType()) {
+			I_Instruction i = (I_Instruction) ins;
+			if (i.opcode == 0x10) { // coprocessor 0, rs is the operation, mtc0 reads rt
+				return i.rs == 0x4 && i.rt == register;
+			}
+			if (i.rs == register) {
+				return true;
+			}
+			switch (i.opcode) {
+			case 0x4: // beq
+			case 0x5: // bne
+			case 0x28: // sb
+			case 0x29: // sh
+			case 0x2b: // sw
+			case 0x38: // sc
+				return i.rt == register;
+			}
+		}
+		return false;
+	}
+
+}
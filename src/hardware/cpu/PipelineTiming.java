@@ -0,0 +1,211 @@
+package hardware.cpu;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Cycles counted by running in ExecutionMode.PIPELINE, see PipelineEngine for
+ * the pipeline modelled.
+ *
+ * Counts cover every run in that mode since the program was loaded. Cycles are
+ * also kept per address of the loaded program, so they can be broken down by
+ * label with byLabel.
+ *
+ * @sammc
+ */
+public final class PipelineTiming {
+
+	private final long[] addressCycles; // indexed from PC_STARTING_ADDRESS
+	private final long[] addressExecutions;
+
+	long cycles;
+	long instructions;
+	long loadUseStalls;
+	long branchesTaken;
+	long jumps;
+	long mispredictions;
+
+	PipelineTiming(int textLength) {
+		addressCycles = new long[textLength];
+		addressExecutions = new long[textLength];
+	}
+
+	/**
+	 * Charge one executed instruction
+	 *
+	 * @param pc     address of the instruction
+	 * @param cycles cycles it held up the pipeline for
+	 */
+	void charge(int pc, int cycles) {
+		int index = pc - CPU.PC_STARTING_ADDRESS;
+		if (index >= 0 && index < addressCycles.length) {
+			addressCycles[index] += cycles;
+			addressExecutions[index]++;
+		}
+		this.cycles += cycles;
+		instructions++;
+	}
+
+	/**
+	 * Returns the total cycles, including filling the pipeline on every run
+	 *
+	 * @return
+	 */
+	public long getCycles() {
+		return cycles;
+	}
+
+	public long getInstructions() {
+		return instructions;
+	}
+
+	/**
+	 * Returns cycles per instruction, or 0 if nothing has run
+	 *
+	 * @return
+	 */
+	public double getCPI() {
+		return instructions == 0 ? 0 : (double) cycles / instructions;
+	}
+
+	public long getLoadUseStalls() {
+		return loadUseStalls;
+	}
+
+	public long getBranchesTaken() {
+		return branchesTaken;
+	}
+
+	public long getJumps() {
+		return jumps;
+	}
+
+	/**
+	 * Returns the number of branches and jumps that paid a mispredict penalty
+	 *
+	 * @return
+	 */
+	public long getMispredictions() {
+		return mispredictions;
+	}
+
+	/**
+	 * Returns the cycles charged to the instruction at address, 0 if it is outside
+	 * the loaded program
+	 *
+	 * @param address
+	 * @return
+	 */
+	public long getCycles(int address) {
+		int index = address - CPU.PC_STARTING_ADDRESS;
+		return index >= 0 && index < addressCycles.length ? addressCycles[index] : 0;
+	}
+
+	/**
+	 * Returns the number of times the instruction at address ran, 0 if it is
+	 * outside the loaded program
+	 *
+	 * @param address
+	 * @return
+	 */
+	public long getExecutions(int address) {
+		int index = address - CPU.PC_STARTING_ADDRESS;
+		return index >= 0 && index < addressExecutions.length ? addressExecutions[index] : 0;
+	}
+
+	/**
+	 * Break cycles down by label. Each label covers the instructions from its
+	 * address up to the next label in the text segment; instructions before the
+	 * first label aren't covered by any.
+	 *
+	 * @param labels text labels and their addresses, eg. Program.labels
+	 * @return a region per label, in address order
+	 */
+	public List<Region> byLabel(Map<String, Integer> labels) {
+		TreeMap<Integer, String> byAddress = new TreeMap<Integer, String>();
+		for (Map.Entry<String, Integer> label : labels.entrySet()) {
+			byAddress.put(label.getValue(), label.getKey());
+		}
+
+		List<Region> regions = new ArrayList<Region>(byAddress.size());
+		int end = CPU.PC_STARTING_ADDRESS + addressCycles.length;
+		for (Map.Entry<Integer, String> label : byAddress.entrySet()) {
+			Integer next = byAddress.higherKey(label.getKey());
+			Region region = new Region(label.getValue(), label.getKey(), next == null ? end : next);
+			for (int address = region.start; address < region.end; address++) {
+				region.cycles += getCycles(address);
+				region.instructions += getExecutions(address);
+			}
+			regions.add(region);
+		}
+		return regions;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+				"%d cycles, %d instructions, CPI %.3f (%d load-use stalls, %d branches taken, %d jumps, %d mispredicted)",
+				cycles, instructions, getCPI(), loadUseStalls, branchesTaken, jumps, mispredictions);
+	}
+
+	/**
+	 * The cycles spent in the instructions under one label
+	 */
+	public static final class Region {
+
+		private final String label;
+		private final int start;
+		private final int end;
+		private long cycles;
+		private long instructions;
+
+		private Region(String label, int start, int end) {
+			this.label = label;
+			this.start = start;
+			this.end = end;
+		}
+
+		public String getLabel() {
+			return label;
+		}
+
+		/**
+		 * Returns the address of the labelled instruction
+		 *
+		 * @return
+		 */
+		public int getStart() {
+			return start;
+		}
+
+		/**
+		 * Returns the address just past the region
+		 *
+		 * @return
+		 */
+		public int getEnd() {
+			return end;
+		}
+
+		public long getCycles() {
+			return cycles;
+		}
+
+		public long getInstructions() {
+			return instructions;
+		}
+
+		public double getCPI() {
+			return instructions == 0 ? 0 : (double) cycles / instructions;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s: %d cycles, %d instructions, CPI %.3f", label, cycles, instructions, getCPI());
+		}
+
+	}
+
+}
@@ -0,0 +1,383 @@
+package hardware.cpu;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import hardware.ExecutionMode;
+import hardware.cache.Cache;
+import hardware.cache.CacheHierarchy;
+import hardware.jit.RegionCompiler;
+
+/**
+ * Estimates how a long run would time in ExecutionMode.PIPELINE, with the
+ * CPU's caches and branch unit, by timing only samples of it.
+ *
+ * Between samples the program is fast forwarded in ExecutionMode.JIT with the
+ * caches detached, so it runs at full speed, switching to
+ * ExecutionMode.BASIC_BLOCK near the next sample so it stops on time. Each
+ * sample first runs warmup instructions in the pipeline, to bring the caches
+ * and predictors back up to date, then times measure instructions.
+ *
+ * run takes a sample every period instructions, as SMARTS does, and
+ * extrapolates from their means, with 95% confidence intervals from the spread
+ * between samples. The intervals use the normal approximation, so they want a
+ * few dozen samples to be trusted. runSimPoints instead times one sample per
+ * phase picked by BasicBlockVectors.choose and weighs them together; that has
+ * no spread to go on, so its estimates come without confidence intervals.
+ *
+ * Either way the whole program runs, so registers, memory and the instruction
+ * count come out exactly as a full run would leave them, while
+ * CPU.getPipelineTiming and the cache counters only cover the samples.
+ *
+ * @sammc
+ */
+public final class SampledSimulation {
+
+	// most a compiled region can run past a stop, every pass of its loop
+	private static final long JIT_OVERSHOOT = (long) RegionCompiler.LOOP_LIMIT * RegionCompiler.MAX_REGION_LENGTH;
+	private static final double Z_95 = 1.959964; // standard normal quantile for a two sided 95% interval
+
+	private final long period;
+	private final long warmup;
+	private final long measure;
+
+	/**
+	 * @param period  instructions from the start of one sample to the next
+	 * @param warmup  instructions run in the pipeline before each sample is timed
+	 * @param measure instructions timed per sample
+	 */
+	public SampledSimulation(long period, long warmup, long measure) {
+		if (measure <= 0 || warmup < 0 || warmup + measure > period) {
+			throw new IllegalArgumentException("a sample must be positive and fit in its period");
+		}
+		this.period = period;
+		this.warmup = warmup;
+		this.measure = measure;
+	}
+
+	/**
+	 * Run the loaded program to the end, sampling it every period
+	 *
+	 * @param cpu with a program loaded
+	 * @return
+	 */
+	public Estimate run(CPU cpu) {
+		Samples samples = new Samples(cpu);
+		ExecutionMode mode = cpu.getExecutionMode();
+		CacheHierarchy caches = cpu.getCaches();
+		try {
+			boolean running = true;
+			while (running) {
+				running = fastForward(cpu, period - warmup - measure)
+						&& sample(cpu, samples, measure, 1, caches);
+			}
+		} finally {
+			cpu.setCaches(caches);
+			cpu.setExecutionMode(mode);
+		}
+		return samples.estimate(cpu.getInstructionCount(), true);
+	}
+
+	/**
+	 * Run the loaded program to the end, timing the intervals picked by
+	 * BasicBlockVectors.choose from a run of the same program, each after warmup
+	 * instructions of warming up. The period and measure of this simulation are
+	 * not used.
+	 *
+	 * @param cpu    with the program loaded again
+	 * @param points
+	 * @return
+	 */
+	public Estimate runSimPoints(CPU cpu, List<BasicBlockVectors.SimPoint> points) {
+		Samples samples = new Samples(cpu);
+		ExecutionMode mode = cpu.getExecutionMode();
+		CacheHierarchy caches = cpu.getCaches();
+		try {
+			boolean running = true;
+			for (BasicBlockVectors.SimPoint point : points) {
+				long warmupStart = Math.max(cpu.getInstructionCount(), point.getStart() - warmup);
+				running = fastForward(cpu, warmupStart - cpu.getInstructionCount())
+						&& sample(cpu, samples, point.getLength(), point.getWeight(), caches);
+				if (!running) {
+					break;
+				}
+			}
+			if (running) {
+				fastForward(cpu, Long.MAX_VALUE); // the rest of the program
+			}
+		} finally {
+			cpu.setCaches(caches);
+			cpu.setExecutionMode(mode);
+		}
+		return samples.estimate(cpu.getInstructionCount(), false);
+	}
+
+	/**
+	 * Run instructions in the cheapest mode. Compiled loops only check the count
+	 * every LOOP_LIMIT passes, so the last JIT_OVERSHOOT instructions run a block
+	 * at a time to stop close to the count.
+	 *
+	 * @return false if the program finished
+	 */
+	private static boolean fastForward(CPU cpu, long instructions) {
+		long end = cpu.getInstructionCount() + instructions < 0 ? Long.MAX_VALUE
+				: cpu.getInstructionCount() + instructions;
+		cpu.setCaches(null);
+		if (instructions > JIT_OVERSHOOT) {
+			cpu.setExecutionMode(ExecutionMode.JIT);
+			if (!cpu.run(instructions - JIT_OVERSHOOT)) {
+				return false;
+			}
+		}
+		if (end <= cpu.getInstructionCount()) {
+			return true;
+		}
+		cpu.setExecutionMode(ExecutionMode.BASIC_BLOCK);
+		return cpu.run(end - cpu.getInstructionCount());
+	}
+
+	/**
+	 * Warm up, then time length instructions into samples, if the program runs
+	 * that long
+	 *
+	 * @return false if the program finished
+	 */
+	private boolean sample(CPU cpu, Samples samples, long length, double weight, CacheHierarchy caches) {
+		cpu.setCaches(caches);
+		cpu.setExecutionMode(ExecutionMode.PIPELINE);
+		if (warmup > 0 && !cpu.run(warmup)) {
+			return false;
+		}
+		samples.begin();
+		boolean running = cpu.run(length);
+		if (running) { // the pipeline stops on the exact count, a short sample is the end of the program
+			samples.end(weight);
+		}
+		return running;
+	}
+
+	/**
+	 * Counters at the start of the current sample, and the results of every
+	 * sample so far
+	 */
+	private static final class Samples {
+
+		private final CPU cpu;
+		private final List<Cache> caches;
+		private final List<Double> weights = new ArrayList<Double>();
+		private final List<Double> cpi = new ArrayList<Double>();
+		private final List<Double> mispredictions = new ArrayList<Double>();
+		private final List<List<Double>> missRates = new ArrayList<List<Double>>(); // per cache, NaN if unused
+
+		private long instructions;
+		private long cycles;
+		private long mispredicted;
+		private final long[] accesses;
+		private final long[] misses;
+
+		Samples(CPU cpu) {
+			this.cpu = cpu;
+			caches = cpu.getCaches() == null ? new ArrayList<Cache>() : cpu.getCaches().getCaches();
+			accesses = new long[caches.size()];
+			misses = new long[caches.size()];
+			for (int i = 0; i < caches.size(); i++) {
+				missRates.add(new ArrayList<Double>());
+			}
+		}
+
+		void begin() {
+			PipelineTiming timing = cpu.getPipelineTiming();
+			instructions = timing.instructions;
+			cycles = timing.cycles;
+			mispredicted = timing.mispredictions;
+			for (int i = 0; i < caches.size(); i++) {
+				accesses[i] = caches.get(i).getReads() + caches.get(i).getWrites();
+				misses[i] = caches.get(i).getMisses();
+			}
+		}
+
+		void end(double weight) {
+			PipelineTiming timing = cpu.getPipelineTiming();
+			double ran = timing.instructions - instructions;
+			// the pipeline doesn't really drain between samples
+			cpi.add((timing.cycles - cycles - PipelineEngine.FILL_CYCLES) / ran);
+			mispredictions.add((timing.mispredictions - mispredicted) / ran);
+			for (int i = 0; i < caches.size(); i++) {
+				long used = caches.get(i).getReads() + caches.get(i).getWrites() - accesses[i];
+				missRates.get(i).add(used == 0 ? Double.NaN : (double) (caches.get(i).getMisses() - misses[i]) / used);
+			}
+			weights.add(weight);
+		}
+
+		Estimate estimate(long total, boolean confidence) {
+			Map<String, Statistic> rates = new LinkedHashMap<String, Statistic>();
+			for (int i = 0; i < caches.size(); i++) {
+				rates.put(caches.get(i).getName(), Statistic.of(missRates.get(i), weights, confidence));
+			}
+			return new Estimate(total, cpi.size(), Statistic.of(cpi, weights, confidence),
+					Statistic.of(mispredictions, weights, confidence), rates);
+		}
+
+	}
+
+	/**
+	 * What a sampled run estimates the whole run would have measured
+	 */
+	public static final class Estimate {
+
+		private final long instructions;
+		private final int samples;
+		private final Statistic cpi;
+		private final Statistic mispredictions;
+		private final Map<String, Statistic> missRates;
+
+		private Estimate(long instructions, int samples, Statistic cpi, Statistic mispredictions,
+				Map<String, Statistic> missRates) {
+			this.instructions = instructions;
+			this.samples = samples;
+			this.cpi = cpi;
+			this.mispredictions = mispredictions;
+			this.missRates = missRates;
+		}
+
+		/**
+		 * Returns the instructions the whole run executed, counted exactly
+		 *
+		 * @return
+		 */
+		public long getInstructions() {
+			return instructions;
+		}
+
+		public int getSamples() {
+			return samples;
+		}
+
+		public Statistic getCPI() {
+			return cpi;
+		}
+
+		/**
+		 * Returns the estimated cycles for the whole run, CPI times instructions
+		 *
+		 * @return
+		 */
+		public double getCycles() {
+			return cpi.getMean() * instructions;
+		}
+
+		/**
+		 * Returns the mispredicted branches and jumps per instruction
+		 *
+		 * @return
+		 */
+		public Statistic getMispredictions() {
+			return mispredictions;
+		}
+
+		/**
+		 * Returns the miss rate of each cache, by name, in hierarchy order
+		 *
+		 * @return
+		 */
+		public Map<String, Statistic> getMissRates() {
+			return missRates;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder(String.format("%d instructions, %d samples, CPI %s, %.0f cycles%n",
+					instructions, samples, cpi, getCycles()));
+			sb.append(String.format("mispredictions per instruction %s%n", mispredictions));
+			for (Map.Entry<String, Statistic> rate : missRates.entrySet()) {
+				sb.append(String.format("%s miss rate %s%n", rate.getKey(), rate.getValue()));
+			}
+			return sb.toString();
+		}
+
+	}
+
+	/**
+	 * A mean over samples, with the half width of its 95% confidence interval
+	 */
+	public static final class Statistic {
+
+		private final double mean;
+		private final double confidence;
+		private final int samples;
+
+		private Statistic(double mean, double confidence, int samples) {
+			this.mean = mean;
+			this.confidence = confidence;
+			this.samples = samples;
+		}
+
+		/**
+		 * Mean of the values that aren't NaN, weighted, with a confidence interval
+		 * if asked for and there are at least two
+		 */
+		static Statistic of(List<Double> values, List<Double> weights, boolean confidence) {
+			double sum = 0, weight = 0;
+			int n = 0;
+			for (int i = 0; i < values.size(); i++) {
+				if (!Double.isNaN(values.get(i))) {
+					sum += values.get(i) * weights.get(i);
+					weight += weights.get(i);
+					n++;
+				}
+			}
+			double mean = n == 0 ? Double.NaN : sum / weight;
+			if (!confidence || n < 2) {
+				return new Statistic(mean, Double.NaN, n);
+			}
+			double squares = 0;
+			for (double value : values) {
+				if (!Double.isNaN(value)) {
+					squares += (value - mean) * (value - mean);
+				}
+			}
+			return new Statistic(mean, Z_95 * Math.sqrt(squares / (n - 1) / n), n);
+		}
+
+		/**
+		 * Returns the mean, NaN if there were no samples
+		 *
+		 * @return
+		 */
+		public double getMean() {
+			return mean;
+		}
+
+		/**
+		 * Returns the half width of the 95% confidence interval around the mean,
+		 * NaN if there is none
+		 *
+		 * @return
+		 */
+		public double getConfidence() {
+			return confidence;
+		}
+
+		public double getLow() {
+			return mean - confidence;
+		}
+
+		public double getHigh() {
+			return mean + confidence;
+		}
+
+		public int getSamples() {
+			return samples;
+		}
+
+		@Override
+		public String toString() {
+			return Double.isNaN(confidence) ? String.format("%.4f", mean)
+					: String.format("%.4f +- %.4f", mean, confidence);
+		}
+
+	}
+
+}
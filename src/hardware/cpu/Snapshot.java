@@ -0,0 +1,196 @@
+package hardware.cpu;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import hardware.ExecutionMode;
+import hardware.datatypes.Instruction;
+import hardware.memory.DirectMemory;
+import hardware.memory.Memory;
+
+/**
+ * The state of a CPU at one point in time, taken with CPU.snapshot.
+ *
+ * Memory is held copy on write, so taking a snapshot and forking CPUs from it
+ * costs the size of the page table, not of memory. A snapshot never changes,
+ * whatever the CPU it came from or the CPUs forked from it do afterwards, and
+ * it can be forked from any number of threads at once.
+ *
+ * Snapshots can be written to a file and read back in another JVM. The file is
+ * a header (the registers, PC, instruction count, mode, coprocessor 0
+ * registers, text length and an index of page numbers), padded to a page
+ * boundary, followed by every page that was ever written, in native byte
+ * order. Reading maps the pages rather than reading them, so restoring takes
+ * about the same time however large the guest is, and pages are only read in
+ * from disk when they are first touched.
+ *
+ * @sammc
+ */
+public final class Snapshot {
+
+	private static final int MAGIC = 0x4d534e50; // MSNP
+	private static final int VERSION = 2;
+
+	final int[] registers;
+	final int[] cp0;
+	final int pc;
+	final long instructionCount;
+	final Memory memory; // never written, only forked
+	final Instruction[] decoded;
+	final ExecutionMode mode;
+
+	Snapshot(int[] registers, int[] cp0, int pc, long instructionCount, Memory memory, Instruction[] decoded,
+			ExecutionMode mode) {
+		this.registers = registers;
+		this.cp0 = cp0;
+		this.pc = pc;
+		this.instructionCount = instructionCount;
+		this.memory = memory;
+		this.decoded = decoded;
+		this.mode = mode;
+	}
+
+	/**
+	 * Returns a new CPU in exactly the captured state, with memory of its own
+	 *
+	 * @return
+	 */
+	public CPU fork() {
+		return new CPU(this);
+	}
+
+	public int getPC() {
+		return pc;
+	}
+
+	/**
+	 * Returns a copy of the captured register file
+	 *
+	 * @return
+	 */
+	public int[] getRegisters() {
+		return registers.clone();
+	}
+
+	public long getInstructionCount() {
+		return instructionCount;
+	}
+
+	/**
+	 * Write the snapshot to a file, replacing any file already there. Can run on
+	 * any thread while the CPU it came from carries on.
+	 *
+	 * @param file
+	 * @throws IOException
+	 */
+	public void write(Path file) throws IOException {
+		int[] pages = memory.getAllocatedPages();
+		byte[] modeName = mode.name().getBytes(StandardCharsets.US_ASCII);
+		int headerBytes = 4 * 4 + 8 + 2 + modeName.length + 4 * (registers.length + 1 + cp0.length + 2 + pages.length);
+		int padded = (headerBytes + DirectMemory.PAGE_BYTES - 1) / DirectMemory.PAGE_BYTES * DirectMemory.PAGE_BYTES;
+
+		ByteBuffer header = ByteBuffer.allocate(padded).order(ByteOrder.nativeOrder());
+		header.putInt(MAGIC).putInt(VERSION).put((byte) (ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN ? 1 : 0));
+		header.putInt(pc).putLong(instructionCount);
+		header.put((byte) modeName.length).put(modeName);
+		header.putInt(registers.length);
+		for (int r : registers) {
+			header.putInt(r);
+		}
+		header.putInt(cp0.length);
+		for (int r : cp0) {
+			header.putInt(r);
+		}
+		header.putInt(decoded.length).putInt(pages.length);
+		for (int p : pages) {
+			header.putInt(p);
+		}
+		header.clear();
+
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			writeFully(channel, header);
+			ByteBuffer batch = ByteBuffer.allocateDirect(64 * DirectMemory.PAGE_BYTES).order(ByteOrder.nativeOrder());
+			IntBuffer words = batch.asIntBuffer();
+			int[] page = new int[Memory.PAGE_SIZE];
+			for (int p : pages) {
+				memory.read(p << Memory.PAGE_BITS, page);
+				words.put(page);
+				if (!words.hasRemaining()) {
+					batch.clear();
+					writeFully(channel, batch);
+					words.clear();
+				}
+			}
+			batch.clear().limit(words.position() * Integer.BYTES);
+			writeFully(channel, batch);
+		}
+	}
+
+	/**
+	 * Map a snapshot written by write. Only the header is read, pages are read
+	 * in by the operating system as they are touched. Forked CPUs copy a page
+	 * before writing it, the file is never changed.
+	 *
+	 * @param file
+	 * @return
+	 * @throws IOException if the file isn't a snapshot, or was written on a
+	 *                     machine with the other byte order
+	 */
+	public static Snapshot read(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+					Math.min(channel.size(), DirectMemory.PAGE_BYTES)).order(ByteOrder.nativeOrder());
+			if (header.remaining() < 9 || header.getInt() != MAGIC) {
+				throw new IOException(file + " is not a snapshot");
+			}
+			int version = header.getInt();
+			if (version != VERSION) {
+				throw new IOException(file + " is a snapshot of unknown version " + version);
+			}
+			if ((header.get() == 1) != (ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN)) {
+				throw new IOException(file + " was written with the other byte order");
+			}
+			int pc = header.getInt();
+			long instructionCount = header.getLong();
+			byte[] modeName = new byte[header.get()];
+			header.get(modeName);
+			int[] registers = new int[header.getInt()];
+			for (int i = 0; i < registers.length; i++) {
+				registers[i] = header.getInt();
+			}
+			int[] cp0 = new int[header.getInt()];
+			for (int i = 0; i < cp0.length; i++) {
+				cp0[i] = header.getInt();
+			}
+			int textLength = header.getInt();
+			int[] pages = new int[header.getInt()];
+
+			// the index can run past the first page
+			int headerBytes = header.position() + pages.length * 4;
+			int padded = (headerBytes + DirectMemory.PAGE_BYTES - 1) / DirectMemory.PAGE_BYTES
+					* DirectMemory.PAGE_BYTES;
+			IntBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, header.position(), pages.length * 4L)
+					.order(ByteOrder.nativeOrder()).asIntBuffer();
+			index.get(pages);
+
+			Memory memory = DirectMemory.map(channel, padded, pages);
+			// decoded lazily by the CPU, from the mapped text
+			return new Snapshot(registers, cp0, pc, instructionCount, memory, new Instruction[textLength],
+					ExecutionMode.valueOf(new String(modeName, StandardCharsets.US_ASCII)));
+		}
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+}
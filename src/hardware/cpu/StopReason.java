@@ -0,0 +1,42 @@
+package hardware.cpu;
+
+/**
+ * Why a run returned, see CPU.run
+ * 
+ * @sammc
+ */
+public enum StopReason {
+
+	/**
+	 * The program halted, exited or left the text segment
+	 */
+	FINISHED,
+
+	/**
+	 * The run executed the instructions it was allowed
+	 */
+	INSTRUCTION_BUDGET,
+
+	/**
+	 * The run went past its wall clock deadline
+	 */
+	DEADLINE,
+
+	/**
+	 * The program raised an exception with no handler installed. The PC is left
+	 * on the instruction that raised it, see CPU.getCP0 for why.
+	 */
+	EXCEPTION,
+
+	/**
+	 * The run reached a breakpoint, see Debugger. The PC is left on it.
+	 */
+	BREAKPOINT,
+
+	/**
+	 * The program accessed a watched address, see Debugger. The PC is left on
+	 * the instruction after the access.
+	 */
+	WATCHPOINT
+
+}
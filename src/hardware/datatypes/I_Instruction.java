@@ -29,7 +29,7 @@ public class I_Instruction extends Instruction {
 		instruction += (opcode << 26);
 		instruction += (rs << 21);
 		instruction += (rt << 16);
-		instruction += immediate;
+		instruction += (immediate & 0xFFFF);
 
 		this.value = instruction;
 	}
@@ -41,12 +41,31 @@ public class I_Instruction extends Instruction {
 		rs = copyBitField(instruction, 25, 21);
 		rt = copyBitField(instruction, 20, 16);
 		immediate = copyBitField(instruction, 15, 0);
+		// andi and ori zero extend their immediate, everything else sign extends
+		if (opcode != 0xc && opcode != 0xd) {
+			immediate = (short) immediate;
+		}
 	}
 
 	public boolean isBranch() {
 		return (opcode == 4 || opcode == 5);
 	}
 
+	@Override
+	public int getDestination() {
+		switch (opcode) {
+		case 0x4: // beq
+		case 0x5: // bne
+		case 0x28: // sb
+		case 0x29: // sh
+		case 0x2b: // sw
+			return -1;
+		case 0x10: // coprocessor 0, only mfc0 writes a register
+			return rs == 0x0 ? rt : -1;
+		}
+		return rt; // sc writes its success flag to rt
+	}
+
 	/**
 	 * Returns true if the instruciton's immediate value is actually a label
 	 * substitute
@@ -65,6 +84,9 @@ public class I_Instruction extends Instruction {
 			head = label + " " + head;
 		}
 
+		if (opcode == 0x10) { // coprocessor 0, rd sits in the top of the immediate
+			return rs == 0x10 ? head.trim() : head + MipsIsa.getReg(rt) + " $" + ((immediate >> 11) & 0x1F);
+		}
 		String body = head + MipsIsa.getReg(rt) + " " + MipsIsa.getReg(rs) + " ";
 
 		boolean isMemOp = opcode == 0x23 || opcode == 0x2b;
@@ -90,7 +112,7 @@ public class I_Instruction extends Instruction {
 		instruction += (opcode << 26);
 		instruction += (rs << 21);
 		instruction += (rt << 16);
-		instruction += immediate;
+		instruction += (immediate & 0xFFFF);
 
 		this.value = instruction;
 
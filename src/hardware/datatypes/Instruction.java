@@ -37,6 +37,25 @@ public class Instruction {
 		return new J_Instruction(value);
 	}
 
+	/**
+	 * Decode a raw instruction word into the matching typed instruction object, so
+	 * that it can be handed straight to MipsIsa.execute
+	 * 
+	 * @param val
+	 * @return an R, I or J type instruction, or a plain Instruction for halt
+	 */
+	public static Instruction decode(int val) {
+		int opcode = val >>> 26;
+		if (opcode == 0) {
+			return new R_Instruction(val);
+		} else if (opcode == 2 || opcode == 3) {
+			return new J_Instruction(val);
+		} else if (opcode == 0x3F) {
+			return new Instruction(val);
+		}
+		return new I_Instruction(val);
+	}
+
 	@Override
 	public String toString() {
 		return Integer.toHexString(value);
@@ -58,6 +77,15 @@ public class Instruction {
 		return (opcode == 0x3F);
 	}
 
+	/**
+	 * Returns the register this instruction writes, or -1 if it doesn't write one
+	 * 
+	 * @return
+	 */
+	public int getDestination() {
+		return -1;
+	}
+
 	public boolean equals(Instruction c) {
 		// if the values match ...
 		if (value == c.value) {
@@ -92,11 +120,11 @@ public class Instruction {
 	 */
 	protected static int copyBitField(int src, int lInd, int rInd) {
 		// 0x0000.0000
-		src >>= rInd;
+		src >>>= rInd;
 		// construct a bit string of the appropriate length
 		int len = lInd - rInd;
-		// 2^n - 1 = n bit number with all digits as 1
-		int lenBitsOfOne = (int) (Math.pow(2, len + 1) - 1);
+		// n bit number with all digits as 1
+		int lenBitsOfOne = -1 >>> (31 - len);
 		// Preserve the bits you mean too, clear the rest
 		return lenBitsOfOne & src;
 	}
@@ -58,6 +58,11 @@ public class J_Instruction extends Instruction {
 
 	}
 
+	@Override
+	public int getDestination() {
+		return opcode == 3 ? MipsIsa.$ra : -1; // jal links
+	}
+
 	public boolean hasLabelImm() {
 		return !labelOperand.equals("");
 	}
@@ -50,6 +50,14 @@ public class R_Instruction extends Instruction {
 		func = copyBitField(instruction, 5, 0);
 	}
 
+	@Override
+	public int getDestination() {
+		if (func == 0xc) { // syscall, results come back in $v0
+			return MipsIsa.$v0;
+		}
+		return func == 0x8 ? -1 : rd; // jr
+	}
+
 	@Override
 	public String getASM() {
 		String head = MipsIsa.getNeumonic(this) + " ";
@@ -62,6 +70,9 @@ public class R_Instruction extends Instruction {
 		if (func == 0 || func == 2) {
 			return head + MipsIsa.getReg(rd) + " " + MipsIsa.getReg(rs) + " " + shamt;
 		}
+		if (func == MipsIsa.translateInsToFunc("syscall")) {
+			return head.trim();
+		}
 		// if it's a jr operation
 		if (func == MipsIsa.translateInsToFunc("jr")) {
 			return head + MipsIsa.getReg(rs);
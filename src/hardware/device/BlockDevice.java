@@ -0,0 +1,124 @@
+package hardware.device;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A disk of BLOCK_SIZE byte blocks backed by a file. The program picks a block,
+ * then moves it between the file and the device's buffer with a command:
+ *
+ * 0 block number
+ * 1 command, write READ or WRITE to run it
+ * 2 status, OK or ERROR for the last command
+ * 3 number of blocks in the file, read only
+ * BUFFER to BUFFER + BLOCK_SIZE - 1, the buffer, a byte per word as with
+ * .asciiz
+ *
+ * Commands complete before the store that issues them returns.
+ *
+ * @sammc
+ */
+public final class BlockDevice implements Device {
+
+	public static final int BLOCK_SIZE = 512; // bytes
+
+	public static final int BLOCK = 0;
+	public static final int COMMAND = 1;
+	public static final int STATUS = 2;
+	public static final int BLOCKS = 3;
+	public static final int BUFFER = 512;
+
+	public static final int READ = 1;
+	public static final int WRITE = 2;
+
+	public static final int OK = 0;
+	public static final int ERROR = 1;
+
+	private final FileChannel file;
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(BLOCK_SIZE);
+	private int block;
+	private int status = OK;
+
+	/**
+	 * @param file open for reading, and for writing if the program writes blocks.
+	 *             The device doesn't close it.
+	 */
+	public BlockDevice(FileChannel file) {
+		this.file = file;
+	}
+
+	@Override
+	public int size() {
+		return BUFFER + BLOCK_SIZE;
+	}
+
+	@Override
+	public int read(int offset) {
+		if (offset >= BUFFER) {
+			return buffer.get(offset - BUFFER) & 0xFF;
+		}
+		switch (offset) {
+		case BLOCK:
+			return block;
+		case STATUS:
+			return status;
+		case BLOCKS:
+			try {
+				return (int) Math.min(file.size() / BLOCK_SIZE, Integer.MAX_VALUE);
+			} catch (IOException e) {
+				return 0;
+			}
+		default:
+			return 0;
+		}
+	}
+
+	@Override
+	public void write(int offset, int value) {
+		if (offset >= BUFFER) {
+			buffer.put(offset - BUFFER, (byte) value);
+		} else if (offset == BLOCK) {
+			block = value;
+		} else if (offset == COMMAND) {
+			status = run(value) ? OK : ERROR;
+		}
+	}
+
+	/**
+	 * Move the selected block between the file and the buffer. Reading past the
+	 * end of the file fills the rest of the buffer with zeroes.
+	 */
+	private boolean run(int command) {
+		long position = (block & 0xFFFFFFFFL) * BLOCK_SIZE;
+		buffer.clear();
+		try {
+			if (command == READ) {
+				while (buffer.hasRemaining() && file.read(buffer, position + buffer.position()) > 0)
+					;
+				while (buffer.hasRemaining()) {
+					buffer.put((byte) 0);
+				}
+				return true;
+			}
+			if (command == WRITE) {
+				while (buffer.hasRemaining()) {
+					file.write(buffer, position + buffer.position());
+				}
+				return true;
+			}
+			return false;
+		} catch (IOException e) {
+			return false;
+		} finally {
+			buffer.clear();
+		}
+	}
+
+	@Override
+	public void reset() {
+		block = 0;
+		status = OK;
+	}
+
+}
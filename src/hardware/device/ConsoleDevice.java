@@ -0,0 +1,77 @@
+package hardware.device;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * A polled terminal, laid out like SPIM's memory mapped console but a word per
+ * register:
+ *
+ * 0 receiver control, bit 0 set when a character is waiting
+ * 1 receiver data, reading takes the waiting character
+ * 2 transmitter control, bit 0 always set, output never waits
+ * 3 transmitter data, writing sends the low byte
+ *
+ * @sammc
+ */
+public final class ConsoleDevice implements Device {
+
+	public static final int RECEIVER_CONTROL = 0;
+	public static final int RECEIVER_DATA = 1;
+	public static final int TRANSMITTER_CONTROL = 2;
+	public static final int TRANSMITTER_DATA = 3;
+
+	private final InputStream in;
+	private final OutputStream out;
+
+	/**
+	 * A console on the process' standard input and output
+	 */
+	public ConsoleDevice() {
+		this(System.in, System.out);
+	}
+
+	public ConsoleDevice(InputStream in, OutputStream out) {
+		this.in = in;
+		this.out = out;
+	}
+
+	@Override
+	public int size() {
+		return 4;
+	}
+
+	@Override
+	public int read(int offset) {
+		try {
+			switch (offset) {
+			case RECEIVER_CONTROL:
+				return in.available() > 0 ? 1 : 0;
+			case RECEIVER_DATA:
+				return in.available() > 0 ? in.read() : 0;
+			case TRANSMITTER_CONTROL:
+				return 1;
+			default:
+				return 0;
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public void write(int offset, int value) {
+		if (offset != TRANSMITTER_DATA) {
+			return;
+		}
+		try {
+			out.write(value);
+			out.flush();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+}
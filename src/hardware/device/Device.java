@@ -0,0 +1,40 @@
+package hardware.device;
+
+/**
+ * A memory mapped device, see DeviceBus. Devices see word offsets from the
+ * address they are mapped at, so the same device can be mapped anywhere.
+ *
+ * @sammc
+ */
+public interface Device {
+
+	/**
+	 * Returns the number of words of registers the device spans
+	 *
+	 * @return
+	 */
+	public int size();
+
+	/**
+	 * Load from a register
+	 *
+	 * @param offset words from the start of the device
+	 * @return
+	 */
+	public int read(int offset);
+
+	/**
+	 * Store to a register
+	 *
+	 * @param offset words from the start of the device
+	 * @param value
+	 */
+	public void write(int offset, int value);
+
+	/**
+	 * Put the device back in its power on state, called when the CPU is reset
+	 */
+	public default void reset() {
+	}
+
+}
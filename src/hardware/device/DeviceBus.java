@@ -0,0 +1,123 @@
+package hardware.device;
+
+import java.util.Arrays;
+
+import hardware.memory.Memory;
+
+/**
+ * Routes loads and stores in the device window, the top WINDOW_SIZE words of
+ * the address space, to memory mapped devices. Everything below the window is
+ * plain RAM.
+ *
+ * Keeping every device in one window means lw and sw only need isDevice, a
+ * single compare that is always false for RAM, before going to memory, so
+ * plain accesses never look at the device map. Devices are mapped at page
+ * granularity, the map is a page sized slot per page of the window.
+ *
+ * Unmapped addresses in the window read zero and ignore writes. Attach to a
+ * CPU with CPU.setDevices.
+ *
+ * @sammc
+ */
+public final class DeviceBus {
+
+	public static final int WINDOW_BITS = 16;
+	public static final int WINDOW_SIZE = 1 << WINDOW_BITS; // words
+	public static final int WINDOW_START = -WINDOW_SIZE; // 0xFFFF0000
+
+	private final Device[] devices = new Device[WINDOW_SIZE >>> Memory.PAGE_BITS]; // by page of the window
+	private final int[] starts = new int[devices.length]; // address each page's device is mapped at
+
+	/**
+	 * Returns true if address is in the device window
+	 *
+	 * @param address
+	 * @return
+	 */
+	public static boolean isDevice(int address) {
+		return address >>> WINDOW_BITS == WINDOW_START >>> WINDOW_BITS;
+	}
+
+	/**
+	 * Map a device at address, covering as many pages as it needs
+	 *
+	 * @param address page aligned address in the device window
+	 * @param device
+	 * @throws IllegalArgumentException if address is outside the window or not
+	 *                                  page aligned, or the device would overlap
+	 *                                  another or run off the end of the window
+	 */
+	public void map(int address, Device device) {
+		if (!isDevice(address) || (address & Memory.PAGE_MASK) != 0) {
+			throw new IllegalArgumentException("Devices map to page aligned addresses from 0x"
+					+ Integer.toHexString(WINDOW_START) + ", not 0x" + Integer.toHexString(address));
+		}
+		int first = page(address);
+		int last = first + Math.max(device.size() - 1, 0) / Memory.PAGE_SIZE;
+		if (last >= devices.length) {
+			throw new IllegalArgumentException("Device at 0x" + Integer.toHexString(address) + " runs off the window");
+		}
+		for (int p = first; p <= last; p++) {
+			if (devices[p] != null) {
+				throw new IllegalArgumentException("Device at 0x" + Integer.toHexString(address) + " overlaps another");
+			}
+		}
+		for (int p = first; p <= last; p++) {
+			devices[p] = device;
+			starts[p] = address;
+		}
+	}
+
+	/**
+	 * Load from the device mapped over address
+	 *
+	 * @param address an address in the window
+	 * @return the register's value, or zero if nothing is mapped there
+	 */
+	public int read(int address) {
+		int p = page(address);
+		Device device = devices[p];
+		int offset = address - starts[p];
+		return device == null || offset >= device.size() ? 0 : device.read(offset);
+	}
+
+	/**
+	 * Store to the device mapped over address, ignored if nothing is mapped there
+	 *
+	 * @param address an address in the window
+	 * @param value
+	 */
+	public void write(int address, int value) {
+		int p = page(address);
+		Device device = devices[p];
+		int offset = address - starts[p];
+		if (device != null && offset < device.size()) {
+			device.write(offset, value);
+		}
+	}
+
+	/**
+	 * Reset every mapped device
+	 */
+	public void reset() {
+		Device previous = null;
+		for (Device device : devices) {
+			if (device != null && device != previous) {
+				device.reset();
+			}
+			previous = device;
+		}
+	}
+
+	/**
+	 * Unmap every device
+	 */
+	public void clear() {
+		Arrays.fill(devices, null);
+	}
+
+	private static int page(int address) {
+		return (address & (WINDOW_SIZE - 1)) >>> Memory.PAGE_BITS;
+	}
+
+}
@@ -0,0 +1,64 @@
+package hardware.device;
+
+import java.util.function.LongSupplier;
+
+/**
+ * A free running 64 bit counter, read as two words:
+ *
+ * 0 low word, reading it latches the high word
+ * 1 high word, as of the last read of the low word
+ *
+ * Writing either register restarts the count from zero. The counter ticks with
+ * a clock, microseconds of wall time by default, or eg.
+ * cpu::getInstructionCount to count guest instructions instead.
+ *
+ * @sammc
+ */
+public final class TimerDevice implements Device {
+
+	public static final int LOW = 0;
+	public static final int HIGH = 1;
+
+	private final LongSupplier clock;
+	private long start;
+	private int high;
+
+	/**
+	 * A timer counting microseconds
+	 */
+	public TimerDevice() {
+		this(() -> System.nanoTime() / 1000);
+	}
+
+	public TimerDevice(LongSupplier clock) {
+		this.clock = clock;
+		reset();
+	}
+
+	@Override
+	public int size() {
+		return 2;
+	}
+
+	@Override
+	public int read(int offset) {
+		if (offset == LOW) {
+			long count = clock.getAsLong() - start;
+			high = (int) (count >>> 32);
+			return (int) count;
+		}
+		return high;
+	}
+
+	@Override
+	public void write(int offset, int value) {
+		reset();
+	}
+
+	@Override
+	public void reset() {
+		start = clock.getAsLong();
+		high = 0;
+	}
+
+}
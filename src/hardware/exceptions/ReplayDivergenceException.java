@@ -0,0 +1,25 @@
+package hardware.exceptions;
+
+/**
+ * Thrown when a replayed run stops matching its recording
+ */
+public class ReplayDivergenceException extends RuntimeException {
+
+	private static final long serialVersionUID = 3120467431895318420L;
+
+	private final long instructionCount;
+
+	public ReplayDivergenceException(long instructionCount, String detail) {
+		super("Replay diverged from the recording after " + instructionCount + " instructions: " + detail);
+		this.instructionCount = instructionCount;
+	}
+
+	/**
+	 * Returns the number of instructions the replay had run when it noticed
+	 *
+	 * @return
+	 */
+	public long getInstructionCount() {
+		return instructionCount;
+	}
+}
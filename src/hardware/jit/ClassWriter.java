@@ -0,0 +1,385 @@
+package hardware.jit;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Just enough of a class file writer to build the classes the region compiler
+ * generates: a constant pool, methods with code, forward and backward branches,
+ * and one stack map frame shape shared by every branch target.
+ *
+ * @sammc
+ */
+final class ClassWriter {
+
+	// Opcodes
+	static final int ICONST_0 = 0x03;
+	static final int BIPUSH = 0x10;
+	static final int SIPUSH = 0x11;
+	static final int LDC_W = 0x13;
+	static final int ILOAD = 0x15;
+	static final int ALOAD_0 = 0x2a;
+	static final int ALOAD_1 = 0x2b;
+	static final int ALOAD_2 = 0x2c;
+	static final int IALOAD = 0x2e;
+	static final int ISTORE = 0x36;
+	static final int IASTORE = 0x4f;
+	static final int IADD = 0x60;
+	static final int ISUB = 0x64;
+	static final int LSUB = 0x65;
+	static final int ISHL = 0x78;
+	static final int LSHL = 0x79;
+	static final int IUSHR = 0x7c;
+	static final int LUSHR = 0x7d;
+	static final int IAND = 0x7e;
+	static final int IOR = 0x80;
+	static final int LOR = 0x81;
+	static final int IXOR = 0x82;
+	static final int IINC = 0x84;
+	static final int I2L = 0x85;
+	static final int L2I = 0x88;
+	static final int IFLT = 0x9b;
+	static final int IFGE = 0x9c;
+	static final int IFGT = 0x9d;
+	static final int IFLE = 0x9e;
+	static final int IF_ICMPEQ = 0x9f;
+	static final int IF_ICMPNE = 0xa0;
+	static final int IF_ICMPLT = 0xa1;
+	static final int GOTO = 0xa7;
+	static final int LRETURN = 0xad;
+	static final int RETURN = 0xb1;
+	static final int INVOKESPECIAL = 0xb7;
+	static final int INVOKEINTERFACE = 0xb9;
+
+	// Stack map verification types
+	static final int ITEM_INTEGER = 1;
+	static final int ITEM_OBJECT = 7;
+
+	static final int ACC_PUBLIC = 0x0001;
+	static final int ACC_FINAL = 0x0010;
+	static final int ACC_SUPER = 0x0020;
+
+	private static final int CLASS_VERSION = 52; // Java 8, the first with mandatory stack maps
+
+	private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+	private final DataOutputStream poolOut = new DataOutputStream(pool);
+	private final Map<String, Integer> poolIndex = new HashMap<String, Integer>();
+	private int poolCount = 1;
+
+	private final int thisClass;
+	private final int superClass;
+	private final int[] interfaces;
+	private final List<byte[]> methods = new ArrayList<byte[]>();
+
+	ClassWriter(String name, String superName, String... interfaceNames) {
+		thisClass = classRef(name);
+		superClass = classRef(superName);
+		interfaces = new int[interfaceNames.length];
+		for (int i = 0; i < interfaceNames.length; i++) {
+			interfaces[i] = classRef(interfaceNames[i]);
+		}
+	}
+
+	/*
+	 * Constant pool
+	 */
+
+	int utf8(String value) {
+		Integer index = poolIndex.get("U" + value);
+		if (index != null) {
+			return index;
+		}
+		try {
+			poolOut.writeByte(1);
+			poolOut.writeUTF(value);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return addEntry("U" + value, 1);
+	}
+
+	int classRef(String name) {
+		Integer index = poolIndex.get("C" + name);
+		if (index != null) {
+			return index;
+		}
+		int nameIndex = utf8(name);
+		writeEntry(7, nameIndex);
+		return addEntry("C" + name, 1);
+	}
+
+	int integer(int value) {
+		Integer index = poolIndex.get("I" + value);
+		if (index != null) {
+			return index;
+		}
+		try {
+			poolOut.writeByte(3);
+			poolOut.writeInt(value);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return addEntry("I" + value, 1);
+	}
+
+	int methodRef(boolean isInterface, String owner, String name, String descriptor) {
+		String key = "M" + owner + "." + name + descriptor;
+		Integer index = poolIndex.get(key);
+		if (index != null) {
+			return index;
+		}
+		int ownerIndex = classRef(owner);
+		int nameIndex = utf8(name);
+		int descriptorIndex = utf8(descriptor);
+		writeEntry(12, nameIndex, descriptorIndex);
+		int nameAndType = addEntry("N" + name + descriptor, 1);
+		writeEntry(isInterface ? 11 : 10, ownerIndex, nameAndType);
+		return addEntry(key, 1);
+	}
+
+	private void writeEntry(int tag, int... shorts) {
+		try {
+			poolOut.writeByte(tag);
+			for (int s : shorts) {
+				poolOut.writeShort(s);
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private int addEntry(String key, int slots) {
+		int index = poolCount;
+		poolIndex.put(key, index);
+		poolCount += slots;
+		return index;
+	}
+
+	/*
+	 * Methods
+	 */
+
+	Code code() {
+		return new Code();
+	}
+
+	void method(int access, String name, String descriptor, Code code, int maxStack, int maxLocals) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			code.resolve();
+			out.writeShort(access);
+			out.writeShort(utf8(name));
+			out.writeShort(utf8(descriptor));
+			out.writeShort(1); // attributes: Code
+
+			byte[] frames = code.frames();
+			out.writeShort(utf8("Code"));
+			out.writeInt(12 + code.length + (frames == null ? 0 : 6 + frames.length));
+			out.writeShort(maxStack);
+			out.writeShort(maxLocals);
+			out.writeInt(code.length);
+			out.write(code.bytes, 0, code.length);
+			out.writeShort(0); // exception table
+			if (frames == null) {
+				out.writeShort(0);
+			} else {
+				out.writeShort(1);
+				out.writeShort(utf8("StackMapTable"));
+				out.writeInt(frames.length);
+				out.write(frames);
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		methods.add(bytes.toByteArray());
+	}
+
+	byte[] toByteArray() {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			out.writeInt(0xCAFEBABE);
+			out.writeShort(0);
+			out.writeShort(CLASS_VERSION);
+			out.writeShort(poolCount);
+			out.write(pool.toByteArray());
+			out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+			out.writeShort(thisClass);
+			out.writeShort(superClass);
+			out.writeShort(interfaces.length);
+			for (int i : interfaces) {
+				out.writeShort(i);
+			}
+			out.writeShort(0); // fields
+			out.writeShort(methods.size());
+			for (byte[] m : methods) {
+				out.write(m);
+			}
+			out.writeShort(0); // attributes
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * A branch target. Every placed label gets a stack map frame, so all labels in
+	 * a method must share the frame set with Code.setFrame.
+	 */
+	static final class Label {
+		int offset = -1;
+		final List<Integer> uses = new ArrayList<Integer>(); // offsets of the branch instructions
+	}
+
+	/**
+	 * Bytecode for one method
+	 */
+	final class Code {
+		private byte[] bytes = new byte[256];
+		private int length;
+		private final List<Label> labels = new ArrayList<Label>();
+		private byte[] frameLocals; // encoded verification types
+		private int frameLocalCount;
+
+		/**
+		 * Sets the local variable types of the frame recorded at every label. Types
+		 * are ITEM_INTEGER, or ITEM_OBJECT followed by a constant pool class index.
+		 *
+		 * @param count number of locals
+		 * @param types encoded verification types
+		 */
+		void setFrame(int count, byte[] types) {
+			frameLocalCount = count;
+			frameLocals = types;
+		}
+
+		void op(int opcode) {
+			put(opcode);
+		}
+
+		void op(int opcode, int localIndex) {
+			put(opcode);
+			put(localIndex);
+		}
+
+		void iinc(int localIndex, int amount) {
+			put(IINC);
+			put(localIndex);
+			put(amount);
+		}
+
+		void push(int value) {
+			if (value >= -1 && value <= 5) {
+				put(ICONST_0 + value);
+			} else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+				put(BIPUSH);
+				put(value);
+			} else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+				put(SIPUSH);
+				putShort(value);
+			} else {
+				put(LDC_W);
+				putShort(integer(value));
+			}
+		}
+
+		void invoke(int opcode, String owner, String name, String descriptor, int argSlots) {
+			boolean isInterface = opcode == INVOKEINTERFACE;
+			put(opcode);
+			putShort(methodRef(isInterface, owner, name, descriptor));
+			if (isInterface) {
+				put(argSlots + 1);
+				put(0);
+			}
+		}
+
+		Label label() {
+			Label l = new Label();
+			labels.add(l);
+			return l;
+		}
+
+		void place(Label l) {
+			l.offset = length;
+		}
+
+		void jump(int opcode, Label target) {
+			target.uses.add(length);
+			put(opcode);
+			putShort(0); // patched in resolve
+		}
+
+		private void resolve() {
+			for (Label l : labels) {
+				for (int use : l.uses) {
+					if (l.offset < 0) {
+						throw new IllegalStateException("Branch to a label that was never placed");
+					}
+					int delta = l.offset - use;
+					bytes[use + 1] = (byte) (delta >> 8);
+					bytes[use + 2] = (byte) delta;
+				}
+			}
+		}
+
+		/**
+		 * Builds the StackMapTable, one full frame per distinct label offset
+		 *
+		 * @return encoded table, or null if there are no labels
+		 */
+		private byte[] frames() {
+			boolean[] isTarget = new boolean[length + 1];
+			int count = 0;
+			for (Label l : labels) {
+				if (l.offset >= 0 && !isTarget[l.offset]) {
+					isTarget[l.offset] = true;
+					count++;
+				}
+			}
+			if (count == 0) {
+				return null;
+			}
+
+			ByteArrayOutputStream table = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(table);
+			try {
+				out.writeShort(count);
+				int previous = -1;
+				for (int offset = 0; offset <= length; offset++) {
+					if (!isTarget[offset]) {
+						continue;
+					}
+					out.writeByte(255); // full_frame
+					out.writeShort(offset - previous - 1);
+					out.writeShort(frameLocalCount);
+					out.write(frameLocals);
+					out.writeShort(0); // empty stack
+					previous = offset;
+				}
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+			return table.toByteArray();
+		}
+
+		private void put(int b) {
+			if (length == bytes.length) {
+				bytes = Arrays.copyOf(bytes, bytes.length * 2);
+			}
+			bytes[length++] = (byte) b;
+		}
+
+		private void putShort(int s) {
+			put(s >> 8);
+			put(s);
+		}
+	}
+
+}
@@ -0,0 +1,24 @@
+package hardware.jit;
+
+import hardware.memory.Memory;
+
+/**
+ * A region of guest code compiled to JVM bytecode by the RegionCompiler.
+ * 
+ * @sammc
+ */
+public interface CompiledRegion {
+
+	/**
+	 * Run the region from its first instruction until it leaves, either through a
+	 * jump or branch out of the region, or by reaching an instruction it can't run
+	 * itself. The register file is up to date when this returns.
+	 * 
+	 * @param R registers
+	 * @param M memory
+	 * @return address of the next instruction for the caller to run in the low 32
+	 *         bits, number of instructions the region executed in the high 32
+	 */
+	public long run(int[] R, Memory M);
+
+}
@@ -0,0 +1,573 @@
+package hardware.jit;
+
+import static hardware.jit.ClassWriter.*;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntFunction;
+
+import hardware.MipsIsa;
+import hardware.datatypes.I_Instruction;
+import hardware.datatypes.Instruction;
+import hardware.datatypes.J_Instruction;
+import hardware.datatypes.R_Instruction;
+
+/**
+ * Compiles hot regions of guest code into JVM bytecode, so HotSpot can compile
+ * guest loops down to native code like any other java loop.
+ *
+ * A region starts at a hot address and follows the straight line of code from
+ * there, through conditional branches (taken branches leave the region), until
+ * a jump, an instruction it can't compile, or MAX_REGION_LENGTH instructions.
+ * Any transfer back to the start of the region becomes a real loop in the
+ * generated method. Every register the region touches lives in a local
+ * variable while it runs and is written back when it leaves.
+ *
+ * Instructions are compiled with exactly the semantics CPU gives them through
+ * MipsIsa.execute. Anything that would need the interpreter (unsupported
+ * opcodes, halt, stores into the text segment, and anything that could raise
+ * an exception or reach a device: add, addi and sub overflowing, loads and
+ * stores to addresses from 0x80000000 up) leaves the region just before that
+ * instruction, so the interpreter runs it instead and the exception is
+ * precise.
+ *
+ * Each region is defined as its own hidden class, which is unloaded once the
+ * region is dropped.
+ *
+ * @sammc
+ */
+public final class RegionCompiler {
+
+	public static final int MAX_REGION_LENGTH = 64; // small enough for iinc to count a pass
+
+	// Loops go back to the caller this often, so it can act on invalidations
+	public static final int LOOP_LIMIT = 1 << 16;
+
+	private static final String REGION_CLASS = "hardware/jit/Region";
+	private static final String MEMORY_CLASS = "hardware/memory/Memory";
+
+	// Locals of the generated run method
+	private static final int LOCAL_ITERATIONS = 3;
+	private static final int LOCAL_NEXT_PC = 4;
+	private static final int LOCAL_TEMP = 5;
+	private static final int LOCAL_COUNT = 6; // instructions executed
+	private static final int FIRST_REGISTER_LOCAL = 7;
+
+	private final int textStart;
+	private final int textLength;
+
+	/**
+	 * @param textStart  address of the first instruction of the loaded program
+	 * @param textLength number of instructions in the loaded program
+	 */
+	public RegionCompiler(int textStart, int textLength) {
+		this.textStart = textStart;
+		this.textLength = textLength;
+	}
+
+	/**
+	 * Compile the region starting at the provided address
+	 *
+	 * @param start address of the first instruction
+	 * @param fetch returns the decoded instruction at an address
+	 * @return the compiled region, or null if the first instruction can't be
+	 *         compiled
+	 */
+	public CompiledRegion compile(int start, IntFunction<Instruction> fetch) {
+		List<Instruction> region = new ArrayList<Instruction>();
+		int end = textStart + textLength;
+		for (int address = start; address < end && region.size() < MAX_REGION_LENGTH; address++) {
+			Instruction ins = fetch.apply(address);
+			if (!isSupported(ins)) {
+				break;
+			}
+			region.add(ins);
+			if (ins.isJType() || isJr(ins)) {
+				break;
+			}
+		}
+		if (region.isEmpty()) {
+			return null;
+		}
+
+		byte[] classFile = new Emitter(start, region).emit();
+		try {
+			MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(classFile, true);
+			return (CompiledRegion) lookup.findConstructor(lookup.lookupClass(), MethodType.methodType(void.class))
+					.invoke();
+		} catch (Throwable e) {
+			throw new IllegalStateException("Failed to define compiled region at 0x" + Integer.toHexString(start), e);
+		}
+	}
+
+	/**
+	 * Returns true if the instruction can be compiled into a region
+	 *
+	 * @param ins
+	 * @return
+	 */
+	public static boolean isSupported(Instruction ins) {
+		if (ins.isRType()) {
+			switch (((R_Instruction) ins).func) {
+			case 0x20: // add
+			case 0x21: // addu
+			case 0x24: // and
+			case 0x08: // jr
+			case 0x27: // nor
+			case 0x25: // or
+			case 0x2a: // slt
+			case 0x2b: // sltu
+			case 0x00: // sll
+			case 0x02: // srl
+			case 0x22: // sub
+			case 0x23: // subu
+				return true;
+			}
+			return false;
+		} else if (ins.isJType()) {
+			return true;
+		} else if (ins.isIType()) {
+			switch (ins.opcode) {
+			case 0x8: // addi
+			case 0x9: // addiu
+			case 0xc: // andi
+			case 0x4: // beq
+			case 0x5: // bne
+			case 0xf: // lui
+			case 0x23: // lw
+			case 0xd: // ori
+			case 0xa: // slti
+			case 0xb: // sltiu
+			case 0x2b: // sw
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean isJr(Instruction ins) {
+		return ins.isRType() && ((R_Instruction) ins).func == 0x8;
+	}
+
+	/**
+	 * Generates the class for one region
+	 */
+	private final class Emitter {
+		private final int start;
+		private final List<Instruction> region;
+		private final int[] registerLocal = new int[MipsIsa.NUMBER_OF_REGISTERS]; // 0 when unused
+		private final List<Integer> usedRegisters = new ArrayList<Integer>();
+
+		private final ClassWriter cw = new ClassWriter(REGION_CLASS, "java/lang/Object",
+				"hardware/jit/CompiledRegion");
+		private final ClassWriter.Code code = cw.code();
+		private final ClassWriter.Label head = code.label();
+		private final ClassWriter.Label exit = code.label();
+		private final List<Runnable> stubs = new ArrayList<Runnable>(); // emitted after the body
+
+		Emitter(int start, List<Instruction> region) {
+			this.start = start;
+			this.region = region;
+		}
+
+		byte[] emit() {
+			for (Instruction ins : region) {
+				if (ins.isRType()) {
+					R_Instruction r = (R_Instruction) ins;
+					use(r.rs);
+					use(r.rt);
+					use(r.rd);
+				} else if (ins.isIType()) {
+					I_Instruction i = (I_Instruction) ins;
+					use(i.rs);
+					use(i.rt);
+				} else if (ins.opcode == 3) {
+					use(MipsIsa.$ra);
+				}
+			}
+
+			emitConstructor();
+
+			// Every label shares one frame: this, R, M, then ints for everything else
+			int locals = FIRST_REGISTER_LOCAL + usedRegisters.size();
+			byte[] frame = new byte[3 + 3 + 3 + (locals - 3)];
+			int f = 0;
+			f = putObject(frame, f, cw.classRef(REGION_CLASS));
+			f = putObject(frame, f, cw.classRef("[I"));
+			f = putObject(frame, f, cw.classRef(MEMORY_CLASS));
+			while (f < frame.length) {
+				frame[f++] = ITEM_INTEGER;
+			}
+			code.setFrame(locals, frame);
+
+			// Load registers into locals
+			code.op(ICONST_0);
+			code.op(ISTORE, LOCAL_ITERATIONS);
+			code.op(ICONST_0);
+			code.op(ISTORE, LOCAL_NEXT_PC);
+			code.op(ICONST_0);
+			code.op(ISTORE, LOCAL_TEMP);
+			code.op(ICONST_0);
+			code.op(ISTORE, LOCAL_COUNT);
+			for (int reg : usedRegisters) {
+				code.op(ALOAD_1);
+				code.push(reg);
+				code.op(IALOAD);
+				code.op(ISTORE, registerLocal[reg]);
+			}
+
+			code.place(head);
+			for (int k = 0; k < region.size(); k++) {
+				emitInstruction(start + k, region.get(k));
+			}
+			Instruction last = region.get(region.size() - 1);
+			if (!last.isJType() && !isJr(last)) {
+				// ran off the end of the region
+				transfer(start + region.size(), region.size());
+			}
+			for (Runnable stub : stubs) {
+				stub.run();
+			}
+
+			// Write registers back and return the next PC
+			code.place(exit);
+			for (int reg : usedRegisters) {
+				code.op(ALOAD_1);
+				code.push(reg);
+				code.op(ILOAD, registerLocal[reg]);
+				code.op(IASTORE);
+			}
+			// (count << 32) | next PC
+			code.op(ILOAD, LOCAL_COUNT);
+			code.op(I2L);
+			code.push(32);
+			code.op(LSHL);
+			code.op(ILOAD, LOCAL_NEXT_PC);
+			code.op(I2L);
+			code.push(32);
+			code.op(LSHL);
+			code.push(32);
+			code.op(LUSHR);
+			code.op(LOR);
+			code.op(LRETURN);
+
+			cw.method(ACC_PUBLIC, "run", "([IL" + MEMORY_CLASS + ";)J", code, 6, locals);
+			return cw.toByteArray();
+		}
+
+		private void emitConstructor() {
+			ClassWriter.Code init = cw.code();
+			init.op(ALOAD_0);
+			init.invoke(INVOKESPECIAL, "java/lang/Object", "<init>", "()V", 0);
+			init.op(RETURN);
+			cw.method(ACC_PUBLIC, "<init>", "()V", init, 1, 1);
+		}
+
+		private int putObject(byte[] frame, int f, int classIndex) {
+			frame[f++] = ITEM_OBJECT;
+			frame[f++] = (byte) (classIndex >> 8);
+			frame[f++] = (byte) classIndex;
+			return f;
+		}
+
+		private void use(int reg) {
+			if (registerLocal[reg] == 0) {
+				registerLocal[reg] = FIRST_REGISTER_LOCAL + usedRegisters.size();
+				usedRegisters.add(reg);
+			}
+		}
+
+		private void load(int reg) {
+			code.op(ILOAD, registerLocal[reg]);
+		}
+
+		private void store(int reg) {
+			code.op(ISTORE, registerLocal[reg]);
+		}
+
+		/**
+		 * Leave the region for nextPC, or loop if that is the start of the region
+		 *
+		 * @param nextPC
+		 * @param executed instructions run since the start of the region
+		 */
+		private void transfer(int nextPC, int executed) {
+			code.iinc(LOCAL_COUNT, executed);
+			if (nextPC == start) {
+				code.iinc(LOCAL_ITERATIONS, 1);
+				code.op(ILOAD, LOCAL_ITERATIONS);
+				code.push(LOOP_LIMIT);
+				code.jump(IF_ICMPLT, head);
+			}
+			code.push(nextPC);
+			code.op(ISTORE, LOCAL_NEXT_PC);
+			code.jump(GOTO, exit);
+		}
+
+		/**
+		 * Returns a label that leaves the region before the instruction at pc, so the
+		 * interpreter runs it
+		 *
+		 * @param pc
+		 * @return
+		 */
+		private ClassWriter.Label bailout(int pc) {
+			ClassWriter.Label l = code.label();
+			stubs.add(() -> {
+				code.place(l);
+				code.iinc(LOCAL_COUNT, pc - start);
+				code.push(pc);
+				code.op(ISTORE, LOCAL_NEXT_PC);
+				code.jump(GOTO, exit);
+			});
+			return l;
+		}
+
+		// Mirrors CPU's instruction definitions, with the operands DispatchTable
+		// passes them
+		private void emitInstruction(int pc, Instruction ins) {
+			if (ins.isRType()) {
+				emitRType(pc, (R_Instruction) ins);
+			} else if (ins.isIType()) {
+				emitIType(pc, (I_Instruction) ins);
+			} else {
+				emitJType(pc, (J_Instruction) ins);
+			}
+		}
+
+		private void emitRType(int pc, R_Instruction ins) {
+			int rd = ins.rd, rs = ins.rs, rt = ins.rt;
+			switch (ins.func) {
+			case 0x20: // add, leaves to the interpreter when it overflows
+				load(rs);
+				load(rt);
+				code.op(IADD);
+				code.op(ISTORE, LOCAL_TEMP);
+				// ((Rs ^ sum) & (Rt ^ sum)) < 0
+				load(rs);
+				code.op(ILOAD, LOCAL_TEMP);
+				code.op(IXOR);
+				load(rt);
+				code.op(ILOAD, LOCAL_TEMP);
+				code.op(IXOR);
+				code.op(IAND);
+				code.jump(IFLT, bailout(pc));
+				code.op(ILOAD, LOCAL_TEMP);
+				store(rd);
+				return;
+			case 0x21:
+				binary(rd, rs, rt, IADD);
+				return;
+			case 0x24:
+				binary(rd, rs, rt, IAND);
+				return;
+			case 0x08: // jr
+				code.iinc(LOCAL_COUNT, pc - start + 1);
+				load(rs);
+				code.op(ISTORE, LOCAL_NEXT_PC);
+				code.jump(GOTO, exit);
+				return;
+			case 0x27:
+				binary(rd, rs, rt, IOR);
+				load(rd);
+				code.push(-1);
+				code.op(IXOR);
+				store(rd);
+				return;
+			case 0x25:
+				binary(rd, rs, rt, IOR);
+				return;
+			case 0x2a:
+				load(rs);
+				load(rt);
+				lessThan(rd);
+				return;
+			case 0x2b: // unsigned, flip the sign bits and compare signed
+				load(rs);
+				code.push(Integer.MIN_VALUE);
+				code.op(IXOR);
+				load(rt);
+				code.push(Integer.MIN_VALUE);
+				code.op(IXOR);
+				lessThan(rd);
+				return;
+			case 0x00:
+				load(rs);
+				code.push(ins.shamt);
+				code.op(ISHL);
+				store(rd);
+				return;
+			case 0x02:
+				load(rs);
+				code.push(ins.shamt);
+				code.op(IUSHR);
+				store(rd);
+				return;
+			case 0x22: // sub, leaves to the interpreter when it overflows
+				load(rs);
+				load(rt);
+				code.op(ISUB);
+				code.op(ISTORE, LOCAL_TEMP);
+				// ((Rs ^ Rt) & (Rs ^ difference)) < 0
+				load(rs);
+				load(rt);
+				code.op(IXOR);
+				load(rs);
+				code.op(ILOAD, LOCAL_TEMP);
+				code.op(IXOR);
+				code.op(IAND);
+				code.jump(IFLT, bailout(pc));
+				code.op(ILOAD, LOCAL_TEMP);
+				store(rd);
+				return;
+			case 0x23:
+				binary(rd, rs, rt, ISUB);
+				return;
+			}
+		}
+
+		private void binary(int rd, int rs, int rt, int opcode) {
+			load(rs);
+			load(rt);
+			code.op(opcode);
+			store(rd);
+		}
+
+		/**
+		 * Stores 1 into rd if the int below the top of the stack is less than the top
+		 * one, 0 otherwise. Done without branching, (a - b) as a long is negative
+		 * exactly when a < b.
+		 */
+		private void lessThan(int rd) {
+			// stack: a, b
+			code.op(ISTORE, LOCAL_TEMP);
+			code.op(I2L);
+			code.op(ILOAD, LOCAL_TEMP);
+			code.op(I2L);
+			code.op(LSUB);
+			code.push(63);
+			code.op(LUSHR);
+			code.op(L2I);
+			store(rd);
+		}
+
+		private void emitIType(int pc, I_Instruction ins) {
+			// Rt is the destination, Rs the source
+			int rs = ins.rs, rt = ins.rt, immediate = ins.immediate;
+			switch (ins.opcode) {
+			case 0x8: // addi, leaves to the interpreter when it overflows
+				load(rs);
+				code.push(immediate);
+				code.op(IADD);
+				code.op(ISTORE, LOCAL_TEMP);
+				// ((Rs ^ sum) & (immediate ^ sum)) < 0
+				load(rs);
+				code.op(ILOAD, LOCAL_TEMP);
+				code.op(IXOR);
+				code.push(immediate);
+				code.op(ILOAD, LOCAL_TEMP);
+				code.op(IXOR);
+				code.op(IAND);
+				code.jump(IFLT, bailout(pc));
+				code.op(ILOAD, LOCAL_TEMP);
+				store(rt);
+				return;
+			case 0x9:
+				immediate(rt, rs, immediate, IADD);
+				return;
+			case 0xc:
+				immediate(rt, rs, immediate, IAND);
+				return;
+			case 0xd:
+				immediate(rt, rs, immediate, IOR);
+				return;
+			case 0x4:
+			case 0x5: {
+				ClassWriter.Label notTaken = code.label();
+				load(rs);
+				load(rt);
+				code.jump(ins.opcode == 0x4 ? IF_ICMPNE : IF_ICMPEQ, notTaken);
+				transfer(pc + immediate + 1, pc - start + 1);
+				code.place(notTaken);
+				return;
+			}
+			case 0xf:
+				code.push(immediate << 16);
+				store(rt);
+				return;
+			case 0x23: // lw, device loads and address errors go through the interpreter
+				load(rs);
+				code.push(immediate);
+				code.op(IADD);
+				code.op(ISTORE, LOCAL_TEMP);
+				userCheck(pc);
+				code.op(ALOAD_2);
+				code.op(ILOAD, LOCAL_TEMP);
+				code.invoke(INVOKEINTERFACE, MEMORY_CLASS, "read", "(I)I", 1);
+				store(rt);
+				return;
+			case 0x2b: { // sw, stores into the program, devices or address errors go through the interpreter
+				load(rs);
+				code.push(immediate);
+				code.op(IADD);
+				code.op(ISTORE, LOCAL_TEMP);
+				userCheck(pc);
+				code.op(ILOAD, LOCAL_TEMP);
+				code.push(textStart);
+				code.op(ISUB);
+				code.push(Integer.MIN_VALUE);
+				code.op(IXOR);
+				code.push(textLength ^ Integer.MIN_VALUE);
+				code.jump(IF_ICMPLT, bailout(pc));
+				code.op(ALOAD_2);
+				code.op(ILOAD, LOCAL_TEMP);
+				load(rt);
+				code.invoke(INVOKEINTERFACE, MEMORY_CLASS, "write", "(II)V", 2);
+				return;
+			}
+			case 0xa:
+				load(rs);
+				code.push(immediate);
+				lessThan(rt);
+				return;
+			case 0xb:
+				load(rs);
+				code.push(Integer.MIN_VALUE);
+				code.op(IXOR);
+				code.push(immediate ^ Integer.MIN_VALUE);
+				lessThan(rt);
+				return;
+			}
+		}
+
+		/**
+		 * Leave the region if the address in LOCAL_TEMP is 0x80000000 or above,
+		 * which takes in the device window, see DeviceBus.WINDOW_START, along with
+		 * every address raising an address error
+		 */
+		private void userCheck(int pc) {
+			code.op(ILOAD, LOCAL_TEMP);
+			code.jump(IFLT, bailout(pc));
+		}
+
+		private void immediate(int rd, int rs, int immediate, int opcode) {
+			load(rs);
+			code.push(immediate);
+			code.op(opcode);
+			store(rd);
+		}
+
+		private void emitJType(int pc, J_Instruction ins) {
+			int target = (pc & 0xFF000000) + ins.address;
+			if (ins.opcode == 3) { // jal
+				code.push(pc + 1);
+				store(MipsIsa.$ra);
+			}
+			transfer(target, pc - start + 1);
+		}
+
+	}
+
+}
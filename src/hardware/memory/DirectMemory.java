@@ -0,0 +1,288 @@
+package hardware.memory;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Sparse, word addressed random access memory kept off the java heap.
+ *
+ * Works like PagedMemory, but pages live in direct byte buffers, so large guest
+ * images don't add to the heap or to garbage collection work. Direct buffers
+ * are expensive to create one at a time, so they are allocated in slabs of
+ * SLAB_PAGES pages and handed out a page at a time.
+ *
+ * A memory can also be mapped straight from a file with map, in which case
+ * the operating system only reads each page in when it is first touched. Whole
+ * pages passed to load from a mapped file are shared the same way.
+ *
+ * @sammc
+ */
+public final class DirectMemory implements Memory {
+
+	public static final int SLAB_PAGES = 64;
+	public static final int PAGE_BYTES = PAGE_SIZE * Integer.BYTES;
+
+	private static final int MAP_PAGES = 1 << 18; // pages per mapping, mappings are limited to 2GB
+	private static final byte[] ZERO_PAGE = new byte[PAGE_BYTES];
+
+	private static final VarHandle WORD = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+
+	private final PageTable<ByteBuffer> pages;
+	private ByteBuffer slab; // slab pages are currently taken from, only touched by the page table allocator
+	private int slabPagesUsed;
+
+	// Fast paths, last page read and last page written. Writes go back to the
+	// page table for every new page, so it can track which pages clear must zero.
+	// Both are dropped whenever the table's generation moves on, whichever view
+	// moved it.
+	private int lastPageNumber = -1;
+	private ByteBuffer lastPage;
+	private int lastWrittenPageNumber = -1;
+	private ByteBuffer lastWrittenPage;
+	private int generation; // of the page table when the fast paths were filled
+	private MemoryWatch watch; // null when nothing is watched
+
+	public DirectMemory() {
+		pages = new PageTable<ByteBuffer>(this::newPage, (from, to) -> to.put(0, from, 0, PAGE_BYTES));
+	}
+
+	private DirectMemory(DirectMemory parent) {
+		pages = parent.pages.share(this::newPage); // pages copied for the fork come from its own slabs
+	}
+
+	private DirectMemory(PageTable<ByteBuffer> pages) {
+		this.pages = pages;
+	}
+
+	/**
+	 * Returns a memory whose pages are mapped read only from a file. Pages are
+	 * shared with the file rather than copied, and copied the first time they are
+	 * written, so the file is never changed and mapping costs next to nothing
+	 * however large it is.
+	 *
+	 * @param file        open for reading
+	 * @param position    where the first page starts in the file, page aligned for
+	 *                    the best mapping
+	 * @param pageNumbers the number of each page, in the order they are stored,
+	 *                    each PAGE_BYTES of words in native byte order
+	 * @return
+	 * @throws IOException
+	 */
+	public static DirectMemory map(FileChannel file, long position, int[] pageNumbers) throws IOException {
+		DirectMemory memory = new DirectMemory();
+		for (int first = 0; first < pageNumbers.length; first += MAP_PAGES) {
+			int count = Math.min(MAP_PAGES, pageNumbers.length - first);
+			ByteBuffer mapped = file.map(FileChannel.MapMode.READ_ONLY, position + (long) first * PAGE_BYTES,
+					(long) count * PAGE_BYTES);
+			for (int i = 0; i < count; i++) {
+				ByteBuffer page = mapped.slice(i * PAGE_BYTES, PAGE_BYTES).order(ByteOrder.nativeOrder());
+				memory.pages.adopt(pageNumbers[first + i], page);
+			}
+		}
+		return memory;
+	}
+
+	@Override
+	public int read(int address) {
+		int pageNumber = address >>> PAGE_BITS;
+		if (pageNumber == lastPageNumber && generation == pages.generation) {
+			return lastPage.getInt((address & PAGE_MASK) << 2);
+		}
+		if (generation != pages.generation) {
+			forget();
+		}
+		ByteBuffer page = pages.find(pageNumber);
+		if (watch != null && watch.isWatched(pageNumber)) {
+			watch.loaded(address);
+			return page == null ? 0 : page.getInt((address & PAGE_MASK) << 2); // never cached
+		}
+		if (page == null) {
+			return 0;
+		}
+		lastPageNumber = pageNumber;
+		lastPage = page;
+		return page.getInt((address & PAGE_MASK) << 2);
+	}
+
+	@Override
+	public void write(int address, int value) {
+		int pageNumber = address >>> PAGE_BITS;
+		if (pageNumber != lastWrittenPageNumber || generation != pages.generation) {
+			if (generation != pages.generation) {
+				forget();
+			}
+			if (watch != null && watch.isWatched(pageNumber)) {
+				ByteBuffer page = writablePage(pageNumber); // never cached
+				page.putInt((address & PAGE_MASK) << 2, value);
+				watch.stored(address);
+				return;
+			}
+			lastWrittenPage = writablePage(pageNumber);
+			lastWrittenPageNumber = pageNumber;
+		}
+		lastWrittenPage.putInt((address & PAGE_MASK) << 2, value);
+	}
+
+	@Override
+	public void write(int address, int[] data) {
+		int i = 0;
+		while (i < data.length) {
+			int current = address + i;
+			ByteBuffer page = writablePage(current >>> PAGE_BITS);
+			int offset = current & PAGE_MASK;
+			int length = Math.min(PAGE_SIZE - offset, data.length - i);
+			page.asIntBuffer().put(offset, data, i, length);
+			i += length;
+		}
+	}
+
+	@Override
+	public void read(int address, int[] data) {
+		int i = 0;
+		while (i < data.length) {
+			int current = address + i;
+			ByteBuffer page = pages.find(current >>> PAGE_BITS);
+			int offset = current & PAGE_MASK;
+			int length = Math.min(PAGE_SIZE - offset, data.length - i);
+			if (page == null) {
+				Arrays.fill(data, i, i + length, 0);
+			} else {
+				page.asIntBuffer().get(offset, data, i, length);
+			}
+			i += length;
+		}
+	}
+
+	@Override
+	public void load(int address, ByteBuffer words) {
+		IntBuffer data = words.asIntBuffer(); // in the buffer's byte order
+		boolean shareable = words.isDirect() && words.order() == ByteOrder.nativeOrder()
+				&& words.alignmentOffset(words.position(), Integer.BYTES) == 0;
+		int i = 0;
+		while (i < data.limit()) {
+			int current = address + i;
+			int pageNumber = current >>> PAGE_BITS;
+			int offset = current & PAGE_MASK;
+			int length = Math.min(PAGE_SIZE - offset, data.limit() - i);
+			if (shareable && length == PAGE_SIZE && pages.find(pageNumber) == null) {
+				pages.adopt(pageNumber, words.slice(words.position() + i * Integer.BYTES, PAGE_BYTES)
+						.order(ByteOrder.nativeOrder()));
+			} else {
+				writablePage(pageNumber).asIntBuffer().put(offset, data, i, length);
+			}
+			i += length;
+		}
+	}
+
+	@Override
+	public int readVolatile(int address) {
+		if (watch != null && watch.isWatched(address >>> PAGE_BITS)) {
+			watch.loaded(address);
+		}
+		ByteBuffer page = pages.find(address >>> PAGE_BITS);
+		if (page == null) {
+			return 0;
+		}
+		return (int) WORD.getVolatile(page, (address & PAGE_MASK) << 2);
+	}
+
+	@Override
+	public boolean compareAndSet(int address, int expected, int value) {
+		ByteBuffer page = writablePage(address >>> PAGE_BITS);
+		boolean stored = WORD.compareAndSet(page, (address & PAGE_MASK) << 2, expected, value);
+		if (stored && watch != null && watch.isWatched(address >>> PAGE_BITS)) {
+			watch.stored(address);
+		}
+		return stored;
+	}
+
+	@Override
+	public Memory view() {
+		return new DirectMemory(pages);
+	}
+
+	@Override
+	public Memory fork() {
+		// moves the generation on, so every view copies before writing
+		return new DirectMemory(this);
+	}
+
+	@Override
+	public void clear() {
+		// moves the generation on, so every view marks pages dirty again
+		pages.clear(page -> page.put(0, ZERO_PAGE));
+	}
+
+	@Override
+	public void setWatch(MemoryWatch watch) {
+		this.watch = watch;
+		lastPageNumber = -1; // newly watched pages must not stay cached
+		lastPage = null;
+		lastWrittenPageNumber = -1;
+		lastWrittenPage = null;
+	}
+
+	@Override
+	public int getPagesAllocated() {
+		return pages.size();
+	}
+
+	@Override
+	public int getPagesShared() {
+		return pages.shared();
+	}
+
+	@Override
+	public int[] getAllocatedPages() {
+		return pages.pageNumbers();
+	}
+
+	/**
+	 * Drop the fast paths, after the page table changed under them
+	 */
+	private void forget() {
+		generation = pages.generation;
+		lastPageNumber = -1;
+		lastPage = null;
+		lastWrittenPageNumber = -1;
+		lastWrittenPage = null;
+	}
+
+	/**
+	 * Returns the page for writing. Writing to a shared page replaces it with a
+	 * copy, so the read cache is pointed at whatever the table hands back.
+	 *
+	 * @param pageNumber
+	 * @return
+	 */
+	private ByteBuffer writablePage(int pageNumber) {
+		ByteBuffer page = pages.allocate(pageNumber);
+		if (pageNumber == lastPageNumber) {
+			lastPage = page;
+		}
+		return page;
+	}
+
+	/**
+	 * Carve the next page out of the current slab, allocating a new slab when it
+	 * runs out. Direct buffers are zeroed when allocated.
+	 *
+	 * @return
+	 */
+	private ByteBuffer newPage() {
+		if (slab == null || slabPagesUsed == SLAB_PAGES) {
+			slab = ByteBuffer.allocateDirect(SLAB_PAGES * PAGE_BYTES);
+			slabPagesUsed = 0;
+		}
+		ByteBuffer page = slab.slice(slabPagesUsed * PAGE_BYTES, PAGE_BYTES).order(ByteOrder.nativeOrder());
+		slabPagesUsed++;
+		return page;
+	}
+
+}
@@ -0,0 +1,147 @@
+package hardware.memory;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Interface for the simulated random access memory. Memory is word addressed,
+ * covers the whole 32 bit address space, and reads zero anywhere that was never
+ * written.
+ *
+ * Implementations are final and a CPU only ever talks to one of them, so calls
+ * through this interface stay monomorphic and are inlined by the JIT.
+ *
+ * @sammc
+ */
+public interface Memory {
+
+	public final int PAGE_BITS = 10;
+	public final int PAGE_SIZE = 1 << PAGE_BITS; // words per page
+	public final int PAGE_MASK = PAGE_SIZE - 1;
+
+	/**
+	 * Read the word at the provided address
+	 *
+	 * @param address
+	 * @return the stored word, or zero if it was never written
+	 */
+	public int read(int address);
+
+	/**
+	 * Write a word to the provided address
+	 *
+	 * @param address
+	 * @param value
+	 */
+	public void write(int address, int value);
+
+	/**
+	 * Copy a block of words into memory starting at the provided address
+	 *
+	 * @param address
+	 * @param data
+	 */
+	public void write(int address, int[] data);
+
+	/**
+	 * Copy a block of words out of memory starting at the provided address
+	 *
+	 * @param address
+	 * @param data    filled with the words read
+	 */
+	public void read(int address, int[] data);
+
+	/**
+	 * Load the words remaining in a buffer into memory starting at the provided
+	 * address, each read in the buffer's byte order, eg. a segment of a mapped
+	 * executable. Where the buffer covers a whole page that isn't allocated yet,
+	 * and its words are already in the memory's own layout, the page may be
+	 * shared with the buffer rather than copied, and copied the first time it is
+	 * written, so the buffer must not change afterwards.
+	 *
+	 * @param address
+	 * @param words   its position is left unchanged
+	 */
+	public void load(int address, ByteBuffer words);
+
+	/**
+	 * Read the word at the provided address, seeing every write that happened
+	 * before it on any thread sharing this memory
+	 *
+	 * @param address
+	 * @return the stored word, or zero if it was never written
+	 */
+	public int readVolatile(int address);
+
+	/**
+	 * Atomically replace the word at the provided address if it still holds the
+	 * expected value
+	 *
+	 * @param address
+	 * @param expected
+	 * @param value
+	 * @return true if the word was replaced
+	 */
+	public boolean compareAndSet(int address, int expected, int value);
+
+	/**
+	 * Returns a new memory backed by the same pages as this one, for use by
+	 * another thread. Each view keeps its own last page cache, so views must not
+	 * be shared between threads themselves.
+	 *
+	 * @return
+	 */
+	public Memory view();
+
+	/**
+	 * Returns a new memory holding the same contents as this one. The two share
+	 * pages until either of them writes to a page, which copies it first, so
+	 * forking costs the size of the page table rather than of the contents.
+	 * Nothing else may write to this memory while it is being forked.
+	 *
+	 * @return
+	 */
+	public Memory fork();
+
+	/**
+	 * Zero memory, so the whole address space reads zero again, in this view and
+	 * every other view of it. Only pages written since the last clear are
+	 * touched, and they stay allocated. Nothing else may use this memory while it
+	 * is being cleared.
+	 */
+	public void clear();
+
+	/**
+	 * Report single word reads and writes on watched pages to watch, or stop
+	 * reporting if watch is null. Call again whenever the set of watched pages
+	 * changes, so pages already cached are dropped. Only this view is watched,
+	 * and block reads and writes are never reported.
+	 *
+	 * @param watch
+	 */
+	public void setWatch(MemoryWatch watch);
+
+	/**
+	 * Returns the number of pages that have been allocated so far
+	 *
+	 * @return
+	 */
+	public int getPagesAllocated();
+
+	/**
+	 * Returns the number of allocated pages still shared with a fork or a mapped
+	 * buffer, see fork and load, which are copied the first time they are
+	 * written
+	 *
+	 * @return
+	 */
+	public int getPagesShared();
+
+	/**
+	 * Returns the page numbers of every allocated page, in ascending order. A
+	 * page's first address is its number shifted left by PAGE_BITS.
+	 *
+	 * @return
+	 */
+	public int[] getAllocatedPages();
+
+}
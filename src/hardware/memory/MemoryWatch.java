@@ -0,0 +1,37 @@
+package hardware.memory;
+
+/**
+ * Told about reads and writes to watched pages, see Memory.setWatch.
+ *
+ * Watched pages are never held in a memory's last page caches, so accesses to
+ * them always take the slow path, which is where the watch is asked. Accesses
+ * to every other page cost exactly what they do without a watch.
+ *
+ * @sammc
+ */
+public interface MemoryWatch {
+
+	/**
+	 * Returns true if accesses to the page should be reported. Asked whenever an
+	 * access misses the last page caches, so it should be quick.
+	 *
+	 * @param pageNumber
+	 * @return
+	 */
+	public boolean isWatched(int pageNumber);
+
+	/**
+	 * A word on a watched page was read
+	 *
+	 * @param address
+	 */
+	public void loaded(int address);
+
+	/**
+	 * A word on a watched page was written, the new value is already in memory
+	 *
+	 * @param address
+	 */
+	public void stored(int address);
+
+}
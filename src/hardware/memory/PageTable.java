@@ -0,0 +1,251 @@
+package hardware.memory;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Two level table mapping page numbers to pages, shared by the memory
+ * implementations. Pages are created through the provided allocator the first
+ * time they are asked for.
+ *
+ * A table can be shared by memories running on different threads. Lookups
+ * don't lock, allocation does, and a page is only published once it is fully
+ * created, so every thread sees the same page for a given page number.
+ *
+ * The table also remembers which pages were handed out for writing since it
+ * was last cleared, so clearing only has to touch those, and which pages are
+ * shared with other tables through share. A shared page is copied the first
+ * time it is asked for writing, so tables never see each other's writes.
+ *
+ * Memories keep the last pages they used outside the table. Whenever a page
+ * they could be holding changes meaning, because it became shared, was
+ * replaced by a copy or was dropped, the generation moves on, and every memory
+ * on the table drops what it holds, not just the one that made the change.
+ *
+ * @sammc
+ */
+final class PageTable<P> {
+
+	// page number = directory index (11 bits) + page index (11 bits)
+	private static final int DIRECTORY_BITS = 11;
+	private static final int DIRECTORY_SIZE = 1 << DIRECTORY_BITS;
+	private static final int DIRECTORY_MASK = DIRECTORY_SIZE - 1;
+
+	// Page flags
+	private static final byte DIRTY = 1; // written since the last clear
+	private static final byte SHARED = 2; // also in another table, copy before writing
+
+	private static final VarHandle SLOT = MethodHandles.arrayElementVarHandle(Object[].class);
+
+	private final Object[][] table; // [directory][page]
+	private final byte[][] flags; // [directory][page]
+	private final Supplier<P> allocator;
+	private final BiConsumer<P, P> copier; // (from, to)
+	volatile int generation; // written under this
+	private int pagesAllocated; // guarded by this
+	private int pagesShared; // guarded by this
+
+	// Page numbers of the dirty pages, guarded by this
+	private int[] dirtyPages = new int[16];
+	private int dirtyCount;
+
+	/**
+	 * @param allocator creates a zeroed page
+	 * @param copier    copies the contents of one page into another
+	 */
+	PageTable(Supplier<P> allocator, BiConsumer<P, P> copier) {
+		this.table = new Object[1 << (32 - Memory.PAGE_BITS - DIRECTORY_BITS)][];
+		this.flags = new byte[table.length][];
+		this.allocator = allocator;
+		this.copier = copier;
+	}
+
+	/**
+	 * Returns the page with the provided number, or null if it was never allocated
+	 *
+	 * @param pageNumber
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	P find(int pageNumber) {
+		Object[] directory = (Object[]) SLOT.getAcquire(table, pageNumber >>> DIRECTORY_BITS);
+		if (directory == null) {
+			return null;
+		}
+		return (P) SLOT.getAcquire(directory, pageNumber & DIRECTORY_MASK);
+	}
+
+	/**
+	 * Returns the page with the provided number for writing, allocating it, or
+	 * copying it if it is shared, if necessary. The page is marked dirty.
+	 *
+	 * @param pageNumber
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	P allocate(int pageNumber) {
+		int d = pageNumber >>> DIRECTORY_BITS, i = pageNumber & DIRECTORY_MASK;
+		byte[] marks = flags[d];
+		if (marks != null && marks[i] == DIRTY) { // a stale read only sends us through the lock
+			P found = find(pageNumber);
+			if (found != null) {
+				return found;
+			}
+		}
+		synchronized (this) {
+			Object[] directory = table[d];
+			if (directory == null) {
+				directory = new Object[DIRECTORY_SIZE];
+				flags[d] = new byte[DIRECTORY_SIZE];
+				SLOT.setRelease(table, d, directory);
+			}
+			Object page = directory[i];
+			if (page == null) {
+				page = allocator.get();
+				SLOT.setRelease(directory, i, page);
+				pagesAllocated++;
+			} else if ((flags[d][i] & SHARED) != 0) {
+				P copy = allocator.get();
+				copier.accept((P) page, copy);
+				page = copy;
+				SLOT.setRelease(directory, i, page);
+				flags[d][i] &= ~SHARED;
+				pagesShared--;
+				generation++; // other memories may still hold the shared page
+			}
+			if ((flags[d][i] & DIRTY) == 0) {
+				flags[d][i] |= DIRTY;
+				if (dirtyCount == dirtyPages.length) {
+					dirtyPages = Arrays.copyOf(dirtyPages, dirtyCount * 2);
+				}
+				dirtyPages[dirtyCount++] = pageNumber;
+			}
+			return (P) page;
+		}
+	}
+
+	/**
+	 * Returns a new table holding the same pages as this one. Every page becomes
+	 * shared by both tables, so the cost is the size of the table, not of the
+	 * pages. Nothing may write through this table while it is being shared.
+	 *
+	 * @param allocator creates pages for the new table
+	 * @return
+	 */
+	synchronized PageTable<P> share(Supplier<P> allocator) {
+		PageTable<P> copy = new PageTable<P>(allocator, copier);
+		for (int d = 0; d < table.length; d++) {
+			Object[] directory = table[d];
+			if (directory == null) {
+				continue;
+			}
+			copy.table[d] = directory.clone();
+			copy.flags[d] = new byte[DIRECTORY_SIZE];
+			for (int i = 0; i < DIRECTORY_SIZE; i++) {
+				if (directory[i] == null) {
+					continue;
+				}
+				if ((flags[d][i] & SHARED) == 0) {
+					flags[d][i] |= SHARED;
+					pagesShared++;
+				}
+				copy.flags[d][i] = SHARED;
+			}
+		}
+		copy.pagesAllocated = copy.pagesShared = pagesAllocated;
+		generation++; // pages held for writing are shared now
+		return copy;
+	}
+
+	/**
+	 * Install a page that belongs to someone else, eg. a slice of a mapped file.
+	 * It is marked shared, so it is copied the first time it is asked for
+	 * writing and never written itself.
+	 *
+	 * @param pageNumber a page not allocated yet
+	 * @param page
+	 */
+	synchronized void adopt(int pageNumber, P page) {
+		int d = pageNumber >>> DIRECTORY_BITS, i = pageNumber & DIRECTORY_MASK;
+		if (table[d] == null) {
+			flags[d] = new byte[DIRECTORY_SIZE];
+			SLOT.setRelease(table, d, new Object[DIRECTORY_SIZE]);
+		}
+		if (table[d][i] != null) {
+			throw new IllegalArgumentException("Page " + pageNumber + " is already allocated");
+		}
+		SLOT.setRelease(table[d], i, page);
+		flags[d][i] = SHARED;
+		pagesAllocated++;
+		pagesShared++;
+	}
+
+	/**
+	 * Returns the numbers of all allocated pages, in ascending order
+	 *
+	 * @return
+	 */
+	synchronized int[] pageNumbers() {
+		int[] numbers = new int[pagesAllocated];
+		int n = 0;
+		for (int d = 0; d < table.length; d++) {
+			Object[] directory = table[d];
+			if (directory == null) {
+				continue;
+			}
+			for (int i = 0; i < DIRECTORY_SIZE; i++) {
+				if (directory[i] != null) {
+					numbers[n++] = (d << DIRECTORY_BITS) | i;
+				}
+			}
+		}
+		return numbers;
+	}
+
+	/**
+	 * Wipe every page written since the last clear. Pages stay allocated, so
+	 * writing to them again costs nothing extra. Shared pages can't be wiped, so
+	 * they are dropped from this table instead.
+	 *
+	 * @param wipe zeroes one page
+	 */
+	@SuppressWarnings("unchecked")
+	synchronized void clear(Consumer<P> wipe) {
+		for (int k = 0; k < dirtyCount; k++) {
+			int d = dirtyPages[k] >>> DIRECTORY_BITS, i = dirtyPages[k] & DIRECTORY_MASK;
+			if ((flags[d][i] & SHARED) == 0) {
+				wipe.accept((P) table[d][i]);
+			}
+			flags[d][i] &= ~DIRTY;
+		}
+		dirtyCount = 0;
+
+		for (int d = 0; d < table.length && pagesShared > 0; d++) {
+			if (table[d] == null) {
+				continue;
+			}
+			for (int i = 0; i < DIRECTORY_SIZE; i++) {
+				if ((flags[d][i] & SHARED) != 0) {
+					SLOT.setRelease(table[d], i, null);
+					flags[d][i] = 0;
+					pagesAllocated--;
+					pagesShared--;
+				}
+			}
+		}
+		generation++; // pages held for writing have to be marked dirty again
+	}
+
+	synchronized int size() {
+		return pagesAllocated;
+	}
+
+	synchronized int shared() {
+		return pagesShared;
+	}
+
+}
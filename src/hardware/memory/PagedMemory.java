@@ -0,0 +1,229 @@
+package hardware.memory;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Sparse, word addressed random access memory kept on the java heap.
+ *
+ * The 32 bit address space is split into pages of PAGE_SIZE words, found
+ * through a two level table. Pages are only allocated the first time they are
+ * written, so a program touching a few kilobytes of the address space only
+ * costs a few kilobytes of heap. Reading an address that was never written
+ * returns zero.
+ *
+ * The last page read and the last page written are remembered, so runs of
+ * accesses to the same page (instruction fetch, array sweeps, the stack) skip
+ * the table walk entirely. That cache is per view, see Memory.view, while the
+ * pages themselves are shared. Watched pages, see Memory.setWatch, are never
+ * cached.
+ *
+ * @sammc
+ */
+public final class PagedMemory implements Memory {
+
+	private static final VarHandle WORD = MethodHandles.arrayElementVarHandle(int[].class);
+
+	private final PageTable<int[]> pages;
+
+	// Fast paths, last page read and last page written. Writes go back to the
+	// page table for every new page, so it can track which pages clear must zero.
+	// Both are dropped whenever the table's generation moves on, whichever view
+	// moved it.
+	private int lastPageNumber = -1;
+	private int[] lastPage;
+	private int lastWrittenPageNumber = -1;
+	private int[] lastWrittenPage;
+	private int generation; // of the page table when the fast paths were filled
+	private MemoryWatch watch; // null when nothing is watched
+
+	public PagedMemory() {
+		this(new PageTable<int[]>(PagedMemory::newPage, (from, to) -> System.arraycopy(from, 0, to, 0, PAGE_SIZE)));
+	}
+
+	private PagedMemory(PageTable<int[]> pages) {
+		this.pages = pages;
+	}
+
+	@Override
+	public int read(int address) {
+		int pageNumber = address >>> PAGE_BITS;
+		if (pageNumber == lastPageNumber && generation == pages.generation) {
+			return lastPage[address & PAGE_MASK];
+		}
+		if (generation != pages.generation) {
+			forget();
+		}
+		int[] page = pages.find(pageNumber);
+		if (watch != null && watch.isWatched(pageNumber)) {
+			watch.loaded(address);
+			return page == null ? 0 : page[address & PAGE_MASK]; // never cached
+		}
+		if (page == null) {
+			return 0;
+		}
+		lastPageNumber = pageNumber;
+		lastPage = page;
+		return page[address & PAGE_MASK];
+	}
+
+	@Override
+	public void write(int address, int value) {
+		int pageNumber = address >>> PAGE_BITS;
+		if (pageNumber != lastWrittenPageNumber || generation != pages.generation) {
+			if (generation != pages.generation) {
+				forget();
+			}
+			if (watch != null && watch.isWatched(pageNumber)) {
+				int[] page = writablePage(pageNumber); // never cached
+				page[address & PAGE_MASK] = value;
+				watch.stored(address);
+				return;
+			}
+			lastWrittenPage = writablePage(pageNumber);
+			lastWrittenPageNumber = pageNumber;
+		}
+		lastWrittenPage[address & PAGE_MASK] = value;
+	}
+
+	@Override
+	public void write(int address, int[] data) {
+		int i = 0;
+		while (i < data.length) {
+			int current = address + i;
+			int[] page = writablePage(current >>> PAGE_BITS);
+			int offset = current & PAGE_MASK;
+			int length = Math.min(PAGE_SIZE - offset, data.length - i);
+			System.arraycopy(data, i, page, offset, length);
+			i += length;
+		}
+	}
+
+	@Override
+	public void read(int address, int[] data) {
+		int i = 0;
+		while (i < data.length) {
+			int current = address + i;
+			int[] page = pages.find(current >>> PAGE_BITS);
+			int offset = current & PAGE_MASK;
+			int length = Math.min(PAGE_SIZE - offset, data.length - i);
+			if (page == null) {
+				Arrays.fill(data, i, i + length, 0);
+			} else {
+				System.arraycopy(page, offset, data, i, length);
+			}
+			i += length;
+		}
+	}
+
+	@Override
+	public void load(int address, ByteBuffer words) {
+		IntBuffer data = words.asIntBuffer(); // in the buffer's byte order
+		int i = 0;
+		while (i < data.limit()) {
+			int current = address + i;
+			int[] page = writablePage(current >>> PAGE_BITS);
+			int offset = current & PAGE_MASK;
+			int length = Math.min(PAGE_SIZE - offset, data.limit() - i);
+			data.get(i, page, offset, length);
+			i += length;
+		}
+	}
+
+	@Override
+	public int readVolatile(int address) {
+		if (watch != null && watch.isWatched(address >>> PAGE_BITS)) {
+			watch.loaded(address);
+		}
+		int[] page = pages.find(address >>> PAGE_BITS);
+		if (page == null) {
+			return 0;
+		}
+		return (int) WORD.getVolatile(page, address & PAGE_MASK);
+	}
+
+	@Override
+	public boolean compareAndSet(int address, int expected, int value) {
+		int[] page = writablePage(address >>> PAGE_BITS);
+		boolean stored = WORD.compareAndSet(page, address & PAGE_MASK, expected, value);
+		if (stored && watch != null && watch.isWatched(address >>> PAGE_BITS)) {
+			watch.stored(address);
+		}
+		return stored;
+	}
+
+	@Override
+	public Memory view() {
+		return new PagedMemory(pages);
+	}
+
+	@Override
+	public Memory fork() {
+		// moves the generation on, so every view copies before writing
+		return new PagedMemory(pages.share(PagedMemory::newPage));
+	}
+
+	@Override
+	public void clear() {
+		// moves the generation on, so every view marks pages dirty again
+		pages.clear(page -> Arrays.fill(page, 0));
+	}
+
+	@Override
+	public void setWatch(MemoryWatch watch) {
+		this.watch = watch;
+		lastPageNumber = -1; // newly watched pages must not stay cached
+		lastPage = null;
+		lastWrittenPageNumber = -1;
+		lastWrittenPage = null;
+	}
+
+	@Override
+	public int getPagesAllocated() {
+		return pages.size();
+	}
+
+	@Override
+	public int getPagesShared() {
+		return pages.shared();
+	}
+
+	@Override
+	public int[] getAllocatedPages() {
+		return pages.pageNumbers();
+	}
+
+	/**
+	 * Drop the fast paths, after the page table changed under them
+	 */
+	private void forget() {
+		generation = pages.generation;
+		lastPageNumber = -1;
+		lastPage = null;
+		lastWrittenPageNumber = -1;
+		lastWrittenPage = null;
+	}
+
+	/**
+	 * Returns the page for writing. Writing to a shared page replaces it with a
+	 * copy, so the read cache is pointed at whatever the table hands back.
+	 *
+	 * @param pageNumber
+	 * @return
+	 */
+	private int[] writablePage(int pageNumber) {
+		int[] page = pages.allocate(pageNumber);
+		if (pageNumber == lastPageNumber) {
+			lastPage = page;
+		}
+		return page;
+	}
+
+	private static int[] newPage() {
+		return new int[PAGE_SIZE];
+	}
+
+}
@@ -0,0 +1,79 @@
+package hardware.metrics;
+
+import java.util.Arrays;
+
+import hardware.datatypes.Instruction;
+import hardware.datatypes.R_Instruction;
+
+/**
+ * Counters owned by a single CPU.
+ *
+ * They are plain fields, only ever touched by the thread running the CPU, so
+ * counting costs an increment and never contends with other CPUs. The CPU
+ * publishes them into ExecutionMetrics every so often, which adds them to the
+ * shared totals and starts the counters over.
+ *
+ * @sammc
+ */
+public final class ExecutionCounters {
+
+	final long[] opcodes = new long[64];
+	final long[] functs = new long[64];
+	long branchesTaken;
+	long branchesNotTaken;
+	long memoryReads;
+	long memoryWrites;
+
+	/**
+	 * Count one executed instruction in the opcode and funct histograms, and as a
+	 * memory access if it is one
+	 *
+	 * @param ins
+	 */
+	public void retire(Instruction ins) {
+		int opcode = ins.opcode;
+		opcodes[opcode]++;
+		switch (opcode) {
+		case 0x0:
+			functs[((R_Instruction) ins).func]++;
+			break;
+		case 0x23: // lw
+		case 0x30: // ll
+			memoryReads++;
+			break;
+		case 0x2b: // sw
+		case 0x38: // sc
+			memoryWrites++;
+			break;
+		}
+	}
+
+	/**
+	 * Count one conditional branch
+	 *
+	 * @param taken
+	 */
+	public void branch(boolean taken) {
+		if (taken) {
+			branchesTaken++;
+		} else {
+			branchesNotTaken++;
+		}
+	}
+
+	/**
+	 * Add everything counted so far to ExecutionMetrics and start over
+	 *
+	 * @param retired instructions executed since the last publish
+	 */
+	public void publish(long retired) {
+		ExecutionMetrics.get().add(this, retired);
+		Arrays.fill(opcodes, 0);
+		Arrays.fill(functs, 0);
+		branchesTaken = 0;
+		branchesNotTaken = 0;
+		memoryReads = 0;
+		memoryWrites = 0;
+	}
+
+}
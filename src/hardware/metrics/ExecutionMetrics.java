@@ -0,0 +1,209 @@
+package hardware.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import jdk.jfr.FlightRecorder;
+
+import hardware.MipsIsa;
+import hardware.datatypes.Instruction;
+
+/**
+ * Execution totals over every CPU in the process.
+ *
+ * CPUs count into their own ExecutionCounters and publish them here every
+ * PUBLISH_INTERVAL instructions and when they stop. Totals are kept in
+ * LongAdders, which spread concurrent updates over separate cells, so many
+ * CPUs publishing at once don't contend on one counter.
+ *
+ * Once register is called the totals are exposed through JMX under
+ * OBJECT_NAME, and as the periodic JFR event hardware.ExecutionMetrics. Every
+ * run also commits a hardware.ProgramRun event whenever JFR is recording.
+ *
+ * @sammc
+ */
+public final class ExecutionMetrics implements ExecutionMetricsMXBean {
+
+	public static final String OBJECT_NAME = "hardware:type=ExecutionMetrics";
+	public static final long PUBLISH_INTERVAL = 1 << 16; // instructions between publishes of a running CPU
+
+	private static final long RATE_INTERVAL_NANOS = 1_000_000_000L; // shortest window instructions per second covers
+
+	private static final ExecutionMetrics INSTANCE = new ExecutionMetrics();
+	private static volatile boolean registered;
+
+	private final LongAdder retired = new LongAdder();
+	private final LongAdder[] opcodes = newAdders(64);
+	private final LongAdder[] functs = newAdders(64);
+	private final LongAdder branchesTaken = new LongAdder();
+	private final LongAdder branchesNotTaken = new LongAdder();
+	private final LongAdder memoryReads = new LongAdder();
+	private final LongAdder memoryWrites = new LongAdder();
+	private volatile boolean histogramsEnabled;
+
+	// Instructions per second sample, guarded by this
+	private long sampleTime = System.nanoTime();
+	private long sampleRetired;
+	private double rate;
+
+	private ExecutionMetrics() {
+	}
+
+	public static ExecutionMetrics get() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Add a CPU's counters to the totals
+	 *
+	 * @param counters
+	 * @param retired  instructions executed since the CPU last published
+	 */
+	void add(ExecutionCounters counters, long retired) {
+		this.retired.add(retired);
+		for (int i = 0; i < 64; i++) {
+			if (counters.opcodes[i] != 0) {
+				opcodes[i].add(counters.opcodes[i]);
+			}
+			if (counters.functs[i] != 0) {
+				functs[i].add(counters.functs[i]);
+			}
+		}
+		branchesTaken.add(counters.branchesTaken);
+		branchesNotTaken.add(counters.branchesNotTaken);
+		memoryReads.add(counters.memoryReads);
+		memoryWrites.add(counters.memoryWrites);
+	}
+
+	@Override
+	public long getRetiredInstructions() {
+		return retired.sum();
+	}
+
+	@Override
+	public synchronized double getInstructionsPerSecond() {
+		long now = System.nanoTime();
+		if (now - sampleTime >= RATE_INTERVAL_NANOS) {
+			long total = retired.sum();
+			rate = (total - sampleRetired) * 1e9 / (now - sampleTime);
+			sampleTime = now;
+			sampleRetired = total;
+		}
+		return rate;
+	}
+
+	@Override
+	public long getBranchesTaken() {
+		return branchesTaken.sum();
+	}
+
+	@Override
+	public long getBranchesNotTaken() {
+		return branchesNotTaken.sum();
+	}
+
+	@Override
+	public long getMemoryReads() {
+		return memoryReads.sum();
+	}
+
+	@Override
+	public long getMemoryWrites() {
+		return memoryWrites.sum();
+	}
+
+	@Override
+	public Map<String, Long> getInstructionHistogram() {
+		Map<String, Long> histogram = new TreeMap<String, Long>();
+		for (int i = 0; i < 64; i++) {
+			long count = opcodes[i].sum();
+			if (i != 0 && count != 0) {
+				histogram.put(MipsIsa.getNeumonic(Instruction.decode(i << 26)), count);
+			}
+			count = functs[i].sum();
+			if (count != 0) {
+				histogram.put(MipsIsa.getNeumonic(Instruction.decode(i)), count);
+			}
+		}
+		return histogram;
+	}
+
+	@Override
+	public boolean isHistogramsEnabled() {
+		return histogramsEnabled;
+	}
+
+	@Override
+	public void setHistogramsEnabled(boolean enabled) {
+		histogramsEnabled = enabled;
+	}
+
+	@Override
+	public void reset() {
+		retired.reset();
+		for (int i = 0; i < 64; i++) {
+			opcodes[i].reset();
+			functs[i].reset();
+		}
+		branchesTaken.reset();
+		branchesNotTaken.reset();
+		memoryReads.reset();
+		memoryWrites.reset();
+		synchronized (this) {
+			sampleTime = System.nanoTime();
+			sampleRetired = 0;
+			rate = 0;
+		}
+	}
+
+	/**
+	 * Returns true once register has been called. Until then CPUs don't create
+	 * JFR events, so loading the event classes doesn't slow down their first run.
+	 *
+	 * @return
+	 */
+	public static boolean isRegistered() {
+		return registered;
+	}
+
+	/**
+	 * Expose the totals through the platform MBean server and JFR. Starting those
+	 * takes a noticeable part of a second, so it is left to applications that
+	 * want it. Calling this more than once does nothing.
+	 *
+	 * @throws JMException if the MBean can't be registered
+	 */
+	public static synchronized void register() throws JMException {
+		if (registered) {
+			return;
+		}
+		ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE, new ObjectName(OBJECT_NAME));
+		FlightRecorder.addPeriodicEvent(MetricsEvent.class, INSTANCE::emit);
+		registered = true;
+	}
+
+	private void emit() {
+		MetricsEvent event = new MetricsEvent();
+		event.retiredInstructions = getRetiredInstructions();
+		event.instructionsPerSecond = getInstructionsPerSecond();
+		event.branchesTaken = getBranchesTaken();
+		event.branchesNotTaken = getBranchesNotTaken();
+		event.memoryReads = getMemoryReads();
+		event.memoryWrites = getMemoryWrites();
+		event.commit();
+	}
+
+	private static LongAdder[] newAdders(int count) {
+		LongAdder[] adders = new LongAdder[count];
+		for (int i = 0; i < count; i++) {
+			adders[i] = new LongAdder();
+		}
+		return adders;
+	}
+
+}
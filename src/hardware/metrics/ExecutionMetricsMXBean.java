@@ -0,0 +1,52 @@
+package hardware.metrics;
+
+import java.util.Map;
+
+/**
+ * Management interface of ExecutionMetrics, registered with the platform MBean
+ * server as hardware:type=ExecutionMetrics
+ *
+ * @sammc
+ */
+public interface ExecutionMetricsMXBean {
+
+	/**
+	 * Returns the number of instructions executed by every CPU so far
+	 */
+	public long getRetiredInstructions();
+
+	/**
+	 * Returns the rate instructions were executed at since the last call, over all
+	 * CPUs
+	 */
+	public double getInstructionsPerSecond();
+
+	public long getBranchesTaken();
+
+	public long getBranchesNotTaken();
+
+	public long getMemoryReads();
+
+	public long getMemoryWrites();
+
+	/**
+	 * Returns executed instruction counts by neumonic. R-types are counted by
+	 * funct, everything else by opcode.
+	 */
+	public Map<String, Long> getInstructionHistogram();
+
+	/**
+	 * Histograms, branch and memory counts cost a little per instruction, so they
+	 * are only collected while enabled. They are collected by the interpreter and
+	 * the basic block engine, JIT regions only count retired instructions.
+	 */
+	public boolean isHistogramsEnabled();
+
+	public void setHistogramsEnabled(boolean enabled);
+
+	/**
+	 * Set every total back to zero
+	 */
+	public void reset();
+
+}
@@ -0,0 +1,40 @@
+package hardware.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+
+/**
+ * Periodic JFR event carrying the ExecutionMetrics totals
+ *
+ * @sammc
+ */
+@Name("hardware.ExecutionMetrics")
+@Label("Execution Metrics")
+@Category("MIPS Simulator")
+@Description("Totals over every simulated CPU")
+@Period("1 s")
+final class MetricsEvent extends Event {
+
+	@Label("Retired Instructions")
+	long retiredInstructions;
+
+	@Label("Instructions Per Second")
+	double instructionsPerSecond;
+
+	@Label("Branches Taken")
+	long branchesTaken;
+
+	@Label("Branches Not Taken")
+	long branchesNotTaken;
+
+	@Label("Memory Reads")
+	long memoryReads;
+
+	@Label("Memory Writes")
+	long memoryWrites;
+
+}
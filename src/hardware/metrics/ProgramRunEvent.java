@@ -0,0 +1,41 @@
+package hardware.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event covering one call to SimulatedComputer.start
+ *
+ * @sammc
+ */
+@Name("hardware.ProgramRun")
+@Label("Program Run")
+@Category("MIPS Simulator")
+@Description("One run of a program on a simulated CPU, until it halts")
+public final class ProgramRunEvent extends Event {
+
+	@Label("Execution Mode")
+	String mode;
+
+	@Label("Instructions")
+	long instructions;
+
+	/**
+	 * Finish the event and commit it if it is being recorded
+	 *
+	 * @param mode         execution mode the program ran in
+	 * @param instructions instructions executed during the run
+	 */
+	public void finish(String mode, long instructions) {
+		end();
+		if (shouldCommit()) {
+			this.mode = mode;
+			this.instructions = instructions;
+			commit();
+		}
+	}
+
+}
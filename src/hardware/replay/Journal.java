@@ -0,0 +1,79 @@
+package hardware.replay;
+
+import hardware.device.DeviceBus;
+import hardware.memory.Memory;
+import hardware.syscall.Syscalls;
+
+/**
+ * Where a CPU sends everything that could make two runs of the same program
+ * differ: syscalls and device reads. A Recorder runs them for real and logs
+ * their results, a Replayer feeds the logged results back instead. Everything
+ * else the program does follows from those.
+ *
+ * Both also hash the registers every so many instructions, so a replay that
+ * drifts from its recording is caught close to where it happened. Attach with
+ * CPU.setJournal before loading the program, and attach a new one before
+ * loading another. Journaled programs are always interpreted, as the hashes
+ * need exact instruction counts.
+ *
+ * @sammc
+ */
+public interface Journal {
+
+	/**
+	 * Called when the program is loaded, before anything runs. A journal covers
+	 * one load, so it is only ever called once.
+	 *
+	 * @param devices whether the CPU has a device bus
+	 * @throws IllegalStateException if called again
+	 */
+	public void begin(boolean devices);
+
+	/**
+	 * Run or replay the syscall selected by $v0
+	 *
+	 * @param count    instructions executed so far
+	 * @param R        registers
+	 * @param M        memory
+	 * @param syscalls the CPU's syscall services
+	 * @return true if the program asked to exit
+	 */
+	public boolean syscall(long count, int[] R, Memory M, Syscalls syscalls);
+
+	/**
+	 * Load from a device, or replay the load
+	 *
+	 * @param count   instructions executed so far
+	 * @param address an address in the device window
+	 * @param devices the CPU's device bus
+	 * @return
+	 */
+	public int read(long count, int address, DeviceBus devices);
+
+	/**
+	 * Store to a device. Replays drop device stores, so replaying has no effect
+	 * outside the CPU.
+	 *
+	 * @param address an address in the device window
+	 * @param value
+	 * @param devices the CPU's device bus
+	 */
+	public void write(int address, int value, DeviceBus devices);
+
+	/**
+	 * Called once count reaches nextCheckpoint
+	 *
+	 * @param count instructions executed so far
+	 * @param R     registers
+	 * @param pc    address of the next instruction
+	 */
+	public void checkpoint(long count, int[] R, int pc);
+
+	/**
+	 * Returns the instruction count the next checkpoint is due at
+	 *
+	 * @return
+	 */
+	public long nextCheckpoint();
+
+}
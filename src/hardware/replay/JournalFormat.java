@@ -0,0 +1,76 @@
+package hardware.replay;
+
+import hardware.MipsIsa;
+import hardware.syscall.Syscalls;
+
+/**
+ * The journal file, shared by Recorder and Replayer.
+ *
+ * A header of MAGIC, VERSION, the hash interval as a varint and a byte that is
+ * 1 if the CPU had a device bus. Then events, each a tag byte and the
+ * instructions executed since the previous event as a varint:
+ *
+ * SYSCALL: $v0 afterwards, the number of words written to memory, their start
+ * address and then each word as the difference from the one before it
+ * DEVICE: offset into the device window, value as the difference from the
+ * previous device value
+ * HASH: the registers and PC hashed, 8 bytes
+ *
+ * Signed values are zigzag encoded varints, so small differences either way
+ * take a byte. A recording is closed by END.
+ *
+ * @sammc
+ */
+final class JournalFormat {
+
+	static final int MAGIC = 0x4d52504c; // MRPL
+	static final int VERSION = 1;
+
+	static final byte END = 0;
+	static final byte SYSCALL = 1;
+	static final byte DEVICE = 2;
+	static final byte HASH = 3;
+
+	static final long DEFAULT_HASH_INTERVAL = 1 << 20; // instructions
+
+	private JournalFormat() {
+	}
+
+	/**
+	 * Returns true if the syscall selected by R can give different results on
+	 * different runs. Printing, sbrk and exit only depend on the program.
+	 *
+	 * @param R
+	 * @return
+	 */
+	static boolean isRecorded(int[] R) {
+		switch (R[MipsIsa.$v0]) {
+		case Syscalls.READ_INT:
+		case Syscalls.READ_STRING:
+		case Syscalls.READ_CHAR:
+		case Syscalls.OPEN:
+		case Syscalls.READ:
+			return true;
+		case Syscalls.WRITE:
+			return R[MipsIsa.$a0] > 2; // console writes always succeed
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Hash of the register file and PC
+	 *
+	 * @param R
+	 * @param pc
+	 * @return
+	 */
+	static long hash(int[] R, int pc) {
+		long h = pc;
+		for (int r : R) {
+			h = (h ^ r) * 0x9E3779B97F4A7C15L;
+		}
+		return h ^ (h >>> 29);
+	}
+
+}
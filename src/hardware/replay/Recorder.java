@@ -0,0 +1,199 @@
+package hardware.replay;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import hardware.MipsIsa;
+import hardware.device.DeviceBus;
+import hardware.memory.Memory;
+import hardware.syscall.Syscalls;
+
+/**
+ * Records a run into a journal file, see Journal and JournalFormat.
+ *
+ * Only results that could differ between runs are written, delta encoded, so a
+ * program that rarely does input records next to nothing. Events are gathered
+ * in a buffer and written out when it fills up and on close.
+ *
+ * @sammc
+ */
+public final class Recorder implements Journal, AutoCloseable {
+
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final int MAX_EVENT_BYTES = 48; // an event without syscall words
+
+	private final FileChannel channel;
+	private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+	private final long hashInterval;
+
+	private boolean begun;
+	private long lastCount; // instruction count of the last event
+	private int lastDeviceValue;
+	private long nextHash;
+
+	/**
+	 * Record to a new file, replacing any file already there, hashing every
+	 * 2^20 instructions
+	 *
+	 * @param file
+	 * @throws IOException
+	 */
+	public Recorder(Path file) throws IOException {
+		this(file, JournalFormat.DEFAULT_HASH_INTERVAL);
+	}
+
+	/**
+	 * @param file
+	 * @param hashInterval instructions between register hashes
+	 * @throws IOException
+	 */
+	public Recorder(Path file, long hashInterval) throws IOException {
+		if (hashInterval <= 0) {
+			throw new IllegalArgumentException("Hash interval must be positive: " + hashInterval);
+		}
+		this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		this.hashInterval = hashInterval;
+		this.nextHash = hashInterval;
+	}
+
+	@Override
+	public void begin(boolean devices) {
+		if (begun) {
+			throw new IllegalStateException("A journal covers one program load, record the next to a new file");
+		}
+		begun = true;
+		buffer.putInt(JournalFormat.MAGIC);
+		buffer.put((byte) JournalFormat.VERSION);
+		putVarLong(hashInterval);
+		buffer.put((byte) (devices ? 1 : 0));
+	}
+
+	@Override
+	public boolean syscall(long count, int[] R, Memory M, Syscalls syscalls) {
+		if (!JournalFormat.isRecorded(R)) {
+			return syscalls.execute(R, M);
+		}
+		int service = R[MipsIsa.$v0];
+		int a0 = R[MipsIsa.$a0], a1 = R[MipsIsa.$a1];
+		boolean exit = syscalls.execute(R, M);
+
+		// the words the service wrote to memory
+		int start = 0, length = 0;
+		if (service == Syscalls.READ_STRING && a1 > 0) {
+			start = a0;
+			while (length < a1 && M.read(start + length++) != 0)
+				;
+		} else if (service == Syscalls.READ && R[MipsIsa.$v0] > 0) {
+			start = a1;
+			length = R[MipsIsa.$v0];
+		}
+
+		event(JournalFormat.SYSCALL, count);
+		putVarLong(zigzag(R[MipsIsa.$v0]));
+		putVarLong(length);
+		if (length > 0) {
+			putVarLong(zigzag(start));
+			int previous = 0;
+			for (int i = 0; i < length; i++) {
+				int word = M.read(start + i);
+				ensure(10);
+				putVarLong(zigzag(word - previous));
+				previous = word;
+			}
+		}
+		return exit;
+	}
+
+	@Override
+	public int read(long count, int address, DeviceBus devices) {
+		int value = devices.read(address);
+		event(JournalFormat.DEVICE, count);
+		putVarLong(address - DeviceBus.WINDOW_START);
+		putVarLong(zigzag(value - lastDeviceValue));
+		lastDeviceValue = value;
+		return value;
+	}
+
+	@Override
+	public void write(int address, int value, DeviceBus devices) {
+		devices.write(address, value);
+	}
+
+	@Override
+	public void checkpoint(long count, int[] R, int pc) {
+		if (count < nextHash) {
+			return;
+		}
+		event(JournalFormat.HASH, count);
+		buffer.putLong(JournalFormat.hash(R, pc));
+		nextHash = count + hashInterval;
+	}
+
+	@Override
+	public long nextCheckpoint() {
+		return nextHash;
+	}
+
+	/**
+	 * End the journal and write out whatever is still buffered
+	 *
+	 * @throws IOException
+	 */
+	@Override
+	public void close() throws IOException {
+		if (!channel.isOpen()) {
+			return;
+		}
+		try {
+			ensure(1);
+			buffer.put(JournalFormat.END);
+			flush();
+		} finally {
+			channel.close();
+		}
+	}
+
+	private void event(byte tag, long count) {
+		ensure(MAX_EVENT_BYTES);
+		buffer.put(tag);
+		putVarLong(count - lastCount);
+		lastCount = count;
+	}
+
+	private void ensure(int bytes) {
+		if (buffer.remaining() < bytes) {
+			flush();
+		}
+	}
+
+	private void flush() {
+		buffer.flip();
+		try {
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			buffer.clear();
+		}
+	}
+
+	private void putVarLong(long value) {
+		while ((value & ~0x7FL) != 0) {
+			buffer.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte) value);
+	}
+
+	private static long zigzag(long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+
+}
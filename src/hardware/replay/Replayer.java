@@ -0,0 +1,192 @@
+package hardware.replay;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import hardware.MipsIsa;
+import hardware.device.DeviceBus;
+import hardware.exceptions.ReplayDivergenceException;
+import hardware.memory.Memory;
+import hardware.syscall.Syscalls;
+
+/**
+ * Replays a journal written by Recorder, see Journal and JournalFormat.
+ *
+ * Syscalls that were recorded get their recorded results and touch nothing
+ * outside the CPU; printing, sbrk and exit run as usual. Device loads get
+ * their recorded values and device stores are dropped, so the devices on the
+ * bus are never touched. The registers are hashed at the same instruction
+ * counts as when recording, and any mismatch, or an event turning up at a
+ * different point than recorded, throws ReplayDivergenceException.
+ *
+ * The file is memory mapped and read front to back.
+ *
+ * @sammc
+ */
+public final class Replayer implements Journal, AutoCloseable {
+
+	private final FileChannel channel;
+	private final MappedByteBuffer buffer;
+	private final long hashInterval;
+	private final boolean devices;
+
+	private boolean begun;
+	private byte nextTag; // the next event, read ahead
+	private long nextCount;
+	private int lastDeviceValue;
+	private long nextHash;
+
+	/**
+	 * @param file written by a Recorder
+	 * @throws IOException              if it can't be read
+	 * @throws IllegalArgumentException if it isn't a journal
+	 */
+	public Replayer(Path file) throws IOException {
+		this.channel = FileChannel.open(file, StandardOpenOption.READ);
+		this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		if (buffer.remaining() < 5 || buffer.getInt() != JournalFormat.MAGIC
+				|| buffer.get() != JournalFormat.VERSION) {
+			channel.close();
+			throw new IllegalArgumentException(file + " is not a journal");
+		}
+		this.hashInterval = getVarLong();
+		this.devices = buffer.get() != 0;
+		this.nextHash = hashInterval;
+		advance();
+	}
+
+	@Override
+	public void begin(boolean devices) {
+		if (begun) {
+			throw new IllegalStateException("A journal covers one program load, replay the next with a new Replayer");
+		}
+		begun = true;
+		if (devices != this.devices) {
+			throw new IllegalStateException(
+					"Recorded " + (this.devices ? "with" : "without") + " a device bus, replaying the other way");
+		}
+	}
+
+	@Override
+	public boolean syscall(long count, int[] R, Memory M, Syscalls syscalls) {
+		if (!JournalFormat.isRecorded(R)) {
+			return syscalls.execute(R, M);
+		}
+		expect(JournalFormat.SYSCALL, count);
+		int v0 = (int) unzigzag(getVarLong());
+		int length = (int) getVarLong();
+		if (length > 0) {
+			int start = (int) unzigzag(getVarLong());
+			int word = 0;
+			for (int i = 0; i < length; i++) {
+				word += (int) unzigzag(getVarLong());
+				M.write(start + i, word);
+			}
+		}
+		R[MipsIsa.$v0] = v0;
+		advance();
+		return false; // exits aren't recorded, they run
+	}
+
+	@Override
+	public int read(long count, int address, DeviceBus devices) {
+		expect(JournalFormat.DEVICE, count);
+		int recorded = (int) getVarLong() + DeviceBus.WINDOW_START;
+		if (recorded != address) {
+			throw new ReplayDivergenceException(count, String.format("device load from 0x%08x, recorded 0x%08x",
+					address, recorded));
+		}
+		lastDeviceValue += (int) unzigzag(getVarLong());
+		advance();
+		return lastDeviceValue;
+	}
+
+	@Override
+	public void write(int address, int value, DeviceBus devices) {
+		// dropped, the devices were already written when recording
+	}
+
+	@Override
+	public void checkpoint(long count, int[] R, int pc) {
+		if (count < nextHash) {
+			return;
+		}
+		expect(JournalFormat.HASH, count);
+		if (buffer.getLong() != JournalFormat.hash(R, pc)) {
+			throw new ReplayDivergenceException(count, String.format("registers differ, PC 0x%08x", pc));
+		}
+		advance();
+		nextHash = count + hashInterval;
+	}
+
+	@Override
+	public long nextCheckpoint() {
+		return nextHash;
+	}
+
+	/**
+	 * Returns true once every recorded event has been replayed
+	 *
+	 * @return
+	 */
+	public boolean isComplete() {
+		return nextTag == JournalFormat.END;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/**
+	 * Check the event read ahead is the one the replay has reached
+	 */
+	private void expect(byte tag, long count) {
+		if (nextTag != tag || nextCount != count) {
+			throw new ReplayDivergenceException(count, nextTag == JournalFormat.END ? "ran past the recording"
+					: "expected " + name(nextTag) + " after " + nextCount + " instructions, got " + name(tag));
+		}
+	}
+
+	/**
+	 * Read the tag and count of the next event
+	 */
+	private void advance() {
+		nextTag = buffer.hasRemaining() ? buffer.get() : JournalFormat.END;
+		if (nextTag != JournalFormat.END) {
+			nextCount += getVarLong();
+		}
+	}
+
+	private long getVarLong() {
+		long value = 0;
+		for (int shift = 0;; shift += 7) {
+			byte b = buffer.get();
+			value |= (long) (b & 0x7F) << shift;
+			if (b >= 0) {
+				return value;
+			}
+		}
+	}
+
+	private static long unzigzag(long value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	private static String name(byte tag) {
+		switch (tag) {
+		case JournalFormat.SYSCALL:
+			return "a syscall";
+		case JournalFormat.DEVICE:
+			return "a device load";
+		case JournalFormat.HASH:
+			return "a register hash";
+		default:
+			return "the end";
+		}
+	}
+
+}
@@ -0,0 +1,442 @@
+package hardware.syscall;
+
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.InvalidPathException;
+import java.nio.file.OpenOption;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import hardware.MipsIsa;
+import hardware.cpu.CPU;
+import hardware.memory.Memory;
+
+/**
+ * The services behind the syscall instruction, numbered as in SPIM. The
+ * service is picked by $v0, arguments are in $a0 to $a2 and results come back
+ * in $v0.
+ *
+ * 1 print_int, 4 print_string, 5 read_int, 8 read_string, 9 sbrk, 10 exit,
+ * 11 print_char, 12 read_char, 13 open, 14 read, 15 write, 16 close, 17 exit2
+ *
+ * Memory is word addressed, so strings and file buffers hold one byte per
+ * word, the same as .asciiz. Unknown services do nothing.
+ *
+ * Console output is collected in a buffer and written to the output channel
+ * in one go when it fills up, before reading from the console, and when the
+ * CPU stops, so printing costs a few stores per character rather than a
+ * system call. File reads and writes go straight to their FileChannel, 4K at a
+ * time. A single read or write moves at most MAX_TRANSFER bytes and returns
+ * how many it moved, as a short count, so one syscall can't run for long.
+ *
+ * @sammc
+ */
+public final class Syscalls {
+
+	public static final int PRINT_INT = 1;
+	public static final int PRINT_STRING = 4;
+	public static final int READ_INT = 5;
+	public static final int READ_STRING = 8;
+	public static final int SBRK = 9;
+	public static final int EXIT = 10;
+	public static final int PRINT_CHAR = 11;
+	public static final int READ_CHAR = 12;
+	public static final int OPEN = 13;
+	public static final int READ = 14;
+	public static final int WRITE = 15;
+	public static final int CLOSE = 16;
+	public static final int EXIT2 = 17;
+
+	public static final int BUFFER_SIZE = 1 << 16; // bytes of console output held before writing
+	public static final int MAX_TRANSFER = 1 << 20; // most bytes moved by one read or write
+
+	private static final int STDIN = 0;
+	private static final int STDOUT = 1;
+	private static final int STDERR = 2;
+
+	private final ReadableByteChannel in;
+	private final WritableByteChannel out;
+	private final WritableByteChannel err;
+	private final ByteBuffer output = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	private final ByteBuffer input = ByteBuffer.allocateDirect(1 << 12);
+	private final ByteBuffer scratch = ByteBuffer.allocate(1 << 12); // file reads and writes
+	private final byte[] digits = new byte[11];
+
+	private FileChannel[] files = new FileChannel[8]; // indexed by descriptor, 0 to 2 are the console
+	private int programBreak = CPU.START_DYNAMIC_DATA;
+	private int exitCode;
+
+	/**
+	 * Services on the process' standard input, output and error
+	 */
+	public Syscalls() {
+		this(new FileInputStream(FileDescriptor.in).getChannel(), new FileOutputStream(FileDescriptor.out).getChannel(),
+				new FileOutputStream(FileDescriptor.err).getChannel());
+	}
+
+	/**
+	 * @param in  console input
+	 * @param out console output
+	 * @param err where writes to descriptor 2 go, unbuffered
+	 */
+	public Syscalls(ReadableByteChannel in, WritableByteChannel out, WritableByteChannel err) {
+		this.in = in;
+		this.out = out;
+		this.err = err;
+		input.flip(); // empty
+	}
+
+	/**
+	 * Run the service selected by $v0
+	 *
+	 * @param R registers, updated with the results
+	 * @param M
+	 * @return true if the program asked to exit
+	 */
+	public boolean execute(int[] R, Memory M) {
+		switch (R[MipsIsa.$v0]) {
+		case PRINT_INT:
+			printInt(R[MipsIsa.$a0]);
+			break;
+		case PRINT_STRING:
+			for (int address = R[MipsIsa.$a0];; address++) {
+				int c = M.read(address);
+				if (c == 0) {
+					break;
+				}
+				put((byte) c);
+			}
+			break;
+		case PRINT_CHAR:
+			put((byte) R[MipsIsa.$a0]);
+			break;
+		case READ_INT:
+			R[MipsIsa.$v0] = readInt();
+			break;
+		case READ_STRING:
+			readString(M, R[MipsIsa.$a0], R[MipsIsa.$a1]);
+			break;
+		case READ_CHAR:
+			flush();
+			R[MipsIsa.$v0] = readByte();
+			break;
+		case SBRK:
+			R[MipsIsa.$v0] = programBreak;
+			programBreak += R[MipsIsa.$a0];
+			break;
+		case EXIT:
+			exitCode = 0;
+			flush();
+			return true;
+		case EXIT2:
+			exitCode = R[MipsIsa.$a0];
+			flush();
+			return true;
+		case OPEN:
+			R[MipsIsa.$v0] = open(readString(M, R[MipsIsa.$a0]), R[MipsIsa.$a1]);
+			break;
+		case READ:
+			R[MipsIsa.$v0] = read(M, R[MipsIsa.$a0], R[MipsIsa.$a1], R[MipsIsa.$a2]);
+			break;
+		case WRITE:
+			R[MipsIsa.$v0] = write(M, R[MipsIsa.$a0], R[MipsIsa.$a1], R[MipsIsa.$a2]);
+			break;
+		case CLOSE:
+			close(R[MipsIsa.$a0]);
+			break;
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the code the program passed to exit2, 0 if it used exit
+	 *
+	 * @return
+	 */
+	public int getExitCode() {
+		return exitCode;
+	}
+
+	/**
+	 * Write out any buffered console output
+	 */
+	public void flush() {
+		output.flip();
+		try {
+			while (output.hasRemaining()) {
+				out.write(output);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			output.clear();
+		}
+	}
+
+	/**
+	 * Flush the console and close every file the program left open, putting the
+	 * program break back, ready for another program
+	 */
+	public void reset() {
+		flush();
+		for (int fd = 3; fd < files.length; fd++) {
+			close(fd);
+		}
+		programBreak = CPU.START_DYNAMIC_DATA;
+		exitCode = 0;
+	}
+
+	/*
+	 * Console
+	 */
+
+	private void put(byte b) {
+		if (!output.hasRemaining()) {
+			flush();
+		}
+		output.put(b);
+	}
+
+	private void printInt(int value) {
+		if (value == Integer.MIN_VALUE) {
+			for (char c : "-2147483648".toCharArray()) {
+				put((byte) c);
+			}
+			return;
+		}
+		if (value < 0) {
+			put((byte) '-');
+			value = -value;
+		}
+		int length = 0;
+		do {
+			digits[length++] = (byte) ('0' + value % 10);
+			value /= 10;
+		} while (value != 0);
+		while (length > 0) {
+			put(digits[--length]);
+		}
+	}
+
+	/**
+	 * Returns the next byte of console input, or -1 at the end of it
+	 */
+	private int readByte() {
+		if (!input.hasRemaining()) {
+			input.clear();
+			try {
+				int n = in.read(input);
+				input.flip();
+				if (n <= 0) {
+					return -1;
+				}
+			} catch (IOException e) {
+				input.flip();
+				throw new UncheckedIOException(e);
+			}
+		}
+		return input.get() & 0xFF;
+	}
+
+	/**
+	 * Read a line and parse an int from it, 0 if it doesn't hold one
+	 */
+	private int readInt() {
+		flush(); // show any prompt first
+		StringBuilder line = new StringBuilder();
+		for (int c = readByte(); c >= 0 && c != '\n'; c = readByte()) {
+			line.append((char) c);
+		}
+		try {
+			return Integer.parseInt(line.toString().trim());
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * Read at most length - 1 characters, up to and including a newline, into
+	 * buffer and null terminate them, as SPIM does
+	 */
+	private void readString(Memory M, int buffer, int length) {
+		flush();
+		int i = 0;
+		while (i < length - 1) {
+			int c = readByte();
+			if (c < 0) {
+				break;
+			}
+			M.write(buffer + i++, c);
+			if (c == '\n') {
+				break;
+			}
+		}
+		if (length > 0) {
+			M.write(buffer + i, 0);
+		}
+	}
+
+	private static String readString(Memory M, int address) {
+		StringBuilder sb = new StringBuilder();
+		for (int c = M.read(address); c != 0; c = M.read(++address)) {
+			sb.append((char) c);
+		}
+		return sb.toString();
+	}
+
+	/*
+	 * Files
+	 */
+
+	/**
+	 * Open a file, flags as in SPIM: 0 to read, 1 to write (created or
+	 * truncated), 9 to append (created if missing)
+	 *
+	 * @return the descriptor, or -1 if it couldn't be opened
+	 */
+	private int open(String path, int flags) {
+		OpenOption[] options;
+		switch (flags) {
+		case 0:
+			options = new OpenOption[] { StandardOpenOption.READ };
+			break;
+		case 1:
+			options = new OpenOption[] { StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+					StandardOpenOption.TRUNCATE_EXISTING };
+			break;
+		case 9:
+			options = new OpenOption[] { StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+					StandardOpenOption.APPEND };
+			break;
+		default:
+			return -1;
+		}
+
+		int fd = 3;
+		while (fd < files.length && files[fd] != null) {
+			fd++;
+		}
+		if (fd == files.length) {
+			files = Arrays.copyOf(files, files.length * 2);
+		}
+		try {
+			files[fd] = FileChannel.open(Paths.get(path), options);
+		} catch (IOException | InvalidPathException e) {
+			return -1;
+		}
+		return fd;
+	}
+
+	/**
+	 * Returns the number of bytes read into buffer, 0 at the end of the file, -1
+	 * on an error. At most MAX_TRANSFER bytes are read per call.
+	 */
+	private int read(Memory M, int fd, int buffer, int length) {
+		if (length < 0) {
+			return -1;
+		}
+		length = Math.min(length, MAX_TRANSFER);
+		if (fd == STDIN) {
+			flush();
+			int n = 0;
+			while (n < length) {
+				int c = readByte();
+				if (c < 0) {
+					break;
+				}
+				M.write(buffer + n++, c);
+				if (c == '\n') {
+					break; // a line at a time, like a terminal
+				}
+			}
+			return n;
+		}
+		FileChannel file = file(fd);
+		if (file == null) {
+			return -1;
+		}
+		int n = 0;
+		try {
+			while (n < length) {
+				scratch.clear().limit(Math.min(length - n, scratch.capacity()));
+				int read = file.read(scratch);
+				if (read <= 0) {
+					break; // the end of the file
+				}
+				scratch.flip();
+				for (int i = 0; i < read; i++) {
+					M.write(buffer + n++, scratch.get() & 0xFF);
+				}
+			}
+			return n;
+		} catch (IOException e) {
+			return n > 0 ? n : -1;
+		}
+	}
+
+	/**
+	 * Returns the number of bytes written from buffer, -1 on an error. At most
+	 * MAX_TRANSFER bytes are written per call.
+	 */
+	private int write(Memory M, int fd, int buffer, int length) {
+		if (length < 0) {
+			return -1;
+		}
+		length = Math.min(length, MAX_TRANSFER);
+		if (fd == STDOUT) {
+			for (int i = 0; i < length; i++) {
+				put((byte) M.read(buffer + i));
+			}
+			return length;
+		}
+		WritableByteChannel channel = fd == STDERR ? err : file(fd);
+		if (channel == null) {
+			return -1;
+		}
+		if (fd == STDERR) {
+			flush(); // keep stdout and stderr in order
+		}
+		int n = 0;
+		try {
+			while (n < length) {
+				scratch.clear().limit(Math.min(length - n, scratch.capacity()));
+				while (scratch.hasRemaining()) {
+					scratch.put((byte) M.read(buffer + n + scratch.position()));
+				}
+				scratch.flip();
+				while (scratch.hasRemaining()) {
+					channel.write(scratch);
+				}
+				n += scratch.limit();
+			}
+			return n;
+		} catch (IOException e) {
+			return n > 0 ? n : -1;
+		}
+	}
+
+	private void close(int fd) {
+		FileChannel file = file(fd);
+		if (file != null) {
+			files[fd] = null;
+			try {
+				file.close();
+			} catch (IOException e) {
+				// nothing the program could do about it
+			}
+		}
+	}
+
+	private FileChannel file(int fd) {
+		return fd > STDERR && fd < files.length ? files[fd] : null;
+	}
+
+}
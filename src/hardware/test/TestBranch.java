@@ -0,0 +1,146 @@
+package hardware.test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import hardware.ExecutionMode;
+import hardware.branch.BimodalPredictor;
+import hardware.branch.BranchPredictor;
+import hardware.branch.BranchUnit;
+import hardware.branch.GsharePredictor;
+import hardware.branch.ReturnAddressStack;
+import hardware.branch.StaticPredictor;
+import hardware.branch.TournamentPredictor;
+import hardware.cache.Cache;
+import hardware.cache.CacheHierarchy;
+import hardware.cpu.CPU;
+import hardware.cpu.PipelineTiming;
+import software.assembly.Assembler;
+import software.datatypes.Program;
+import software.linking.Linker;
+
+/**
+ * Unit tests for branch package
+ */
+class TestBranch {
+
+	private static final String LOOP = "./src/hardware/test/loop.s";
+	private static final String ISA = "./src/hardware/test/isa.s";
+
+	@Test
+	void testBimodalLearnsLoop() {
+		BranchPredictor predictor = new BimodalPredictor(64);
+		int wrong = 0;
+		for (int pass = 0; pass < 10; pass++) {
+			for (int i = 0; i < 20; i++) {
+				boolean taken = i < 19; // the loop branch falls through once a pass
+				if (predictor.predict(100, 90) != taken) {
+					wrong++;
+				}
+				predictor.update(100, taken);
+			}
+		}
+		assertTrue(wrong <= 12, "mispredicted " + wrong); // 2 to warm up, then the exit of every pass
+	}
+
+	@Test
+	void testGshareLearnsAlternation() {
+		BranchPredictor gshare = new GsharePredictor(1024, 8);
+		BranchPredictor bimodal = new BimodalPredictor(1024);
+		BranchPredictor tournament = new TournamentPredictor(1024);
+		int gshareWrong = 0, bimodalWrong = 0, tournamentWrong = 0;
+		for (int i = 0; i < 1000; i++) {
+			boolean taken = i % 2 == 0;
+			gshareWrong += gshare.predict(40, 30) != taken ? 1 : 0;
+			bimodalWrong += bimodal.predict(40, 30) != taken ? 1 : 0;
+			tournamentWrong += tournament.predict(40, 30) != taken ? 1 : 0;
+			gshare.update(40, taken);
+			bimodal.update(40, taken);
+			tournament.update(40, taken);
+		}
+		assertTrue(gshareWrong < 20, "gshare mispredicted " + gshareWrong);
+		assertTrue(bimodalWrong > 400, "bimodal mispredicted " + bimodalWrong);
+		assertTrue(tournamentWrong < 50, "tournament mispredicted " + tournamentWrong);
+	}
+
+	@Test
+	void testStaticBackwardTaken() {
+		BranchPredictor predictor = new StaticPredictor(StaticPredictor.Rule.BACKWARD_TAKEN);
+		assertTrue(predictor.predict(100, 90));
+		assertFalse(predictor.predict(100, 110));
+	}
+
+	@Test
+	void testReturnAddressStack() {
+		ReturnAddressStack ras = new ReturnAddressStack(2);
+		ras.push(1);
+		ras.push(2);
+		ras.push(3); // overwrites 1
+		assertEquals(3, ras.pop());
+		assertEquals(2, ras.pop());
+		assertEquals(-1, ras.pop());
+	}
+
+	@Test
+	void testPredictionCutsPipelineCycles() throws Exception {
+		Program p = new Linker().link(new Assembler().assemble(LOOP));
+		PipelineTiming unpredicted = runPipeline(p, null).getPipelineTiming();
+		BranchUnit unit = new BranchUnit();
+		PipelineTiming predicted = runPipeline(p, unit).getPipelineTiming();
+
+		assertEquals(2999 + 1, unpredicted.getMispredictions()); // every j, and the final beq
+		assertEquals(2, predicted.getMispredictions()); // the first j and the final beq
+		assertEquals(unpredicted.getCycles() - 2998, predicted.getCycles()); // jumps cost a cycle
+		assertEquals(2, unit.getAddresses().length);
+		assertEquals(3000 + 2999, unit.getPredictions());
+		int jump = unit.getAddresses()[1];
+		assertEquals(2999, unit.getPredictions(jump));
+		assertEquals(2998.0 / 2999, unit.getAccuracy(jump), 1e-9);
+	}
+
+	@Test
+	void testReturnPredictedFromStack() throws Exception {
+		Program p = new Linker().link(new Assembler().assemble(ISA));
+		BranchUnit unit = new BranchUnit();
+		runPipeline(p, unit);
+
+		int[] addresses = unit.getAddresses(); // bne, jal, then jr
+		int jr = addresses[addresses.length - 1];
+		int jal = addresses[addresses.length - 2];
+		assertEquals(1.0, unit.getAccuracy(jr));
+		assertEquals(0.0, unit.getAccuracy(jal)); // cold BTB
+	}
+
+	@Test
+	void testResetTimesLikeNew() throws Exception {
+		Program p = new Linker().link(new Assembler().assemble(LOOP));
+		CPU cpu = new CPU();
+		cpu.setExecutionMode(ExecutionMode.PIPELINE);
+		cpu.setBranchUnit(new BranchUnit());
+		cpu.setCaches(new CacheHierarchy());
+		long[] first = null;
+		for (int run = 0; run < 2; run++) {
+			cpu.reset(); // as ComputerPool does between programs
+			cpu.loadProgram(p);
+			cpu.start();
+			Cache l1 = cpu.getCaches().getCaches().get(0);
+			long[] counts = { cpu.getPipelineTiming().getCycles(), cpu.getPipelineTiming().getMispredictions(),
+					cpu.getBranchUnit().getPredictions(), l1.getReads(), l1.getMisses() };
+			if (first == null) {
+				first = counts;
+			}
+			assertArrayEquals(first, counts); // warm predictors or caches would do better the second time
+		}
+	}
+
+	private static CPU runPipeline(Program p, BranchUnit unit) throws Exception {
+		CPU cpu = new CPU();
+		cpu.setExecutionMode(ExecutionMode.PIPELINE);
+		cpu.setBranchUnit(unit);
+		cpu.loadProgram(p);
+		cpu.start();
+		return cpu;
+	}
+
+}
@@ -0,0 +1,350 @@
+package hardware.test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import hardware.ComputerPool;
+import hardware.ExecutionMode;
+import hardware.MipsIsa;
+import hardware.cpu.CPU;
+import hardware.cpu.Multiprocessor;
+import hardware.cpu.PipelineTiming;
+import hardware.cpu.Snapshot;
+import hardware.cpu.StopReason;
+import hardware.memory.DirectMemory;
+import hardware.memory.Memory;
+import hardware.memory.PagedMemory;
+import hardware.metrics.ExecutionMetrics;
+import hardware.trace.ExecutionTrace;
+import software.assembly.Assembler;
+import software.datatypes.Program;
+import software.linking.Linker;
+
+/**
+ * Unit tests for cpu package
+ */
+class TestCPU {
+
+	private static final String BLOCKS = "./src/hardware/test/blocks.s";
+	private static final String LOOP = "./src/hardware/test/loop.s";
+	private static final String ISA = "./src/hardware/test/isa.s";
+	private static final String ATOMIC = "./src/hardware/test/atomic.s";
+	private static final String FORK = "./src/hardware/test/fork.s";
+	private static final String PIPELINE = "./src/hardware/test/pipeline.s";
+	private static final String SPIN = "./src/hardware/test/spin.s";
+
+	@Test
+	void testProgramResults() throws Exception {
+		for (ExecutionMode mode : ExecutionMode.values()) {
+			CPU cpu = run(ISA, mode);
+			int[] R = cpu.getRegisters();
+
+			assertEquals(18, R[MipsIsa.$t2], mode.name()); // sum of nums
+			assertEquals(18, cpu.getMemory().read(CPU.STATIC_DATA + 4), mode.name());
+			assertEquals(36, cpu.getMemory().read(CPU.STATIC_DATA + 5), mode.name()); // returned from double
+			assertEquals(0, R[MipsIsa.$t5], mode.name());
+			assertEquals(1, R[MipsIsa.$t6], mode.name());
+			assertEquals(2, R[MipsIsa.$t7], mode.name()); // addu doesn't fall into and
+			assertEquals(1, R[MipsIsa.$s1], mode.name());
+		}
+	}
+
+	@Test
+	void testBasicBlockMatchesInterpreter() throws Exception {
+		CPU interpreted = run(BLOCKS, ExecutionMode.INTERPRETER);
+		CPU translated = run(BLOCKS, ExecutionMode.BASIC_BLOCK);
+
+		assertArrayEquals(interpreted.getRegisters(), translated.getRegisters());
+		assertEquals(interpreted.getPC(), translated.getPC());
+		for (int i = 0; i < 32; i++) {
+			assertEquals(interpreted.getMemory().read(i), translated.getMemory().read(i));
+		}
+	}
+
+	@Test
+	void testJitMatchesInterpreter() throws Exception {
+		CPU interpreted = run(LOOP, ExecutionMode.INTERPRETER);
+		CPU compiled = run(LOOP, ExecutionMode.JIT);
+
+		assertArrayEquals(interpreted.getRegisters(), compiled.getRegisters());
+		assertEquals(interpreted.getPC(), compiled.getPC());
+		for (int i = 0; i < 0x8000; i++) {
+			assertEquals(interpreted.getMemory().read(i), compiled.getMemory().read(i));
+		}
+	}
+
+	@Test
+	void testMultiprocessorAtomicIncrement() throws Exception {
+		Program p = new Linker().link(new Assembler().assemble(ATOMIC));
+		for (ExecutionMode mode : ExecutionMode.values()) {
+			Multiprocessor mp = new Multiprocessor(4, mode == ExecutionMode.JIT ? new DirectMemory() : new PagedMemory());
+			mp.setExecutionMode(mode);
+			mp.loadProgram(p);
+			mp.start();
+
+			// every core added 2000, none of the increments were lost
+			assertEquals(4 * 2000, mp.getMemory().read(CPU.STATIC_DATA), mode.name());
+			for (int i = 0; i < mp.getCoreCount(); i++) {
+				assertEquals(i, mp.getCore(i).getRegisters()[MipsIsa.$k0]);
+			}
+		}
+	}
+
+	@Test
+	void testStoreConditionalNeedsLink() throws Exception {
+		CPU cpu = new CPU();
+
+		cpu.ori(MipsIsa.$t0, MipsIsa.$0, 7);
+		cpu.sc(MipsIsa.$t0, MipsIsa.$0, 0);
+		assertEquals(0, cpu.getRegisters()[MipsIsa.$t0]); // no reservation
+		assertEquals(0, cpu.getMemory().read(0));
+
+		cpu.ll(MipsIsa.$t1, MipsIsa.$0, 0);
+		cpu.ori(MipsIsa.$t0, MipsIsa.$0, 7);
+		cpu.getMemory().write(0, 3); // someone else got there first
+		cpu.sc(MipsIsa.$t0, MipsIsa.$0, 0);
+		assertEquals(0, cpu.getRegisters()[MipsIsa.$t0]);
+		assertEquals(3, cpu.getMemory().read(0));
+
+		cpu.ll(MipsIsa.$t1, MipsIsa.$0, 0);
+		cpu.ori(MipsIsa.$t0, MipsIsa.$0, 7);
+		cpu.sc(MipsIsa.$t0, MipsIsa.$0, 0);
+		assertEquals(1, cpu.getRegisters()[MipsIsa.$t0]);
+		assertEquals(7, cpu.getMemory().read(0));
+	}
+
+	@Test
+	void testStoreConditionalOnlyComparesValues() throws Exception {
+		CPU cpu = new CPU();
+		cpu.getMemory().write(0, 5);
+
+		// the reservation is the value ll read, so a store of the same value, or
+		// a change and back (ABA), doesn't break it the way it would on MIPS
+		cpu.ll(MipsIsa.$t1, MipsIsa.$0, 0);
+		cpu.getMemory().write(0, 6);
+		cpu.getMemory().write(0, 5);
+		cpu.ori(MipsIsa.$t0, MipsIsa.$0, 7);
+		cpu.sc(MipsIsa.$t0, MipsIsa.$0, 0);
+		assertEquals(1, cpu.getRegisters()[MipsIsa.$t0]);
+		assertEquals(7, cpu.getMemory().read(0));
+	}
+
+	@Test
+	void testPooledCpuReset() throws Exception {
+		Program p = new Linker().link(new Assembler().assemble(ISA));
+		ComputerPool<CPU> pool = new ComputerPool<CPU>(CPU::new, 1);
+
+		CPU first = pool.acquire();
+		first.loadProgram(p);
+		first.start();
+		int[] registers = first.getRegisters();
+		long instructions = first.getInstructionCount();
+		int pages = first.getMemory().getPagesAllocated();
+		pool.release(first);
+
+		assertEquals(CPU.PC_STARTING_ADDRESS, first.getPC());
+		assertEquals(0, first.getRegisters()[MipsIsa.$t2]);
+		assertEquals(0, first.getMemory().read(CPU.STATIC_DATA + 4));
+		assertEquals(pages, first.getMemory().getPagesAllocated()); // kept for the next program
+
+		CPU second = pool.acquire();
+		assertSame(first, second);
+		second.loadProgram(p);
+		second.start();
+		assertArrayEquals(registers, second.getRegisters());
+		assertEquals(instructions, second.getInstructionCount());
+	}
+
+	@Test
+	void testForkFromSnapshot() throws Exception {
+		for (ExecutionMode mode : ExecutionMode.values()) {
+			CPU parent = run(FORK, mode); // stops at the first halt
+			Snapshot snapshot = parent.snapshot();
+
+			for (int input = 1; input <= 3; input++) {
+				CPU child = snapshot.fork();
+				assertEquals(40, child.getMemory().read(CPU.STATIC_DATA), mode.name());
+				child.setRegister(MipsIsa.$a0, input);
+				child.setPC(snapshot.getPC() + 1);
+				child.start();
+
+				assertEquals(40 + input, child.getMemory().read(CPU.STATIC_DATA + 1), mode.name());
+				assertEquals(input, child.getMemory().read(CPU.STATIC_DATA), mode.name());
+				assertEquals(snapshot.getInstructionCount() + 4, child.getInstructionCount(), mode.name());
+			}
+
+			// neither the parent nor the snapshot saw the children's writes
+			assertEquals(40, parent.getMemory().read(CPU.STATIC_DATA), mode.name());
+			assertEquals(0, parent.getMemory().read(CPU.STATIC_DATA + 1), mode.name());
+
+			parent.setPC(parent.getPC() + 1);
+			parent.start();
+			assertEquals(0, parent.getMemory().read(CPU.STATIC_DATA), mode.name());
+			assertEquals(40, snapshot.fork().getMemory().read(CPU.STATIC_DATA), mode.name());
+		}
+	}
+
+	@Test
+	void testSnapshotFile() throws Exception {
+		Path file = Files.createTempFile("snapshot", ".bin");
+		try {
+			CPU parent = run(FORK, ExecutionMode.JIT); // stops at the first halt
+			for (int page = 0; page < 2000; page++) { // enough pages for the index to run past the first page
+				parent.getMemory().write(0x2000_0000 + (page << Memory.PAGE_BITS), page);
+			}
+			parent.snapshot().write(file);
+			byte[] written = Files.readAllBytes(file);
+
+			Snapshot snapshot = Snapshot.read(file);
+			assertEquals(parent.getPC(), snapshot.getPC());
+			assertEquals(parent.getInstructionCount(), snapshot.getInstructionCount());
+			assertArrayEquals(parent.getRegisters(), snapshot.getRegisters());
+
+			CPU child = snapshot.fork();
+			assertArrayEquals(parent.getMemory().getAllocatedPages(), child.getMemory().getAllocatedPages());
+			assertEquals(1999, child.getMemory().read(0x2000_0000 + (1999 << Memory.PAGE_BITS)));
+			child.setRegister(MipsIsa.$a0, 2);
+			child.setPC(snapshot.getPC() + 1);
+			child.start();
+			assertEquals(42, child.getMemory().read(CPU.STATIC_DATA + 1));
+			assertEquals(2, child.getMemory().read(CPU.STATIC_DATA));
+			assertEquals(snapshot.getInstructionCount() + 4, child.getInstructionCount());
+
+			assertEquals(40, snapshot.fork().getMemory().read(CPU.STATIC_DATA)); // the child wrote its own copy
+			assertArrayEquals(written, Files.readAllBytes(file));
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	void testExecutionTrace() throws Exception {
+		Path file = Files.createTempFile("trace", ".bin");
+		try {
+			Program p = new Linker().link(new Assembler().assemble(ISA));
+			CPU cpu = new CPU();
+			cpu.setExecutionMode(ExecutionMode.JIT); // traced programs are interpreted anyway
+			cpu.loadProgram(p);
+			try (ExecutionTrace trace = new ExecutionTrace(file, 1 << 12)) {
+				cpu.setTrace(trace);
+				cpu.start();
+				assertEquals(0, trace.getDroppedRecords());
+			}
+
+			int[] R = new int[MipsIsa.NUMBER_OF_REGISTERS];
+			int[] first = { -1 };
+			long records = ExecutionTrace.read(file, (pc, word, register, value) -> {
+				if (first[0] < 0) {
+					first[0] = pc;
+				}
+				assertEquals(word, cpu.getMemory().read(pc));
+				if (register >= 0) {
+					R[register] = value;
+				}
+			});
+
+			// replaying the register writes ends in the cpu's final state
+			assertEquals(cpu.getInstructionCount(), records);
+			assertEquals(CPU.PC_STARTING_ADDRESS, first[0]);
+			assertArrayEquals(cpu.getRegisters(), R);
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	void testExecutionMetrics() throws Exception {
+		ExecutionMetrics metrics = ExecutionMetrics.get();
+		metrics.setHistogramsEnabled(true);
+		try {
+			for (ExecutionMode mode : new ExecutionMode[] { ExecutionMode.INTERPRETER, ExecutionMode.BASIC_BLOCK,
+					ExecutionMode.PIPELINE }) {
+				metrics.reset();
+				CPU cpu = run(ISA, mode);
+
+				Map<String, Long> histogram = metrics.getInstructionHistogram();
+				long total = 0;
+				for (long count : histogram.values()) {
+					total += count;
+				}
+				assertEquals(cpu.getInstructionCount(), metrics.getRetiredInstructions(), mode.name());
+				assertEquals(cpu.getInstructionCount(), total, mode.name());
+				assertEquals(histogram.getOrDefault("bne", 0L) + histogram.getOrDefault("beq", 0L),
+						metrics.getBranchesTaken() + metrics.getBranchesNotTaken(), mode.name());
+				assertEquals(3, metrics.getBranchesTaken(), mode.name()); // four passes through the loop
+				assertEquals(1, metrics.getBranchesNotTaken(), mode.name());
+				assertEquals((long) histogram.get("sw"), metrics.getMemoryWrites(), mode.name());
+				assertEquals((long) histogram.get("lw"), metrics.getMemoryReads(), mode.name());
+			}
+		} finally {
+			metrics.setHistogramsEnabled(false);
+		}
+	}
+
+	@Test
+	void testRunLimits() throws Exception {
+		Program spin = new Linker().link(new Assembler().assemble(SPIN));
+		for (ExecutionMode mode : ExecutionMode.values()) {
+			CPU cpu = new CPU();
+			cpu.setExecutionMode(mode);
+			cpu.loadProgram(spin);
+			assertEquals(StopReason.INSTRUCTION_BUDGET, cpu.run(100_000, null), mode.name());
+			assertEquals(StopReason.INSTRUCTION_BUDGET, cpu.getStopReason(), mode.name());
+			long count = cpu.getInstructionCount();
+			assertTrue(count >= 100_000, mode.name());
+			if (mode == ExecutionMode.INTERPRETER || mode == ExecutionMode.PIPELINE)
+				assertEquals(100_000, count, mode.name());
+			assertEquals(count, cpu.getRegisters()[MipsIsa.$t0] * 2L, mode.name()); // stopped cleanly between passes
+
+			assertEquals(StopReason.DEADLINE, cpu.run(Long.MAX_VALUE, Duration.ofMillis(20)), mode.name());
+			assertTrue(cpu.getInstructionCount() > count, mode.name()); // carried on from where it stopped
+
+			CPU loop = run(LOOP, mode);
+			assertEquals(StopReason.FINISHED, loop.getStopReason(), mode.name());
+			loop.loadProgram(new Linker().link(new Assembler().assemble(LOOP)));
+			assertEquals(StopReason.FINISHED, loop.run(Long.MAX_VALUE, Duration.ofSeconds(10)), mode.name());
+		}
+	}
+
+	@Test
+	void testPipelineTiming() throws Exception {
+		Program p = new Linker().link(new Assembler().assemble(PIPELINE));
+		CPU cpu = new CPU();
+		cpu.setExecutionMode(ExecutionMode.PIPELINE);
+		cpu.loadProgram(p);
+		cpu.start();
+		PipelineTiming timing = cpu.getPipelineTiming();
+
+		assertEquals(26, cpu.getInstructionCount());
+		assertEquals(26, timing.getInstructions());
+		assertEquals(3, timing.getLoadUseStalls()); // only the add straight after the first lw
+		assertEquals(2, timing.getBranchesTaken());
+		assertEquals(1, timing.getJumps());
+		assertEquals(26 + 3 + 2 * 2 + 1 + 4, timing.getCycles());
+
+		List<PipelineTiming.Region> regions = timing.byLabel(p.labels);
+		assertEquals(2, regions.size());
+		assertEquals("loop", regions.get(0).getLabel());
+		assertEquals(22, regions.get(0).getInstructions()); // seven a pass, and the j
+		assertEquals(22 + 3 + 2 * 2 + 1, regions.get(0).getCycles());
+		assertEquals("done", regions.get(1).getLabel());
+		assertEquals(0, regions.get(1).getInstructions());
+	}
+
+	static CPU run(String filepath, ExecutionMode mode) throws Exception {
+		Program p = new Linker().link(new Assembler().assemble(filepath));
+		CPU cpu = new CPU();
+		cpu.setExecutionMode(mode);
+		cpu.loadProgram(p);
+		cpu.start();
+		return cpu;
+	}
+
+}
@@ -0,0 +1,104 @@
+package hardware.test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import hardware.ExecutionMode;
+import hardware.cache.Cache;
+import hardware.cache.CacheHierarchy;
+import hardware.cache.ReplacementPolicy;
+import hardware.cache.WritePolicy;
+import hardware.cpu.CPU;
+import software.assembly.Assembler;
+import software.datatypes.Program;
+import software.linking.Linker;
+
+/**
+ * Unit tests for cache package
+ */
+class TestCache {
+
+	private static final String LOOP = "./src/hardware/test/loop.s";
+
+	@Test
+	void testLeastRecentlyUsedEviction() {
+		for (ReplacementPolicy policy : new ReplacementPolicy[] { ReplacementPolicy.LRU, ReplacementPolicy.PLRU }) {
+			// 2 sets of 2 ways, 2 word lines, so 0, 4 and 8 all fall in set 0
+			Cache cache = new Cache("L1", 8, 2, 2, policy, WritePolicy.WRITE_BACK, null);
+
+			assertFalse(cache.read(0), policy.name());
+			assertFalse(cache.read(4), policy.name());
+			assertTrue(cache.read(1), policy.name()); // same line as 0
+			assertFalse(cache.read(8), policy.name()); // evicts 4, the least recently used
+			assertTrue(cache.read(0), policy.name());
+			assertFalse(cache.read(4), policy.name());
+
+			assertEquals(4, cache.getMisses(), policy.name());
+			assertEquals(2, cache.getHits(), policy.name());
+			assertEquals(2, cache.getEvictions(), policy.name());
+		}
+	}
+
+	@Test
+	void testRandomReplacementCounts() {
+		Cache cache = new Cache("L1", 64, 4, 4, ReplacementPolicy.RANDOM, WritePolicy.WRITE_BACK, null);
+		for (int i = 0; i < 1000; i++) {
+			cache.read((i * 37) & 0xFFF);
+		}
+		assertEquals(1000, cache.getHits() + cache.getMisses());
+		assertTrue(cache.getEvictions() <= cache.getMisses());
+	}
+
+	@Test
+	void testWriteBackWritesDirtyLinesOnEviction() {
+		Cache l2 = new Cache("L2", 64, 4, 2, ReplacementPolicy.LRU, WritePolicy.WRITE_BACK, null);
+		Cache l1 = new Cache("L1", 4, 1, 2, ReplacementPolicy.LRU, WritePolicy.WRITE_BACK, l2); // direct mapped
+
+		assertFalse(l1.write(0)); // allocates, reading the line from L2
+		assertTrue(l1.write(1));
+		assertFalse(l1.read(4)); // evicts the dirty line
+
+		assertEquals(1, l1.getWritebacks());
+		assertEquals(1, l2.getWrites());
+		assertEquals(2, l2.getReads());
+	}
+
+	@Test
+	void testWriteThroughDoesNotAllocate() {
+		Cache l2 = new Cache("L2", 64, 4, 2, ReplacementPolicy.LRU, WritePolicy.WRITE_BACK, null);
+		Cache l1 = new Cache("L1", 4, 1, 2, ReplacementPolicy.LRU, WritePolicy.WRITE_THROUGH, l2);
+
+		assertFalse(l1.write(0));
+		assertFalse(l1.read(0)); // the write didn't bring the line in
+		assertTrue(l1.write(0));
+		assertFalse(l1.read(4));
+
+		assertEquals(0, l1.getWritebacks());
+		assertEquals(2, l2.getWrites());
+	}
+
+	@Test
+	void testCpuAccessesGoThroughCaches() throws Exception {
+		Program p = new Linker().link(new Assembler().assemble(LOOP));
+		for (ExecutionMode mode : ExecutionMode.values()) {
+			CacheHierarchy caches = new CacheHierarchy();
+			CPU cpu = new CPU();
+			cpu.setExecutionMode(mode);
+			cpu.setCaches(caches);
+			cpu.loadProgram(p);
+			cpu.start();
+
+			Cache l1i = caches.getInstructionCache();
+			Cache l1d = caches.getDataCache();
+			assertEquals(cpu.getInstructionCount() + 1, l1i.getReads(), mode.name()); // and the halt
+			assertEquals(1, l1i.getMisses(), mode.name()); // the whole loop fits in a line
+			assertEquals(3000, l1d.getReads(), mode.name());
+			assertEquals(3000, l1d.getWrites(), mode.name());
+			assertEquals(1, l1d.getMisses(), mode.name());
+			assertEquals(2, l1i.getNext().getMisses(), mode.name());
+			assertEquals(3, caches.getCaches().size(), mode.name());
+		}
+	}
+
+}
@@ -0,0 +1,156 @@
+package hardware.test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import hardware.ExecutionMode;
+import hardware.MipsIsa;
+import hardware.cpu.CPU;
+import hardware.cpu.Debugger;
+import hardware.cpu.StopReason;
+import software.assembly.Assembler;
+import software.datatypes.Program;
+import software.linking.Linker;
+
+/**
+ * Unit tests for Debugger
+ */
+class TestDebugger {
+
+	private static final String LOOP = "./src/hardware/test/loop.s";
+	private static final String SPIN = "./src/hardware/test/spin.s";
+
+	@Test
+	void testBreakpointByLabel() throws Exception {
+		Program p = new Linker().link(new Assembler().assemble(LOOP));
+		int head = p.labels.get("head");
+		for (ExecutionMode mode : ExecutionMode.values()) {
+			CPU cpu = load(p, mode);
+			Debugger debugger = cpu.getDebugger();
+			debugger.addBreakpoint("head");
+
+			for (int pass = 0; pass < 3; pass++) {
+				cpu.start();
+				assertEquals(StopReason.BREAKPOINT, cpu.getStopReason(), mode.name());
+				assertEquals(head, cpu.getPC(), mode.name());
+				assertEquals(pass, cpu.getRegisters()[MipsIsa.$t0], mode.name()); // once round the loop per start
+			}
+			debugger.removeBreakpoint(head);
+			cpu.start();
+			assertEquals(StopReason.FINISHED, cpu.getStopReason(), mode.name());
+			assertEquals(3000, cpu.getRegisters()[MipsIsa.$t0], mode.name());
+			assertEquals(run(p, mode).getInstructionCount(), cpu.getInstructionCount(), mode.name());
+		}
+	}
+
+	@Test
+	void testBreakpointOnHalt() throws Exception {
+		Program p = new Linker().link(new Assembler().assemble(LOOP));
+		CPU cpu = load(p, ExecutionMode.JIT);
+		cpu.getDebugger().addBreakpoint("done");
+		cpu.start();
+		assertEquals(StopReason.BREAKPOINT, cpu.getStopReason());
+		assertEquals(3000, cpu.getRegisters()[MipsIsa.$t0]);
+		cpu.start();
+		assertEquals(StopReason.FINISHED, cpu.getStopReason());
+		assertEquals(p.labels.get("done"), cpu.getPC());
+	}
+
+	@Test
+	void testBreakpointOnFirstInstruction() throws Exception {
+		Program p = new Linker().link(new Assembler().assemble(SPIN));
+		CPU cpu = load(p, ExecutionMode.INTERPRETER);
+		cpu.getDebugger().addBreakpoint(CPU.PC_STARTING_ADDRESS);
+		cpu.start();
+		assertEquals(StopReason.BREAKPOINT, cpu.getStopReason());
+		assertEquals(0, cpu.getInstructionCount());
+		cpu.start(); // once round
+		assertEquals(StopReason.BREAKPOINT, cpu.getStopReason());
+		assertEquals(2, cpu.getInstructionCount());
+	}
+
+	@Test
+	void testWatchpointStopsAfterStore() throws Exception {
+		Program p = new Linker().link(new Assembler().assemble(LOOP));
+		for (ExecutionMode mode : ExecutionMode.values()) {
+			CPU cpu = load(p, mode);
+			Debugger debugger = cpu.getDebugger();
+			debugger.addWatchpoint(0, 1, false); // the loop stores to 0, then loads it back
+
+			for (int pass = 1; pass <= 2; pass++) {
+				cpu.start();
+				assertEquals(StopReason.WATCHPOINT, cpu.getStopReason(), mode.name());
+				assertEquals(0, debugger.getWatchedAddress(), mode.name());
+				assertEquals(pass, cpu.getRegisters()[MipsIsa.$t0], mode.name());
+				int lw = cpu.getPC(); // stopped just after the sw
+				assertEquals(0x23, cpu.getMemory().read(lw) >>> 26, mode.name());
+			}
+			debugger.clearWatchpoints();
+			cpu.start();
+			assertEquals(StopReason.FINISHED, cpu.getStopReason(), mode.name());
+			assertArrayEquals(run(p, mode).getRegisters(), cpu.getRegisters(), mode.name());
+		}
+	}
+
+	@Test
+	void testWatchpointOnLoads() throws Exception {
+		Program p = new Linker().link(new Assembler().assemble(LOOP));
+		CPU cpu = load(p, ExecutionMode.INTERPRETER);
+		cpu.getDebugger().addWatchpoint(0, 1, true);
+		cpu.start(); // the sw
+		cpu.start(); // then the lw
+		assertEquals(StopReason.WATCHPOINT, cpu.getStopReason());
+		assertEquals(0x4, cpu.getMemory().read(cpu.getPC()) >>> 26); // stopped at the beq after the lw
+	}
+
+	@Test
+	void testOutsideTheText() throws Exception {
+		Program p = new Linker().link(new Assembler().assemble(SPIN));
+		CPU cpu = load(p, ExecutionMode.INTERPRETER);
+		Debugger debugger = cpu.getDebugger();
+		int outside = CPU.PC_STARTING_ADDRESS + p.bin.length;
+		assertThrows(IllegalArgumentException.class, () -> debugger.addBreakpoint(outside));
+		assertFalse(debugger.isBreakpoint(outside));
+
+		// no trap can follow a watched store run from outside the text, so it isn't reported
+		cpu.getMemory().write(outside, 0xAC000000); // sw $0 0($0)
+		cpu.getMemory().write(outside + 1, 0xFFFFFFFF);
+		debugger.addWatchpoint(0, 1, false);
+		cpu.setPC(outside);
+		cpu.start();
+		assertEquals(StopReason.FINISHED, cpu.getStopReason());
+		assertEquals(outside + 1, cpu.getPC());
+	}
+
+	@Test
+	void testLimitStopsOnBreakpoint() throws Exception {
+		Program p = new Linker().link(new Assembler().assemble(SPIN));
+		CPU cpu = load(p, ExecutionMode.INTERPRETER);
+		Debugger debugger = cpu.getDebugger();
+		debugger.addBreakpoint(CPU.PC_STARTING_ADDRESS + 1); // the j
+
+		assertEquals(StopReason.INSTRUCTION_BUDGET, cpu.run(1, null));
+		assertEquals(CPU.PC_STARTING_ADDRESS + 1, cpu.getPC());
+		cpu.start(); // the breakpoint still stops the next run, before the j
+		assertEquals(StopReason.BREAKPOINT, cpu.getStopReason());
+		assertEquals(1, cpu.getInstructionCount());
+		cpu.start();
+		assertEquals(StopReason.BREAKPOINT, cpu.getStopReason());
+		assertEquals(3, cpu.getInstructionCount()); // once round
+	}
+
+	private static CPU load(Program p, ExecutionMode mode) throws Exception {
+		CPU cpu = new CPU();
+		cpu.setExecutionMode(mode);
+		cpu.loadProgram(p);
+		return cpu;
+	}
+
+	private static CPU run(Program p, ExecutionMode mode) throws Exception {
+		CPU cpu = load(p, mode);
+		cpu.start();
+		return cpu;
+	}
+
+}
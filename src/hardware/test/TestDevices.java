@@ -0,0 +1,95 @@
+package hardware.test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.jupiter.api.Test;
+
+import hardware.ExecutionMode;
+import hardware.MipsIsa;
+import hardware.cpu.CPU;
+import hardware.device.BlockDevice;
+import hardware.device.ConsoleDevice;
+import hardware.device.DeviceBus;
+import hardware.device.TimerDevice;
+import hardware.memory.Memory;
+import software.assembly.Assembler;
+import software.datatypes.Program;
+import software.linking.Linker;
+
+/**
+ * Unit tests for device package
+ */
+class TestDevices {
+
+	private static final String DEVICES = "./src/hardware/test/devices.s";
+
+	@Test
+	void testDevicesInEveryMode() throws Exception {
+		Program p = new Linker().link(new Assembler().assemble(DEVICES));
+		Path disk = Files.createTempFile("disk", ".img");
+		byte[] image = new byte[2 * BlockDevice.BLOCK_SIZE];
+		image[BlockDevice.BLOCK_SIZE] = 'x'; // first byte of block 1
+		Files.write(disk, image);
+		try (FileChannel file = FileChannel.open(disk, StandardOpenOption.READ)) {
+			for (ExecutionMode mode : ExecutionMode.values()) {
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				DeviceBus bus = new DeviceBus();
+				bus.map(DeviceBus.WINDOW_START, new ConsoleDevice(new ByteArrayInputStream(new byte[] { 'k' }), out));
+				bus.map(DeviceBus.WINDOW_START + 1024, new TimerDevice(() -> 5));
+				bus.map(DeviceBus.WINDOW_START + 2048, new BlockDevice(file));
+
+				CPU cpu = new CPU();
+				cpu.setExecutionMode(mode);
+				cpu.setDevices(bus);
+				cpu.loadProgram(p);
+				cpu.start();
+
+				int[] R = cpu.getRegisters();
+				assertEquals("hi", out.toString(StandardCharsets.US_ASCII), mode.name());
+				assertEquals(1, R[MipsIsa.$s1], mode.name()); // a character waiting
+				assertEquals('k', R[MipsIsa.$s2], mode.name());
+				assertEquals(0, R[MipsIsa.$s4], mode.name()); // high word of the timer
+				assertEquals('x', R[MipsIsa.$s6], mode.name());
+				assertEquals(BlockDevice.OK, R[MipsIsa.$s7], mode.name());
+				assertEquals(2000, R[MipsIsa.$t5], mode.name()); // transmitter always ready
+				for (int page : cpu.getMemory().getAllocatedPages()) {
+					assertFalse(DeviceBus.isDevice(page << Memory.PAGE_BITS), mode.name()); // nor memory
+				}
+			}
+		} finally {
+			Files.delete(disk);
+		}
+	}
+
+	@Test
+	void testWindowIsRamWithoutDevices() throws Exception {
+		Program p = new Linker().link(new Assembler().assemble(DEVICES));
+		CPU cpu = new CPU();
+		cpu.loadProgram(p);
+		cpu.start();
+
+		int[] R = cpu.getRegisters();
+		assertEquals(105, cpu.getMemory().read(DeviceBus.WINDOW_START + 3));
+		assertEquals(0, R[MipsIsa.$s1]);
+		assertEquals(0, R[MipsIsa.$t5]); // nothing stored at the transmitter control
+	}
+
+	@Test
+	void testMapRejectsOverlap() {
+		DeviceBus bus = new DeviceBus();
+		bus.map(DeviceBus.WINDOW_START, new TimerDevice());
+		assertThrows(IllegalArgumentException.class, () -> bus.map(DeviceBus.WINDOW_START, new TimerDevice()));
+		assertThrows(IllegalArgumentException.class, () -> bus.map(DeviceBus.WINDOW_START + 1, new TimerDevice()));
+		assertThrows(IllegalArgumentException.class, () -> bus.map(0x1000_0000, new TimerDevice()));
+		assertEquals(0, bus.read(DeviceBus.WINDOW_START + 4096)); // nothing mapped
+	}
+
+}
@@ -0,0 +1,193 @@
+package hardware.test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import hardware.ExecutionMode;
+import hardware.cpu.CPU;
+import hardware.cpu.PipelineTiming;
+import hardware.memory.DirectMemory;
+import hardware.memory.Memory;
+import software.assembly.Assembler;
+import software.datatypes.Program;
+import software.elf.ElfFile;
+import software.exceptions.InvalidExecutableException;
+import software.linking.Linker;
+
+/**
+ * Unit tests for loading ELF executables
+ */
+class TestElf {
+
+	private static final String PIPELINE = "./src/hardware/test/pipeline.s";
+
+	private static final int TEXT_BYTES = 4096; // a whole page of words, padded with zeros after the program
+	private static final int BSS_WORDS = 6;
+
+	@Test
+	void testRunsLikeTheAssembledProgram() throws Exception {
+		Program p = new Linker().link(new Assembler().assemble(PIPELINE));
+		for (ByteOrder order : new ByteOrder[] { ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN }) {
+			Path file = write(p, order);
+			try {
+				ElfFile elf = ElfFile.read(file);
+				assertEquals(order == ByteOrder.BIG_ENDIAN, elf.isBigEndian());
+				assertEquals(CPU.PC_STARTING_ADDRESS, elf.getEntry());
+				assertEquals(p.labels.get("loop"), elf.getLabels().get("loop"));
+				assertEquals(p.labels.get("done"), elf.getLabels().get("done"));
+				assertFalse(elf.getLabels().containsKey("arr")); // data, not text
+				assertEquals(CPU.STATIC_DATA, elf.getSymbols().get("arr"));
+
+				for (ExecutionMode mode : ExecutionMode.values()) {
+					CPU expected = new CPU();
+					expected.setExecutionMode(mode);
+					expected.loadProgram(p);
+					expected.start();
+
+					for (CPU cpu : new CPU[] { new CPU(), new CPU(new DirectMemory()) }) {
+						cpu.setExecutionMode(mode);
+						cpu.loadExecutable(elf);
+						cpu.start();
+						assertArrayEquals(expected.getRegisters(), cpu.getRegisters(), order + " " + mode);
+						assertEquals(expected.getInstructionCount(), cpu.getInstructionCount(), order + " " + mode);
+					}
+				}
+			} finally {
+				Files.delete(file);
+			}
+		}
+	}
+
+	@Test
+	void testSymbolsProfile() throws Exception {
+		Program p = new Linker().link(new Assembler().assemble(PIPELINE));
+		Path file = write(p, ByteOrder.BIG_ENDIAN);
+		try {
+			ElfFile elf = ElfFile.read(file);
+			CPU cpu = new CPU();
+			cpu.setExecutionMode(ExecutionMode.PIPELINE);
+			cpu.loadExecutable(elf);
+			cpu.start();
+
+			List<PipelineTiming.Region> regions = cpu.getPipelineTiming().byLabel(elf.getLabels());
+			assertEquals(2, regions.size());
+			assertEquals("loop", regions.get(0).getLabel());
+			assertEquals(22, regions.get(0).getInstructions());
+			assertEquals("done", regions.get(1).getLabel());
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	void testSegmentsSharedWithFile() throws Exception {
+		Program p = new Linker().link(new Assembler().assemble(PIPELINE));
+		Path file = write(p, ByteOrder.nativeOrder());
+		try {
+			byte[] written = Files.readAllBytes(file);
+			CPU cpu = new CPU(new DirectMemory());
+			Memory M = cpu.getMemory();
+			M.write(CPU.STATIC_DATA + 2, 99); // left over in what becomes bss
+			cpu.loadExecutable(ElfFile.read(file));
+
+			assertEquals(p.bin[0], M.read(CPU.PC_STARTING_ADDRESS));
+			assertEquals(5, M.read(CPU.STATIC_DATA));
+			assertEquals(7, M.read(CPU.STATIC_DATA + 1));
+			assertEquals(0, M.read(CPU.STATIC_DATA + 2));
+			assertEquals(1, M.getPagesShared()); // the whole text page, the data doesn't fill one
+
+			M.write(CPU.PC_STARTING_ADDRESS + 100, 42); // copies the page rather than writing the file
+			assertEquals(0, M.getPagesShared());
+			assertEquals(42, M.read(CPU.PC_STARTING_ADDRESS + 100));
+			assertEquals(p.bin[0], M.read(CPU.PC_STARTING_ADDRESS));
+			assertArrayEquals(written, Files.readAllBytes(file));
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	void testRejectsOtherFiles() throws Exception {
+		Path file = Files.createTempFile("program", ".s");
+		try {
+			Files.write(file, Files.readAllBytes(Path.of(PIPELINE)));
+			assertThrows(InvalidExecutableException.class, () -> ElfFile.read(file));
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	/**
+	 * Write p as an executable: text at PC_STARTING_ADDRESS, data at
+	 * STATIC_DATA followed by some bss, and a symbol table with p's labels and
+	 * arr. Byte addresses are four per word, as a linker would lay them out.
+	 */
+	private static Path write(Program p, ByteOrder order) throws Exception {
+		int dataOffset = 2 * TEXT_BYTES;
+		ByteBuffer elf = ByteBuffer.allocate(dataOffset + p.staticData.length * 4).order(order);
+
+		StringBuilder strings = new StringBuilder("\0");
+		ByteBuffer symbols = ByteBuffer.allocate(16 * (p.labels.size() + 2)).order(order);
+		symbols.position(16); // the null symbol
+		for (String label : p.labels.keySet()) {
+			int offset = p.labels.get(label) - CPU.PC_STARTING_ADDRESS;
+			symbol(symbols, strings, label, CPU.PC_STARTING_ADDRESS + offset * 4, 2); // STT_FUNC
+		}
+		symbol(symbols, strings, "arr", CPU.STATIC_DATA, 1); // STT_OBJECT
+
+		byte data = (byte) (order == ByteOrder.LITTLE_ENDIAN ? 1 : 2);
+		elf.put(new byte[] { 0x7F, 'E', 'L', 'F', 1, data, 1 }); // 32 bit, byte order, version
+		elf.putShort(16, (short) 2).putShort(18, (short) ElfFile.EM_MIPS).putInt(20, 1);
+		elf.putInt(24, CPU.PC_STARTING_ADDRESS).putInt(28, 52).putInt(32, 256);
+		elf.putShort(40, (short) 52).putShort(42, (short) 32).putShort(44, (short) 2);
+		elf.putShort(46, (short) 40).putShort(48, (short) 3).putShort(50, (short) 2);
+
+		programHeader(elf, 52, TEXT_BYTES, CPU.PC_STARTING_ADDRESS, TEXT_BYTES, TEXT_BYTES, 5); // r-x
+		programHeader(elf, 84, dataOffset, CPU.STATIC_DATA, p.staticData.length * 4,
+				(p.staticData.length + BSS_WORDS) * 4, 6); // rw-
+
+		byte[] names = strings.toString().getBytes(StandardCharsets.US_ASCII);
+		elf.put(128, names);
+		elf.put(512, symbols.array());
+		sectionHeader(elf, 256 + 40, 2, 512, symbols.capacity(), 2, 16); // SHT_SYMTAB, strings in section 2
+		sectionHeader(elf, 256 + 80, 3, 128, names.length, 0, 0); // SHT_STRTAB
+
+		for (int i = 0; i < p.bin.length; i++) {
+			elf.putInt(TEXT_BYTES + i * 4, p.bin[i]);
+		}
+		for (int i = 0; i < p.staticData.length; i++) {
+			elf.putInt(dataOffset + i * 4, p.staticData[i]);
+		}
+
+		Path file = Files.createTempFile("program", ".elf");
+		Files.write(file, elf.array());
+		return file;
+	}
+
+	private static void symbol(ByteBuffer symbols, StringBuilder strings, String name, int value, int type) {
+		symbols.putInt(strings.length()).putInt(value).putInt(0).put((byte) (0x10 | type)).put((byte) 0)
+				.putShort((short) 1);
+		strings.append(name).append('\0');
+	}
+
+	private static void programHeader(ByteBuffer elf, int at, int offset, int vaddr, int filesz, int memsz,
+			int flags) {
+		elf.putInt(at, 1).putInt(at + 4, offset).putInt(at + 8, vaddr).putInt(at + 12, vaddr);
+		elf.putInt(at + 16, filesz).putInt(at + 20, memsz).putInt(at + 24, flags).putInt(at + 28, 4096);
+	}
+
+	private static void sectionHeader(ByteBuffer elf, int at, int type, int offset, int size, int link,
+			int entsize) {
+		elf.putInt(at + 4, type).putInt(at + 16, offset).putInt(at + 20, size).putInt(at + 24, link)
+				.putInt(at + 36, entsize);
+	}
+
+}
@@ -0,0 +1,133 @@
+package hardware.test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+
+import hardware.ExecutionMode;
+import hardware.MipsIsa;
+import hardware.cpu.CPU;
+import hardware.cpu.Snapshot;
+import hardware.cpu.StopReason;
+import software.assembly.Assembler;
+import software.assembly.InstructionTranslator;
+import software.datatypes.Program;
+import software.linking.Linker;
+
+/**
+ * Unit tests for coprocessor 0 exceptions
+ */
+class TestExceptions {
+
+	private static final String EXCEPTIONS = "./src/hardware/test/exceptions.s";
+	private static final String OVERFLOW = "./src/hardware/test/overflow.s";
+
+	@Test
+	void testEncoding() throws Exception {
+		InstructionTranslator translator = new InstructionTranslator();
+		assertEquals(0x40087000, translator.parseStatement("mfc0 $t0 $14").value);
+		assertEquals(0x40887000, translator.parseStatement("mtc0 $t0 $14").value);
+		assertEquals(0x42000018, translator.parseStatement("eret").value);
+		assertEquals("mfc0 $t0 $14", translator.parseStatement("mfc0 $t0 $14").getASM());
+	}
+
+	@Test
+	void testGuestHandler() throws Exception {
+		Program p = program();
+		CPU expected = null;
+		for (ExecutionMode mode : ExecutionMode.values()) {
+			CPU cpu = new CPU();
+			cpu.setExecutionMode(mode);
+			cpu.loadProgram(p);
+			cpu.start();
+			int[] R = cpu.getRegisters();
+
+			assertEquals(StopReason.FINISHED, cpu.getStopReason(), mode.name());
+			assertEquals(5, cpu.getExceptionCount(), mode.name());
+			assertEquals(5, R[MipsIsa.$s4], mode.name()); // handler ran once for each
+			assertEquals(4, R[MipsIsa.$s2], mode.name()); // and came back after each
+			assertEquals(0, R[MipsIsa.$s1], mode.name()); // destinations left alone
+			assertEquals(0, R[MipsIsa.$s3], mode.name());
+			assertEquals(MipsIsa.EXC_OV * 2 + MipsIsa.EXC_RI + MipsIsa.EXC_ADEL + MipsIsa.EXC_ADES, R[MipsIsa.$s7],
+					mode.name());
+			assertEquals(0x80000001, R[MipsIsa.$s5], mode.name()); // BadVAddr of the sw
+			assertEquals(0, cpu.getCP0(MipsIsa.C0_STATUS) & MipsIsa.STATUS_EXL, mode.name());
+			if (expected == null) {
+				expected = cpu;
+			}
+			assertArrayEquals(expected.getRegisters(), R, mode.name());
+			assertEquals(expected.getInstructionCount(), cpu.getInstructionCount(), mode.name());
+		}
+	}
+
+	@Test
+	void testUnhandledStops() throws Exception {
+		Program p = new Linker().link(new Assembler().assemble(OVERFLOW));
+		int loop = p.labels.get("loop");
+		for (ExecutionMode mode : ExecutionMode.values()) {
+			CPU cpu = new CPU();
+			cpu.setExecutionMode(mode);
+			cpu.loadProgram(p);
+			cpu.getDebugger();
+			cpu.start();
+
+			// the JIT runs the loop compiled, and leaves it just before the addi that overflows
+			assertEquals(StopReason.EXCEPTION, cpu.getStopReason(), mode.name()); // with a debugger attached too
+			assertEquals(loop, cpu.getPC(), mode.name());
+			assertEquals(loop, cpu.getCP0(MipsIsa.C0_EPC), mode.name());
+			assertEquals(MipsIsa.EXC_OV << 2, cpu.getCP0(MipsIsa.C0_CAUSE), mode.name());
+			assertEquals(Integer.MAX_VALUE, cpu.getRegisters()[MipsIsa.$t1], mode.name());
+			assertEquals(1 + 2 * 0xFFFF + 1, cpu.getInstructionCount(), mode.name());
+
+			// carrying on runs it again
+			cpu.start();
+			assertEquals(StopReason.EXCEPTION, cpu.getStopReason(), mode.name());
+			assertEquals(loop, cpu.getPC(), mode.name());
+			assertEquals(2, cpu.getExceptionCount(), mode.name());
+
+			// until it is dealt with
+			cpu.setRegister(MipsIsa.$t1, 0);
+			assertEquals(StopReason.INSTRUCTION_BUDGET, cpu.run(1000, null), mode.name());
+		}
+	}
+
+	@Test
+	void testSnapshotKeepsCoprocessor0() throws Exception {
+		Program p = new Linker().link(new Assembler().assemble(OVERFLOW));
+		CPU cpu = new CPU();
+		cpu.loadProgram(p);
+		cpu.start();
+		cpu.setCP0(MipsIsa.C0_EBASE, p.labels.get("loop"));
+
+		Path file = Files.createTempFile("snapshot", ".bin");
+		try {
+			cpu.snapshot().write(file);
+			for (CPU fork : new CPU[] { cpu.snapshot().fork(), Snapshot.read(file).fork() }) {
+				assertEquals(cpu.getCP0(MipsIsa.C0_EPC), fork.getCP0(MipsIsa.C0_EPC));
+				assertEquals(cpu.getCP0(MipsIsa.C0_CAUSE), fork.getCP0(MipsIsa.C0_CAUSE));
+				assertEquals(cpu.getCP0(MipsIsa.C0_STATUS), fork.getCP0(MipsIsa.C0_STATUS));
+				assertEquals(p.labels.get("loop"), fork.getCP0(MipsIsa.C0_EBASE));
+			}
+		} finally {
+			Files.delete(file);
+		}
+
+		cpu.loadProgram(p);
+		assertEquals(0, cpu.getCP0(MipsIsa.C0_EBASE)); // cleared for the new program
+		assertEquals(0, cpu.getExceptionCount());
+	}
+
+	/**
+	 * exceptions.s with a reserved instruction patched in, which the assembler
+	 * won't assemble
+	 */
+	private static Program program() throws Exception {
+		Program p = new Linker().link(new Assembler().assemble(EXCEPTIONS));
+		p.bin[p.labels.get("reserved") - CPU.PC_STARTING_ADDRESS] = 0x3E << 26;
+		return p;
+	}
+
+}
@@ -0,0 +1,186 @@
+package hardware.test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import hardware.cpu.CPU;
+import hardware.memory.DirectMemory;
+import hardware.memory.Memory;
+import hardware.memory.PagedMemory;
+
+/**
+ * Unit tests for memory package
+ */
+class TestMemory {
+
+	@Test
+	void testUnmappedReadsAreZero() {
+		unmappedReadsAreZero(new PagedMemory());
+		unmappedReadsAreZero(new DirectMemory());
+	}
+
+	@Test
+	void testReadWrite() {
+		readWrite(new PagedMemory());
+		readWrite(new DirectMemory());
+	}
+
+	@Test
+	void testBlockWriteAcrossPages() {
+		blockWriteAcrossPages(new PagedMemory());
+		blockWriteAcrossPages(new DirectMemory());
+	}
+
+	@Test
+	void testViewsShareCompareAndSet() {
+		viewsShareCompareAndSet(new PagedMemory());
+		viewsShareCompareAndSet(new DirectMemory());
+	}
+
+	@Test
+	void testClearKeepsPages() {
+		clearKeepsPages(new PagedMemory());
+		clearKeepsPages(new DirectMemory());
+	}
+
+	@Test
+	void testForkCopiesOnWrite() {
+		forkCopiesOnWrite(new PagedMemory());
+		forkCopiesOnWrite(new DirectMemory());
+	}
+
+	@Test
+	void testForkThroughAnotherView() {
+		forkThroughAnotherView(new PagedMemory());
+		forkThroughAnotherView(new DirectMemory());
+	}
+
+	@Test
+	void testDirectMemorySlabs() {
+		DirectMemory m = new DirectMemory();
+
+		// enough pages to need more than one slab
+		for (int i = 0; i < DirectMemory.SLAB_PAGES * 2 + 1; i++) {
+			m.write(CPU.START_DYNAMIC_DATA + i * Memory.PAGE_SIZE, i);
+		}
+		for (int i = 0; i < DirectMemory.SLAB_PAGES * 2 + 1; i++) {
+			assertEquals(i, m.read(CPU.START_DYNAMIC_DATA + i * Memory.PAGE_SIZE));
+			assertEquals(0, m.read(CPU.START_DYNAMIC_DATA + i * Memory.PAGE_SIZE + 1));
+		}
+	}
+
+	private void unmappedReadsAreZero(Memory m) {
+		assertEquals(0, m.read(CPU.PC_STARTING_ADDRESS));
+		assertEquals(0, m.read(CPU.STATIC_DATA));
+		assertEquals(0, m.read(CPU.END_DYNAMIC_DATA));
+		assertEquals(0, m.getPagesAllocated());
+	}
+
+	private void readWrite(Memory m) {
+		m.write(CPU.PC_STARTING_ADDRESS, 1);
+		m.write(CPU.STATIC_DATA, 2);
+		m.write(CPU.END_DYNAMIC_DATA, 3);
+		m.write(CPU.PC_STARTING_ADDRESS + 1, -4);
+
+		assertEquals(1, m.read(CPU.PC_STARTING_ADDRESS));
+		assertEquals(2, m.read(CPU.STATIC_DATA));
+		assertEquals(3, m.read(CPU.END_DYNAMIC_DATA));
+		assertEquals(-4, m.read(CPU.PC_STARTING_ADDRESS + 1));
+		assertEquals(3, m.getPagesAllocated());
+	}
+
+	private void viewsShareCompareAndSet(Memory m) {
+		Memory view = m.view();
+		assertEquals(0, view.readVolatile(CPU.STATIC_DATA));
+
+		assertTrue(view.compareAndSet(CPU.STATIC_DATA, 0, 5));
+		assertFalse(m.compareAndSet(CPU.STATIC_DATA, 0, 6));
+		assertEquals(5, m.read(CPU.STATIC_DATA));
+
+		m.write(CPU.STATIC_DATA + 1, 9);
+		assertEquals(9, view.readVolatile(CPU.STATIC_DATA + 1));
+		assertEquals(1, view.getPagesAllocated());
+	}
+
+	private void clearKeepsPages(Memory m) {
+		Memory view = m.view();
+		view.read(CPU.STATIC_DATA); // the reader's cached page is zeroed in place
+		m.write(CPU.STATIC_DATA, 1);
+		m.write(CPU.END_DYNAMIC_DATA, 2);
+		m.clear();
+
+		assertEquals(0, view.read(CPU.STATIC_DATA));
+		assertEquals(0, m.read(CPU.END_DYNAMIC_DATA));
+		assertEquals(2, m.getPagesAllocated());
+
+		// pages written after a clear are zeroed by the next one
+		m.write(CPU.STATIC_DATA + 1, 3);
+		view.write(CPU.END_DYNAMIC_DATA - 1, 4);
+		m.clear();
+		assertEquals(0, m.read(CPU.STATIC_DATA + 1));
+		assertEquals(0, view.read(CPU.END_DYNAMIC_DATA - 1));
+		assertEquals(2, m.getPagesAllocated());
+
+		// a page the view still had cached for writing is dirty again once written
+		view.write(CPU.END_DYNAMIC_DATA - 1, 7);
+		m.clear();
+		assertEquals(0, view.read(CPU.END_DYNAMIC_DATA - 1));
+		assertEquals(0, m.read(CPU.END_DYNAMIC_DATA - 1));
+	}
+
+	private void forkCopiesOnWrite(Memory m) {
+		m.write(CPU.STATIC_DATA, 1);
+		m.write(CPU.STATIC_DATA + Memory.PAGE_SIZE, 2);
+		assertEquals(1, m.read(CPU.STATIC_DATA)); // cached for reading before the fork
+		Memory fork = m.fork();
+
+		m.write(CPU.STATIC_DATA, 3);
+		fork.write(CPU.STATIC_DATA + Memory.PAGE_SIZE, 4);
+		assertEquals(3, m.read(CPU.STATIC_DATA));
+		assertEquals(2, m.read(CPU.STATIC_DATA + Memory.PAGE_SIZE));
+		assertEquals(1, fork.read(CPU.STATIC_DATA));
+		assertEquals(4, fork.read(CPU.STATIC_DATA + Memory.PAGE_SIZE));
+		assertEquals(2, fork.getPagesAllocated());
+		assertEquals(1, fork.getPagesShared()); // the page it didn't write
+
+		// clearing a fork drops its shared pages without touching the original
+		fork.clear();
+		assertEquals(0, fork.read(CPU.STATIC_DATA));
+		assertEquals(0, fork.read(CPU.STATIC_DATA + Memory.PAGE_SIZE));
+		assertEquals(2, m.read(CPU.STATIC_DATA + Memory.PAGE_SIZE));
+		assertEquals(1, fork.getPagesAllocated());
+		assertEquals(0, fork.getPagesShared());
+	}
+
+	private void forkThroughAnotherView(Memory m) {
+		Memory view = m.view();
+		view.write(CPU.STATIC_DATA, 1); // cached for writing in the view
+		assertEquals(1, m.read(CPU.STATIC_DATA)); // and for reading in m
+		Memory fork = m.fork();
+
+		view.write(CPU.STATIC_DATA, 2); // copies the page now shared with the fork
+		assertEquals(1, fork.read(CPU.STATIC_DATA));
+		assertEquals(2, m.read(CPU.STATIC_DATA)); // sees the copy, not the fork's page
+		m.write(CPU.STATIC_DATA + 1, 3);
+		assertEquals(3, view.read(CPU.STATIC_DATA + 1));
+		assertEquals(0, fork.read(CPU.STATIC_DATA + 1));
+	}
+
+	private void blockWriteAcrossPages(Memory m) {
+		int[] data = new int[Memory.PAGE_SIZE * 2 + 7];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = i + 1;
+		}
+		int address = CPU.STATIC_DATA + Memory.PAGE_SIZE - 3;
+		m.write(address, data);
+
+		for (int i = 0; i < data.length; i++) {
+			assertEquals(i + 1, m.read(address + i));
+		}
+		assertEquals(0, m.read(address - 1));
+		assertEquals(0, m.read(address + data.length));
+		assertEquals(4, m.getPagesAllocated());
+	}
+
+}
@@ -0,0 +1,186 @@
+package hardware.test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.jupiter.api.Test;
+
+import hardware.MipsIsa;
+import hardware.cpu.CPU;
+import hardware.device.BlockDevice;
+import hardware.device.ConsoleDevice;
+import hardware.device.DeviceBus;
+import hardware.device.TimerDevice;
+import hardware.exceptions.ReplayDivergenceException;
+import hardware.replay.Recorder;
+import hardware.replay.Replayer;
+import hardware.syscall.Syscalls;
+import software.assembly.Assembler;
+import software.datatypes.Program;
+import software.linking.Linker;
+
+/**
+ * Unit tests for replay package
+ */
+class TestReplay {
+
+	private static final String SYSCALL = "./src/hardware/test/syscall.s";
+	private static final String DEVICES = "./src/hardware/test/devices.s";
+	private static final String LOOP = "./src/hardware/test/loop.s";
+
+	@Test
+	void testReplaySyscallsWithoutInput() throws Exception {
+		Program p = new Linker().link(new Assembler().assemble(SYSCALL));
+		Path journal = Files.createTempFile("journal", ".rpl");
+		Path file = Files.createTempFile("syscall", ".txt");
+		try {
+			CPU recorded;
+			ByteArrayOutputStream recordedOut = new ByteArrayOutputStream();
+			try (Recorder recorder = new Recorder(journal, 16)) {
+				recorded = syscallCPU("40\n2\n", recordedOut);
+				recorded.setJournal(recorder);
+				recorded.loadProgram(p);
+				writeName(recorded, file);
+				recorded.start();
+			}
+			Files.delete(file); // replaying must not need it
+			assertTrue(Files.size(journal) < 256, Files.size(journal) + " bytes");
+
+			ByteArrayOutputStream replayedOut = new ByteArrayOutputStream();
+			try (Replayer replayer = new Replayer(journal)) {
+				CPU replayed = syscallCPU("", replayedOut);
+				replayed.setJournal(replayer);
+				replayed.loadProgram(p);
+				writeName(replayed, file);
+				replayed.start();
+
+				assertTrue(replayer.isComplete());
+				assertArrayEquals(recorded.getRegisters(), replayed.getRegisters());
+				assertEquals(recorded.getInstructionCount(), replayed.getInstructionCount());
+				assertEquals("sum=42\n", replayedOut.toString(StandardCharsets.US_ASCII));
+				assertEquals(7, replayed.getSyscalls().getExitCode());
+				assertFalse(Files.exists(file));
+			}
+		} finally {
+			Files.deleteIfExists(file);
+			Files.delete(journal);
+		}
+	}
+
+	@Test
+	void testReplayDeviceReads() throws Exception {
+		Program p = new Linker().link(new Assembler().assemble(DEVICES));
+		Path journal = Files.createTempFile("journal", ".rpl");
+		Path disk = Files.createTempFile("disk", ".img");
+		byte[] image = new byte[2 * BlockDevice.BLOCK_SIZE];
+		image[BlockDevice.BLOCK_SIZE] = 'x';
+		Files.write(disk, image);
+		try (FileChannel file = FileChannel.open(disk, StandardOpenOption.READ)) {
+			CPU recorded = new CPU();
+			DeviceBus bus = new DeviceBus();
+			bus.map(DeviceBus.WINDOW_START, new ConsoleDevice(new ByteArrayInputStream(new byte[] { 'k' }),
+					new ByteArrayOutputStream()));
+			bus.map(DeviceBus.WINDOW_START + 1024, new TimerDevice());
+			bus.map(DeviceBus.WINDOW_START + 2048, new BlockDevice(file));
+			recorded.setDevices(bus);
+			try (Recorder recorder = new Recorder(journal)) {
+				recorded.setJournal(recorder);
+				recorded.loadProgram(p);
+				recorded.start();
+			}
+
+			CPU replayed = new CPU();
+			replayed.setDevices(new DeviceBus()); // nothing mapped, every load comes from the journal
+			try (Replayer replayer = new Replayer(journal)) {
+				replayed.setJournal(replayer);
+				replayed.loadProgram(p);
+				replayed.start();
+				assertTrue(replayer.isComplete());
+			}
+			assertArrayEquals(recorded.getRegisters(), replayed.getRegisters());
+			assertEquals('x', replayed.getRegisters()[MipsIsa.$s6]);
+		} finally {
+			Files.delete(disk);
+			Files.delete(journal);
+		}
+	}
+
+	@Test
+	void testDivergenceCaughtByHash() throws Exception {
+		Program p = new Linker().link(new Assembler().assemble(LOOP));
+		Path journal = Files.createTempFile("journal", ".rpl");
+		try {
+			try (Recorder recorder = new Recorder(journal, 1000)) {
+				CPU cpu = new CPU();
+				cpu.setJournal(recorder);
+				cpu.loadProgram(p);
+				cpu.start();
+			}
+			try (Replayer replayer = new Replayer(journal)) {
+				CPU cpu = new CPU();
+				cpu.setJournal(replayer);
+				cpu.loadProgram(p);
+				cpu.setRegister(MipsIsa.$s7, 1); // not in the recording
+				ReplayDivergenceException e = assertThrows(ReplayDivergenceException.class, cpu::start);
+				assertEquals(1000, e.getInstructionCount());
+			}
+		} finally {
+			Files.delete(journal);
+		}
+	}
+
+	@Test
+	void testOneLoadPerJournal() throws Exception {
+		Program p = new Linker().link(new Assembler().assemble(LOOP));
+		Path journal = Files.createTempFile("journal", ".rpl");
+		try {
+			try (Recorder recorder = new Recorder(journal)) {
+				CPU cpu = new CPU();
+				cpu.setJournal(recorder);
+				cpu.loadProgram(p);
+				cpu.start();
+				assertThrows(IllegalStateException.class, () -> cpu.loadProgram(p));
+			}
+			try (Replayer replayer = new Replayer(journal)) {
+				CPU cpu = new CPU();
+				cpu.setJournal(replayer);
+				cpu.loadProgram(p);
+				cpu.start();
+				assertThrows(IllegalStateException.class, () -> cpu.loadProgram(p));
+			}
+			try (Replayer replayer = new Replayer(journal)) { // the recording wasn't disturbed
+				CPU cpu = new CPU();
+				cpu.setJournal(replayer);
+				cpu.loadProgram(p);
+				cpu.start();
+				assertEquals(3000, cpu.getRegisters()[MipsIsa.$t0]);
+			}
+		} finally {
+			Files.delete(journal);
+		}
+	}
+
+	private static CPU syscallCPU(String input, ByteArrayOutputStream out) {
+		CPU cpu = new CPU();
+		cpu.setSyscalls(new Syscalls(
+				Channels.newChannel(new ByteArrayInputStream(input.getBytes(StandardCharsets.US_ASCII))),
+				Channels.newChannel(out), Channels.newChannel(new ByteArrayOutputStream())));
+		return cpu;
+	}
+
+	private static void writeName(CPU cpu, Path file) {
+		String name = file.toString(); // the program opens the name at STATIC_DATA + 256
+		for (int i = 0; i <= name.length(); i++) {
+			cpu.getMemory().write(CPU.STATIC_DATA + 256 + i, i < name.length() ? name.charAt(i) : 0);
+		}
+	}
+
+}
@@ -0,0 +1,135 @@
+package hardware.test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.StringWriter;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import hardware.ExecutionMode;
+import hardware.branch.BranchUnit;
+import hardware.cache.CacheHierarchy;
+import hardware.cpu.BasicBlockVectors;
+import hardware.cpu.CPU;
+import hardware.cpu.SampledSimulation;
+import software.assembly.Assembler;
+import software.datatypes.Program;
+import software.linking.Linker;
+
+/**
+ * Unit tests for sampled simulation
+ */
+class TestSampling {
+
+	private static final String LOOP = "./src/hardware/test/loop.s";
+	private static final String PHASES = "./src/hardware/test/phases.s";
+
+	@Test
+	void testRunStopsAndCarriesOn() throws Exception {
+		Program p = new Linker().link(new Assembler().assemble(LOOP));
+		for (ExecutionMode mode : ExecutionMode.values()) {
+			CPU expected = new CPU();
+			expected.setExecutionMode(mode);
+			expected.loadProgram(p);
+			expected.start();
+
+			CPU cpu = new CPU();
+			cpu.setExecutionMode(mode);
+			cpu.loadProgram(p);
+			assertTrue(cpu.run(100), mode.name());
+			assertTrue(cpu.getInstructionCount() >= 100, mode.name());
+			if (mode == ExecutionMode.INTERPRETER || mode == ExecutionMode.PIPELINE)
+				assertEquals(100, cpu.getInstructionCount(), mode.name());
+			while (cpu.run(1000)) {
+			}
+			assertArrayEquals(expected.getRegisters(), cpu.getRegisters(), mode.name());
+			assertEquals(expected.getInstructionCount(), cpu.getInstructionCount(), mode.name());
+		}
+	}
+
+	@Test
+	void testSampledEstimate() throws Exception {
+		Program p = new Linker().link(new Assembler().assemble(LOOP));
+		CPU full = detailed(p);
+		full.start();
+		double cpi = full.getPipelineTiming().getCPI();
+
+		CPU cpu = detailed(p);
+		SampledSimulation.Estimate estimate = new SampledSimulation(1000, 200, 300).run(cpu);
+		assertEquals(ExecutionMode.PIPELINE, cpu.getExecutionMode()); // put back
+		assertArrayEquals(full.getRegisters(), cpu.getRegisters());
+		assertEquals(full.getInstructionCount(), estimate.getInstructions());
+		assertTrue(estimate.getSamples() >= 32, estimate.toString()); // a sample per 1000 of 33000 instructions
+		assertEquals(cpi, estimate.getCPI().getMean(), cpi * 0.02, estimate.toString());
+		assertTrue(estimate.getCPI().getConfidence() >= 0, estimate.toString());
+		assertEquals(cpi * full.getInstructionCount(), estimate.getCycles(), cpi * full.getInstructionCount() * 0.02);
+		assertEquals(cpu.getCaches().getCaches().size(), estimate.getMissRates().size());
+		assertEquals(estimate.getSamples(), estimate.getCPI().getSamples());
+	}
+
+	@Test
+	void testBasicBlockVectors() throws Exception {
+		Program p = new Linker().link(new Assembler().assemble(PHASES));
+		CPU cpu = new CPU();
+		cpu.loadProgram(p);
+		BasicBlockVectors vectors = BasicBlockVectors.collect(cpu, 500);
+		assertEquals(ExecutionMode.INTERPRETER, cpu.getExecutionMode());
+
+		long total = 0;
+		for (int i = 0; i < vectors.getIntervals(); i++) {
+			assertEquals(total, vectors.getStart(i));
+			total += vectors.getLength(i);
+		}
+		assertEquals(cpu.getInstructionCount(), total);
+		assertEquals(3 * 2000 + 1 + 1 + 5 * 2000, total);
+		int first = p.labels.get("first"), second = p.labels.get("second");
+		assertTrue(vectors.getVector(0).containsKey(first));
+		assertFalse(vectors.getVector(0).containsKey(second));
+		assertTrue(vectors.getVector(vectors.getIntervals() - 1).containsKey(second));
+
+		StringWriter out = new StringWriter();
+		vectors.write(out);
+		String[] lines = out.toString().split("\n");
+		assertEquals(vectors.getIntervals(), lines.length);
+		assertTrue(lines[0].startsWith("T:"), lines[0]);
+		assertTrue(lines[0].contains(":" + (first - CPU.PC_STARTING_ADDRESS + 1) + ":"), lines[0]);
+
+		List<BasicBlockVectors.SimPoint> points = vectors.choose(2, 42);
+		assertEquals(2, points.size());
+		assertTrue(points.get(0).getStart() < 6000, points.toString());
+		assertTrue(points.get(1).getStart() > 6000, points.toString());
+		assertEquals(1.0, points.get(0).getWeight() + points.get(1).getWeight(), 1e-9);
+		assertEquals(6000.0 / total, points.get(0).getWeight(), 0.05);
+	}
+
+	@Test
+	void testSimPointEstimate() throws Exception {
+		Program p = new Linker().link(new Assembler().assemble(PHASES));
+		CPU full = detailed(p);
+		full.start();
+		double cpi = full.getPipelineTiming().getCPI();
+
+		CPU cpu = new CPU();
+		cpu.loadProgram(p);
+		List<BasicBlockVectors.SimPoint> points = BasicBlockVectors.collect(cpu, 500).choose(4, 7);
+
+		cpu = detailed(p);
+		SampledSimulation.Estimate estimate = new SampledSimulation(1000, 100, 500).runSimPoints(cpu, points);
+		assertArrayEquals(full.getRegisters(), cpu.getRegisters());
+		assertEquals(full.getInstructionCount(), estimate.getInstructions());
+		assertEquals(points.size(), estimate.getSamples());
+		assertEquals(cpi, estimate.getCPI().getMean(), cpi * 0.05, estimate.toString());
+		assertTrue(Double.isNaN(estimate.getCPI().getConfidence()));
+	}
+
+	private static CPU detailed(Program p) throws Exception {
+		CPU cpu = new CPU();
+		cpu.setExecutionMode(ExecutionMode.PIPELINE);
+		cpu.setCaches(new CacheHierarchy());
+		cpu.setBranchUnit(new BranchUnit());
+		cpu.loadProgram(p);
+		return cpu;
+	}
+
+}
@@ -0,0 +1,145 @@
+package hardware.test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+
+import hardware.ExecutionMode;
+import hardware.MipsIsa;
+import hardware.cpu.CPU;
+import hardware.memory.PagedMemory;
+import hardware.syscall.Syscalls;
+import software.assembly.Assembler;
+import software.datatypes.Program;
+import software.linking.Linker;
+
+/**
+ * Unit tests for syscall package
+ */
+class TestSyscalls {
+
+	private static final String SYSCALL = "./src/hardware/test/syscall.s";
+
+	@Test
+	void testConsoleFilesAndExit() throws Exception {
+		Program p = new Linker().link(new Assembler().assemble(SYSCALL));
+		Path file = Files.createTempFile("syscall", ".txt");
+		try {
+			for (ExecutionMode mode : ExecutionMode.values()) {
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				Syscalls syscalls = new Syscalls(
+						Channels.newChannel(new ByteArrayInputStream("40\n2\n".getBytes(StandardCharsets.US_ASCII))),
+						Channels.newChannel(out), Channels.newChannel(new ByteArrayOutputStream()));
+				CPU cpu = new CPU();
+				cpu.setExecutionMode(mode);
+				cpu.setSyscalls(syscalls);
+				cpu.loadProgram(p);
+				String name = file.toString(); // the program opens the name at STATIC_DATA + 256
+				for (int i = 0; i <= name.length(); i++) {
+					cpu.getMemory().write(CPU.STATIC_DATA + 256 + i, i < name.length() ? name.charAt(i) : 0);
+				}
+				cpu.start();
+
+				int[] R = cpu.getRegisters();
+				assertEquals("sum=42\n", out.toString(StandardCharsets.US_ASCII), mode.name());
+				assertEquals(CPU.START_DYNAMIC_DATA, R[MipsIsa.$s2], mode.name()); // first sbrk
+				assertEquals(4, R[MipsIsa.$s4], mode.name()); // read back what was written
+				assertEquals('s', cpu.getMemory().read(CPU.START_DYNAMIC_DATA), mode.name());
+				assertEquals('=', cpu.getMemory().read(CPU.START_DYNAMIC_DATA + 3), mode.name());
+				assertEquals("sum=", Files.readString(file), mode.name());
+				assertEquals(7, syscalls.getExitCode(), mode.name());
+				assertEquals(0, R[MipsIsa.$s5], mode.name()); // nothing runs after exit
+			}
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	void testLongTransfersComeUpShort() throws Exception {
+		Path file = Files.createTempFile("syscall", ".bin");
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			Syscalls syscalls = new Syscalls(Channels.newChannel(new ByteArrayInputStream(new byte[0])),
+					Channels.newChannel(out), Channels.newChannel(new ByteArrayOutputStream()));
+			PagedMemory M = new PagedMemory();
+			int[] R = new int[32];
+			int fd = open(syscalls, M, R, file, 1);
+			int buffer = CPU.START_DYNAMIC_DATA;
+			for (int i = 0; i < 10000; i++) {
+				M.write(buffer + i, i);
+			}
+
+			// moves at most MAX_TRANSFER, whatever the program asks for
+			assertEquals(Syscalls.MAX_TRANSFER, transfer(syscalls, M, R, Syscalls.WRITE, fd, buffer, 0x7FFFFFF7));
+			assertEquals(Syscalls.MAX_TRANSFER, Files.size(file));
+			assertEquals(Syscalls.MAX_TRANSFER, transfer(syscalls, M, R, Syscalls.WRITE, 1, buffer, 0x7FFFFFF7));
+			syscalls.flush();
+			assertEquals(Syscalls.MAX_TRANSFER, out.size());
+			close(syscalls, R, fd);
+
+			// and longer than the 4K scratch buffer reads back whole
+			fd = open(syscalls, M, R, file, 0);
+			M.clear();
+			assertEquals(Syscalls.MAX_TRANSFER, transfer(syscalls, M, R, Syscalls.READ, fd, buffer, 0x7FFFFFF7));
+			for (int i = 0; i < 10000; i++) {
+				assertEquals(i & 0xFF, M.read(buffer + i));
+			}
+			assertEquals(0, transfer(syscalls, M, R, Syscalls.READ, fd, buffer, 10)); // the end of the file
+			close(syscalls, R, fd);
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	void testOutputIsBuffered() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		Syscalls syscalls = new Syscalls(Channels.newChannel(new ByteArrayInputStream(new byte[0])),
+				Channels.newChannel(out), Channels.newChannel(new ByteArrayOutputStream()));
+		int[] R = new int[32];
+		R[MipsIsa.$v0] = Syscalls.PRINT_INT;
+		R[MipsIsa.$a0] = Integer.MIN_VALUE;
+		syscalls.execute(R, new PagedMemory());
+		assertEquals(0, out.size()); // nothing written until flushed
+		syscalls.flush();
+		assertEquals("-2147483648", out.toString(StandardCharsets.US_ASCII));
+	}
+
+	private static int open(Syscalls syscalls, PagedMemory M, int[] R, Path file, int flags) {
+		String name = file.toString();
+		for (int i = 0; i <= name.length(); i++) {
+			M.write(CPU.STATIC_DATA + i, i < name.length() ? name.charAt(i) : 0);
+		}
+		R[MipsIsa.$v0] = Syscalls.OPEN;
+		R[MipsIsa.$a0] = CPU.STATIC_DATA;
+		R[MipsIsa.$a1] = flags;
+		syscalls.execute(R, M);
+		assertTrue(R[MipsIsa.$v0] > 2);
+		return R[MipsIsa.$v0];
+	}
+
+	private static int transfer(Syscalls syscalls, PagedMemory M, int[] R, int service, int fd, int buffer,
+			int length) {
+		R[MipsIsa.$v0] = service;
+		R[MipsIsa.$a0] = fd;
+		R[MipsIsa.$a1] = buffer;
+		R[MipsIsa.$a2] = length;
+		syscalls.execute(R, M);
+		return R[MipsIsa.$v0];
+	}
+
+	private static void close(Syscalls syscalls, int[] R, int fd) {
+		R[MipsIsa.$v0] = Syscalls.CLOSE;
+		R[MipsIsa.$a0] = fd;
+		syscalls.execute(R, new PagedMemory());
+	}
+
+}
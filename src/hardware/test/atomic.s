@@ -0,0 +1,17 @@
+.data
+
+count: .word 0
+
+.text
+
+ori $s0 $0 4096
+sll $s0 $s0 16
+ori $t1 $0 2000
+addi $t4 $0 1
+loop: ll $t0 0($s0)
+addu $t0 $t0 $t4
+sc $t0 0($s0)
+beq $t0 $0 loop
+sub $t1 $t1 $t4
+bne $t1 $0 loop
+halt
@@ -0,0 +1,19 @@
+.data
+
+d1: .word 15, 13, 2, 4
+
+.text
+
+addi $t0 $t0 3
+addi $t1 $t1 4
+sub $t2 $t1 $t0
+or $t3 $t1 $t0
+beq $t0 $t0 skip
+addi $t3 $t3 7
+skip: nor $t4 $t1 $t0
+sw $t4 2($t5)
+lw $t6 2($t5)
+bne $t0 $t1 end
+addi $t7 $t7 9
+end: andi $s0 $t1 6
+halt
@@ -0,0 +1,28 @@
+.text
+
+ori $s0 $0 65535
+sll $s0 $s0 16
+addi $t0 $0 104
+sw $t0 3($s0)
+addi $t0 $0 105
+sw $t0 3($s0)
+lw $s1 0($s0)
+lw $s2 1($s0)
+ori $s3 $s0 1024
+sw $0 0($s3)
+lw $s4 1($s3)
+ori $s5 $s0 2048
+addi $t0 $0 1
+sw $t0 0($s5)
+sw $t0 1($s5)
+lw $s6 512($s5)
+lw $s7 2($s5)
+addi $t2 $0 2000
+addi $t4 $0 1
+poll: lw $t1 2($s0)
+addu $t3 $t3 $t1
+sw $t3 0($gp)
+subu $t2 $t2 $t4
+bne $t2 $0 poll
+lw $t5 0($gp)
+halt
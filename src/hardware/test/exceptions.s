@@ -0,0 +1,29 @@
+.text
+
+lui $t0 $0 64
+ori $t0 $t0 handler
+mtc0 $t0 $15
+lui $s0 $0 32767
+ori $s0 $s0 65535
+addi $t1 $0 1
+add $s1 $s0 $t1
+addi $s2 $s2 1
+nor $t3 $0 $0
+sub $s1 $s0 $t3
+addi $s2 $s2 1
+reserved: sll $0 $0 0
+addi $s2 $s2 1
+lui $t2 $0 32768
+lw $s3 0($t2)
+addi $s2 $s2 1
+sw $s2 1($t2)
+halt
+handler: mfc0 $k0 $14
+mfc0 $k1 $13
+srl $k1 $k1 2
+addu $s7 $s7 $k1
+mfc0 $s5 $8
+addi $s4 $s4 1
+addi $k0 $k0 1
+mtc0 $k0 $14
+eret
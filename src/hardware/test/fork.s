@@ -0,0 +1,16 @@
+.data
+
+base: .word 0
+
+.text
+
+ori $s0 $0 4096
+sll $s0 $s0 16
+ori $t0 $0 40
+sw $t0 0($s0)
+halt
+lw $t1 0($s0)
+addu $t1 $t1 $a0
+sw $t1 1($s0)
+sw $a0 0($s0)
+halt
@@ -0,0 +1,26 @@
+.data
+
+nums: .word 3, 4, 5, 6
+total: .word 0, 0
+
+.text
+
+ori $s0 $0 4096
+sll $s0 $s0 16
+addi $t1 $0 4
+addi $t4 $0 1
+loop: lw $t3 0($s0)
+add $t2 $t2 $t3
+addi $s0 $s0 1
+sub $t1 $t1 $t4
+bne $t1 $0 loop
+sw $t2 0($s0)
+jal double
+sw $v0 1($s0)
+slt $t5 $t4 $t1
+slt $t6 $t1 $t4
+addu $t7 $t4 $t4
+srl $s1 $s0 28
+halt
+double: add $v0 $t2 $t2
+jr $ra
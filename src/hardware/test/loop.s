@@ -0,0 +1,19 @@
+.data
+
+arr: .space 8
+
+.text
+
+addi $t1 $t1 3000
+head: sub $0 $0 $0
+addi $t0 $t0 1
+addi $t2 $t2 5
+or $t3 $t0 $t2
+nor $s1 $t3 $t0
+add $s2 $s2 $t2
+sll $s3 $t0 2
+sw $t3 0($t4)
+lw $t5 0($t6)
+beq $t0 $t1 done
+j head
+done: halt
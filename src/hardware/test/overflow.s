@@ -0,0 +1,6 @@
+.text
+
+lui $t1 $0 32767
+loop: addi $t1 $t1 1
+j loop
+halt
@@ -0,0 +1,13 @@
+.text
+
+addi $t1 $0 2000
+first: addi $t0 $t0 1
+add $s0 $s0 $t0
+bne $t0 $t1 first
+addi $t0 $0 0
+second: addi $t0 $t0 1
+sll $s1 $t0 2
+nor $s2 $s2 $s1
+or $s3 $s3 $s2
+bne $t0 $t1 second
+halt
@@ -0,0 +1,20 @@
+.data
+
+arr: .word 5, 7
+
+.text
+
+ori $s0 $0 4096
+sll $s0 $s0 16
+addi $t1 $0 3
+addi $t6 $0 1
+loop: lw $t0 0($s0)
+add $t2 $t2 $t0
+lw $t3 1($s0)
+addi $t4 $t4 1
+add $t5 $t5 $t3
+sub $t1 $t1 $t6
+bne $t1 $0 loop
+j done
+addi $t7 $0 9
+done: halt
@@ -0,0 +1,5 @@
+.text
+
+spin: addi $t0 $t0 1
+j spin
+halt
@@ -0,0 +1,56 @@
+.data
+
+msg: .asciiz "sum="
+
+.text
+
+ori $s0 $0 4096
+sll $s0 $s0 16
+addi $v0 $0 5
+syscall
+add $s1 $v0 $0
+addi $v0 $0 5
+syscall
+add $s1 $s1 $v0
+addi $v0 $0 4
+add $a0 $s0 $0
+syscall
+addi $v0 $0 1
+add $a0 $s1 $0
+syscall
+addi $v0 $0 11
+addi $a0 $0 10
+syscall
+addi $v0 $0 9
+addi $a0 $0 64
+syscall
+add $s2 $v0 $0
+addi $v0 $0 13
+ori $a0 $s0 256
+addi $a1 $0 1
+syscall
+add $s3 $v0 $0
+addi $v0 $0 15
+add $a0 $s3 $0
+add $a1 $s0 $0
+addi $a2 $0 4
+syscall
+addi $v0 $0 16
+add $a0 $s3 $0
+syscall
+addi $v0 $0 13
+ori $a0 $s0 256
+addi $a1 $0 0
+syscall
+add $s3 $v0 $0
+addi $v0 $0 14
+add $a0 $s3 $0
+add $a1 $s2 $0
+addi $a2 $0 64
+syscall
+add $s4 $v0 $0
+addi $v0 $0 17
+addi $a0 $0 7
+syscall
+addi $s5 $0 1
+halt
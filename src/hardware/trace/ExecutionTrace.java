@@ -0,0 +1,214 @@
+package hardware.trace;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Binary trace of executed instructions, written to a file in the background.
+ *
+ * The CPU thread writes one fixed size record per instruction into a ring
+ * buffer allocated up front, which costs a few stores and no allocation. A
+ * drain thread copies filled parts of the ring to the file through a
+ * FileChannel. If the drain falls a whole ring behind, records are dropped and
+ * counted rather than making the CPU wait.
+ *
+ * Each record is RECORD_BYTES long, four little endian ints: the PC, the raw
+ * instruction word, the register written (-1 for none) and the value written
+ * to it.
+ *
+ * Only one thread may record into a trace.
+ *
+ * @sammc
+ */
+public final class ExecutionTrace implements AutoCloseable {
+
+	public static final int RECORD_BYTES = 16;
+	public static final int DEFAULT_CAPACITY = 1 << 16; // records
+
+	private static final long DRAIN_WAIT_NANOS = 100_000; // drain's nap when the ring is empty
+
+	private static final VarHandle HEAD;
+	private static final VarHandle TAIL;
+	static {
+		try {
+			MethodHandles.Lookup lookup = MethodHandles.lookup();
+			HEAD = lookup.findVarHandle(ExecutionTrace.class, "head", long.class);
+			TAIL = lookup.findVarHandle(ExecutionTrace.class, "tail", long.class);
+		} catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	private final ByteBuffer ring;
+	private final int mask; // capacity - 1, in records
+	private final FileChannel channel;
+	private final Thread drain;
+
+	private long head; // records written, only changed by the recording thread
+	private long tail; // records drained, only changed by the drain thread
+	private long cachedTail; // recording thread's last look at tail
+	private long dropped;
+	private volatile boolean closed;
+	private IOException failure; // set by the drain thread, read after it has finished
+
+	/**
+	 * Trace to a new file, replacing any file already there
+	 *
+	 * @param file
+	 * @throws IOException
+	 */
+	public ExecutionTrace(Path file) throws IOException {
+		this(file, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param file
+	 * @param capacity records the ring holds, a power of two
+	 * @throws IOException
+	 */
+	public ExecutionTrace(Path file, int capacity) throws IOException {
+		if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+			throw new IllegalArgumentException("Trace capacity must be a power of two: " + capacity);
+		}
+		this.ring = ByteBuffer.allocateDirect(capacity * RECORD_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+		this.mask = capacity - 1;
+		this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		this.drain = new Thread(this::drain, "trace-drain");
+		drain.setDaemon(true);
+		drain.start();
+	}
+
+	/**
+	 * Record one executed instruction
+	 *
+	 * @param pc       address of the instruction
+	 * @param word     raw instruction word
+	 * @param register register written, or -1 for none
+	 * @param value    value written to the register
+	 */
+	public void record(int pc, int word, int register, int value) {
+		long h = head;
+		if (h - cachedTail > mask) {
+			cachedTail = (long) TAIL.getAcquire(this);
+			if (h - cachedTail > mask) {
+				dropped++;
+				return;
+			}
+		}
+		int offset = (int) (h & mask) * RECORD_BYTES;
+		ring.putInt(offset, pc);
+		ring.putInt(offset + 4, word);
+		ring.putInt(offset + 8, register);
+		ring.putInt(offset + 12, value);
+		HEAD.setRelease(this, h + 1);
+	}
+
+	/**
+	 * Returns the number of records dropped because the ring was full. Only
+	 * meaningful on the recording thread, or after close.
+	 *
+	 * @return
+	 */
+	public long getDroppedRecords() {
+		return dropped;
+	}
+
+	/**
+	 * Write out everything recorded so far, stop the drain thread and close the
+	 * file
+	 *
+	 * @throws IOException if writing the file failed at any point
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		LockSupport.unpark(drain);
+		boolean interrupted = false;
+		while (drain.isAlive()) {
+			try {
+				drain.join();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		channel.close();
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	private void drain() {
+		ByteBuffer view = ring.duplicate();
+		try {
+			while (true) {
+				boolean finishing = closed; // read before head, so nothing recorded before close is missed
+				long h = (long) HEAD.getAcquire(this);
+				long t = tail;
+				if (h == t) {
+					if (finishing) {
+						return;
+					}
+					LockSupport.parkNanos(DRAIN_WAIT_NANOS);
+					continue;
+				}
+				// write up to the end of the ring, the rest goes on the next pass
+				int from = (int) (t & mask);
+				int count = (int) Math.min(h - t, mask + 1 - from);
+				view.limit((from + count) * RECORD_BYTES).position(from * RECORD_BYTES);
+				while (view.hasRemaining()) {
+					channel.write(view);
+				}
+				TAIL.setRelease(this, t + count);
+			}
+		} catch (IOException e) {
+			failure = e;
+		}
+	}
+
+	/**
+	 * Receives the records of a trace file
+	 */
+	@FunctionalInterface
+	public interface Visitor {
+		void record(int pc, int word, int register, int value);
+	}
+
+	/**
+	 * Read back a trace file written by an ExecutionTrace
+	 *
+	 * @param file
+	 * @param visitor called once per record, in order
+	 * @return number of records read
+	 * @throws IOException
+	 */
+	public static long read(Path file, Visitor visitor) throws IOException {
+		long records = 0;
+		try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+			ByteBuffer buffer = ByteBuffer.allocate(RECORD_BYTES * 1024).order(ByteOrder.LITTLE_ENDIAN);
+			while (in.read(buffer) >= 0) {
+				buffer.flip();
+				while (buffer.remaining() >= RECORD_BYTES) {
+					visitor.record(buffer.getInt(), buffer.getInt(), buffer.getInt(), buffer.getInt());
+					records++;
+				}
+				buffer.compact(); // keep a record split across reads
+			}
+		}
+		return records;
+	}
+
+}
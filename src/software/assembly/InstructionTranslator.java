@@ -90,6 +90,8 @@ public class InstructionTranslator {
 		if (opcode == 0) {
 			// r type
 			return parseRType(fields);
+		} else if (opcode == 0x10) {
+			return parseCoprocessor0(fields);
 		} else if (opcode == 2 || opcode == 3) {
 			// j type
 			return parseJType(fields);
@@ -110,6 +112,13 @@ public class InstructionTranslator {
 	Instruction parseRType(String[] fields) throws Exception {
 		// opcode (31:26) Rs(25:21) Rt (20:16) Rd (15:11) shamt (10:6) funct (5:0)
 
+		if (MipsIsa.translateInsToFunc(fields[0]) == MipsIsa.translateInsToFunc("syscall")) { // no operands
+			if (fields.length != 1) {
+				throw new ImproperInstructionArgumentException(fields);
+			}
+			return new R_Instruction(0, 0, 0, 0, MipsIsa.translateInsToFunc("syscall"));
+		}
+
 		if (fields.length < 2) {
 			throw new Exception("Improper argument count translating r-type statement: " + Arrays.toString(fields));
 		}
@@ -160,7 +169,8 @@ public class InstructionTranslator {
 
 		// If the immediate doesn't start with number, then it's a label
 		boolean usesLabel = fields.length > 3 && !Character.isDigit(fields[3].charAt(0));
-		boolean memoryOp = opcode == MipsIsa.getOpcode("lw") || opcode == MipsIsa.getOpcode("sw");
+		boolean memoryOp = opcode == MipsIsa.getOpcode("lw") || opcode == MipsIsa.getOpcode("sw")
+				|| opcode == MipsIsa.getOpcode("ll") || opcode == MipsIsa.getOpcode("sc");
 		if (memoryOp) {
 
 			String[] t = fields[2].split("\\(");
@@ -191,6 +201,31 @@ public class InstructionTranslator {
 		return result;
 	}
 
+	/**
+	 * mfc0 $t0 $14 and mtc0 $t0 $14 move between a register and a coprocessor 0
+	 * register, given by number, eret takes no operands
+	 * 
+	 * @param fields
+	 * @return
+	 * @throws Exception
+	 */
+	Instruction parseCoprocessor0(String[] fields) throws Exception {
+		// opcode (31:26) operation (25:21) Rt (20:16) Rd (15:11) 0 (10:3) sel (2:0)
+		if (fields[0].toLowerCase().equals("eret")) {
+			if (fields.length != 1) {
+				throw new ImproperInstructionArgumentException(fields);
+			}
+			return new I_Instruction(0x10, 0x10, 0, 0x18);
+		}
+		if (fields.length != 3) {
+			throw new ImproperInstructionArgumentException(fields);
+		}
+		int operation = fields[0].toLowerCase().equals("mtc0") ? 0x4 : 0x0;
+		int rt = MipsIsa.getRegNumber(fields[1]);
+		int rd = MipsIsa.getRegNumber(fields[2]);
+		return new I_Instruction(0x10, operation, rt, rd << 11);
+	}
+
 	Instruction parseJType(String[] fields) throws Exception {
 		int opcode = MipsIsa.getOpcode(fields[0]);
 		int address = 0;
@@ -1,5 +1,8 @@
 package software.datatypes;
 
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * Hold the barebones compiled program data that will be loaded into memory.
  * 
@@ -9,5 +12,6 @@ public class Program {
 
 	public int[] staticData;
 	public int[] bin;
+	public Map<String, Integer> labels = new HashMap<String, Integer>(); // text labels, without the colon, to addresses
 
 }
@@ -0,0 +1,318 @@
+package software.elf;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import software.exceptions.InvalidExecutableException;
+
+/**
+ * A statically linked MIPS32 ELF executable, big or little endian, ready to be
+ * loaded with CPU.loadExecutable.
+ *
+ * The file is mapped once and segments are handed out as slices of the
+ * mapping, so loading copies nothing the memory can share, see Memory.load.
+ *
+ * Memory here is word addressed, so each PT_LOAD segment is placed at its
+ * virtual address with one word per address, the same way the assembler lays
+ * out the text and data segments. Byte addresses inside a segment, the entry
+ * point and symbols, are translated to match. Code is run as this CPU runs it:
+ * no branch delay slots, and loads, stores and jumps take word addresses, so
+ * only programs built for that run as they would on real hardware.
+ *
+ * @sammc
+ */
+public final class ElfFile {
+
+	public static final int EM_MIPS = 8;
+
+	private static final int ELFCLASS32 = 1;
+	private static final int ELFDATA2LSB = 1;
+	private static final int ELFDATA2MSB = 2;
+	private static final int ET_EXEC = 2;
+	private static final int PT_LOAD = 1;
+	private static final int PF_X = 1;
+	private static final int SHT_SYMTAB = 2;
+	private static final int STT_OBJECT = 1;
+	private static final int STT_FUNC = 2;
+	private static final int SHN_UNDEF = 0;
+
+	private final ByteBuffer file; // the whole file, in its own byte order
+	private final List<Segment> segments = new ArrayList<Segment>();
+	private final Map<String, Integer> symbols = new HashMap<String, Integer>();
+	private final Map<String, Integer> labels = new HashMap<String, Integer>();
+	private final int entry;
+
+	private ElfFile(ByteBuffer file) throws InvalidExecutableException {
+		this.file = file;
+		if (file.limit() < 52 || file.getInt(0) != 0x7F454C46) { // \x7FELF
+			throw new InvalidExecutableException("no ELF header");
+		}
+		if (file.get(4) != ELFCLASS32) {
+			throw new InvalidExecutableException("not 32 bit");
+		}
+		switch (file.get(5)) {
+		case ELFDATA2LSB:
+			file.order(ByteOrder.LITTLE_ENDIAN);
+			break;
+		case ELFDATA2MSB:
+			file.order(ByteOrder.BIG_ENDIAN);
+			break;
+		default:
+			throw new InvalidExecutableException("unknown byte order");
+		}
+		if (file.getShort(16) != ET_EXEC) {
+			throw new InvalidExecutableException("not an executable, only statically linked ones load");
+		}
+		if (file.getShort(18) != EM_MIPS) {
+			throw new InvalidExecutableException("not for MIPS");
+		}
+
+		int phoff = file.getInt(28);
+		int phentsize = file.getShort(42) & 0xFFFF;
+		int phnum = file.getShort(44) & 0xFFFF;
+		for (int i = 0; i < phnum; i++) {
+			int ph = phoff + i * phentsize;
+			check(ph, 32);
+			if (file.getInt(ph) != PT_LOAD) {
+				continue;
+			}
+			int offset = file.getInt(ph + 4), filesz = file.getInt(ph + 16);
+			check(offset, filesz);
+			Segment segment = new Segment(file.getInt(ph + 8), offset, filesz, file.getInt(ph + 20),
+					(file.getInt(ph + 24) & PF_X) != 0);
+			if (Integer.toUnsignedLong(segment.memsz) < Integer.toUnsignedLong(filesz)) {
+				throw new InvalidExecutableException("segment smaller in memory than in the file");
+			}
+			segments.add(segment);
+		}
+		Integer start = translate(file.getInt(24));
+		if (start == null) {
+			throw new InvalidExecutableException("entry point outside every segment");
+		}
+		entry = start;
+
+		int shoff = file.getInt(32);
+		int shentsize = file.getShort(46) & 0xFFFF;
+		int shnum = shoff == 0 ? 0 : file.getShort(48) & 0xFFFF;
+		for (int i = 0; i < shnum; i++) {
+			int sh = shoff + i * shentsize;
+			check(sh, 40);
+			if (file.getInt(sh + 4) == SHT_SYMTAB) {
+				int strings = shoff + file.getInt(sh + 24) * shentsize; // sh_link, the string table
+				check(strings, 40);
+				readSymbols(sh, file.getInt(strings + 16), file.getInt(strings + 20));
+			}
+		}
+	}
+
+	/**
+	 * Map and parse an executable. The file can be closed, deleted or replaced
+	 * afterwards, but must not be written in place while it is loaded.
+	 *
+	 * @param path
+	 * @return
+	 * @throws IOException
+	 * @throws InvalidExecutableException if it isn't a MIPS32 executable
+	 */
+	public static ElfFile read(Path path) throws IOException, InvalidExecutableException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new InvalidExecutableException("larger than 2GB");
+			}
+			return new ElfFile(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	/**
+	 * Returns the loadable segments, in the order they are listed
+	 *
+	 * @return
+	 */
+	public List<Segment> getSegments() {
+		return Collections.unmodifiableList(segments);
+	}
+
+	/**
+	 * Returns the word address execution starts at
+	 *
+	 * @return
+	 */
+	public int getEntry() {
+		return entry;
+	}
+
+	public boolean isBigEndian() {
+		return file.order() == ByteOrder.BIG_ENDIAN;
+	}
+
+	/**
+	 * Returns every defined function, object and untyped symbol in the symbol
+	 * table that lies in a segment, by name, at its word address
+	 *
+	 * @return
+	 */
+	public Map<String, Integer> getSymbols() {
+		return Collections.unmodifiableMap(symbols);
+	}
+
+	/**
+	 * Returns the symbols in executable segments, the text labels, eg. for
+	 * PipelineTiming.byLabel
+	 *
+	 * @return
+	 */
+	public Map<String, Integer> getLabels() {
+		return Collections.unmodifiableMap(labels);
+	}
+
+	/**
+	 * Returns the word address a byte address of the executable is loaded at,
+	 * or null if no segment covers it
+	 *
+	 * @param byteAddress
+	 * @return
+	 */
+	public Integer translate(int byteAddress) {
+		Segment segment = find(byteAddress);
+		return segment == null ? null : segment.vaddr + (byteAddress - segment.vaddr) / Integer.BYTES;
+	}
+
+	private Segment find(int byteAddress) {
+		for (Segment segment : segments) {
+			if (Integer.toUnsignedLong(byteAddress - segment.vaddr) < Integer.toUnsignedLong(segment.memsz)) {
+				return segment;
+			}
+		}
+		return null;
+	}
+
+	private void readSymbols(int sh, int stringsOffset, int stringsSize) throws InvalidExecutableException {
+		int offset = file.getInt(sh + 16), size = file.getInt(sh + 20), entsize = file.getInt(sh + 36);
+		check(offset, size);
+		check(stringsOffset, stringsSize);
+		if (entsize < 16) {
+			throw new InvalidExecutableException("bad symbol table");
+		}
+		for (int sym = offset + entsize; sym + 16 <= offset + size; sym += entsize) { // the first is always null
+			int type = file.get(sym + 12) & 0xF;
+			int name = file.getInt(sym);
+			if (type > STT_FUNC || name == 0 || (file.getShort(sym + 14) & 0xFFFF) == SHN_UNDEF) {
+				continue;
+			}
+			Segment segment = find(file.getInt(sym + 4));
+			if (segment == null) {
+				continue;
+			}
+			String symbol = string(stringsOffset, stringsSize, name);
+			int address = translate(file.getInt(sym + 4));
+			symbols.put(symbol, address);
+			if (segment.executable && type != STT_OBJECT) {
+				labels.put(symbol, address);
+			}
+		}
+	}
+
+	private String string(int offset, int size, int index) throws InvalidExecutableException {
+		if (index < 0 || index >= size) {
+			throw new InvalidExecutableException("bad string table");
+		}
+		int end = offset + index;
+		while (end < offset + size && file.get(end) != 0) {
+			end++;
+		}
+		if (end == offset + size) {
+			throw new InvalidExecutableException("bad string table");
+		}
+		byte[] bytes = new byte[end - offset - index];
+		file.get(offset + index, bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private void check(int offset, int length) throws InvalidExecutableException {
+		if (offset < 0 || length < 0 || (long) offset + length > file.limit()) {
+			throw new InvalidExecutableException("truncated");
+		}
+	}
+
+	/**
+	 * A PT_LOAD segment
+	 */
+	public final class Segment {
+
+		private final int vaddr;
+		private final int offset;
+		private final int filesz;
+		private final int memsz;
+		private final boolean executable;
+
+		private Segment(int vaddr, int offset, int filesz, int memsz, boolean executable) {
+			this.vaddr = vaddr;
+			this.offset = offset;
+			this.filesz = filesz;
+			this.memsz = memsz;
+			this.executable = executable;
+		}
+
+		/**
+		 * Returns the address the first word is loaded at, the segment's virtual
+		 * address
+		 *
+		 * @return
+		 */
+		public int getAddress() {
+			return vaddr;
+		}
+
+		/**
+		 * Returns the number of words the segment takes up in memory, including
+		 * the zeroed words past the end of its data
+		 *
+		 * @return
+		 */
+		public int getLength() {
+			return (int) ((Integer.toUnsignedLong(memsz) + Integer.BYTES - 1) / Integer.BYTES);
+		}
+
+		/**
+		 * Returns the segment's data from the file, in the file's byte order. It is
+		 * a slice of the mapped file unless the data ends part way through a word,
+		 * in which case it is a copy padded with zeros.
+		 *
+		 * @return
+		 */
+		public ByteBuffer getWords() {
+			if (filesz % Integer.BYTES == 0) {
+				return file.slice(offset, filesz).order(file.order());
+			}
+			ByteBuffer padded = ByteBuffer.allocate(filesz + Integer.BYTES - filesz % Integer.BYTES);
+			padded.put(0, file, offset, filesz);
+			return padded.order(file.order());
+		}
+
+		/**
+		 * Returns the number of words of data in the file, the rest of the segment
+		 * reads zero
+		 *
+		 * @return
+		 */
+		public int getDataLength() {
+			return (filesz + Integer.BYTES - 1) / Integer.BYTES;
+		}
+
+		public boolean isExecutable() {
+			return executable;
+		}
+
+	}
+
+}
@@ -0,0 +1,11 @@
+package software.exceptions;
+
+public class InvalidExecutableException extends Exception {
+
+	private static final long serialVersionUID = 4720938615224377154L;
+
+	public InvalidExecutableException(String reason) {
+		super("Provided file is not a MIPS32 executable: " + reason);
+	}
+
+}
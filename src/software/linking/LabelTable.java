@@ -19,9 +19,11 @@ import software.datatypes.StaticData;
 public class LabelTable {
 
 	private Map<String, Integer> data;
+	private Map<String, Integer> text; // text labels only, without the colon
 
 	public LabelTable(Protogram p) {
 		data = new HashMap<String, Integer>();
+		text = new HashMap<String, Integer>();
 		buildTable(p);
 	}
 
@@ -60,6 +62,15 @@ public class LabelTable {
 		return data;
 	}
 
+	/**
+	 * Return the labels of the text section, without their colons
+	 * 
+	 * @return
+	 */
+	public Map<String, Integer> getTextLabels() {
+		return text;
+	}
+
 	/**
 	 * Adds the labels from the static element to the label table with it's
 	 * calculated address in memory.
@@ -96,7 +107,9 @@ public class LabelTable {
 			// if the instruction is labeled, then add the label to the label table with the
 			// literal location in memory
 			if (instructions.get(i).isLabeled) {
-				data.put(instructions.get(i).label, CPU.PC_STARTING_ADDRESS + i);
+				String label = instructions.get(i).label;
+				data.put(label, CPU.PC_STARTING_ADDRESS + i);
+				text.put(label.substring(0, label.length() - 1), CPU.PC_STARTING_ADDRESS + i);
 			}
 		}
 	}
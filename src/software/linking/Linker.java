@@ -39,6 +39,7 @@ public class Linker {
 
 		result.bin = createInstructionBin(p.instructions);
 		result.staticData = createDataBin(p.data);
+		result.labels = lt.getTextLabels();
 
 		return result;
 	}